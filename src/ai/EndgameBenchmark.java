@@ -0,0 +1,60 @@
+package ai;
+
+import cards.CardData;
+import cards.Deck;
+import cards.HandData;
+
+/**
+ * Benchmarks the time the endgame solver takes to solve random two player endings,
+ * and the hit rate of its cache as endings are solved again a turn later.
+ * <br><br>
+ * Arguments: [ENDINGS (default: 10000)]
+ * @author Raul Hernandez, 02/07/2024
+ * 
+ */
+public class EndgameBenchmark {
+	
+	public static void main(String[] args) {
+		final int endings = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		
+		final int[] outcomes = new int[EndgameSolver.Outcome.values().length];
+		long nodes = 0;
+		long firstTime = 0;
+		long againTime = 0;
+		for (int i = 0; i < endings; i++) {
+			
+			// Deals a random ending
+			final Deck deck = new Deck();
+			final HandData mover = new HandData();
+			final HandData opponent = new HandData();
+			final int moverSize = 1 + i % EndgameSolver.MAX_HAND;
+			final int opponentSize = 1 + i / EndgameSolver.MAX_HAND % EndgameSolver.MAX_HAND;
+			for (int j = 0; j < moverSize; j++)
+				mover.add(deck.draw());
+			for (int j = 0; j < opponentSize; j++)
+				opponent.add(deck.draw());
+			CardData center;
+			do
+				center = deck.draw();
+			while (center.getValue().special);
+			final CardData[] cards = deck.getCards();
+			
+			// Solves it, then solves it again as a later turn would
+			long start = System.nanoTime();
+			final EndgameSolver.Result result = EndgameSolver.solve(mover, opponent, center, cards);
+			firstTime += System.nanoTime() - start;
+			start = System.nanoTime();
+			EndgameSolver.solve(mover, opponent, center, cards);
+			againTime += System.nanoTime() - start;
+			
+			outcomes[result.outcome.ordinal()]++;
+			nodes += result.nodes;
+		}
+		
+		System.out.printf("%d endings: %.1f us per solve (%.1f us when solved again), %.0f nodes per solve%n",
+				endings, firstTime / 1e3 / endings, againTime / 1e3 / endings, (double) nodes / endings);
+		for (EndgameSolver.Outcome outcome : EndgameSolver.Outcome.values())
+			System.out.printf("                %s: %.1f%%%n", outcome, 100.0 * outcomes[outcome.ordinal()] / endings);
+		System.out.println("                " + EndgameSolver.stats());
+	}
+}
@@ -0,0 +1,349 @@
+package ai;
+
+import cards.CardColor;
+import cards.CardData;
+import cards.CardValue;
+import cards.HandData;
+
+/**
+ * Handles solving the ends of two player games exactly, once both hands are small.
+ * <br><br>
+ * The solver sees every card: both hands and the order of the top of the deck. It searches every
+ * line of play until a player wins, or until a player would draw past the cards it was given,
+ * in which case the line's outcome is unknown. Solved states are cached in a transposition table
+ * shared by every solve (see {@link #stats()}), so endings reached by different orders of moves,
+ * or solved again a turn later, are only searched once.
+ * @author Raul Hernandez, 02/07/2024
+ * 
+ */
+public class EndgameSolver {
+	
+	/**
+	 * Stores the outcome of a game played perfectly by both players.
+	 */
+	public static enum Outcome {
+		
+		/** The player whose turn it is wins. */
+		WIN,
+		
+		/** Neither player can force a win before the given cards of the deck run out. */
+		UNKNOWN,
+		
+		/** The player whose turn it is loses. */
+		LOSS;
+	}
+	
+	/**
+	 * Stores the best move of a state and its outcome.
+	 */
+	public static class Result {
+		
+		/** The card to use, with its chosen color if special. {@code null} to draw a card. */
+		public final CardData card;
+		
+		/** The outcome for the player whose turn it is, if both players play perfectly. */
+		public final Outcome outcome;
+		
+		/** The number of states searched, not counting states found in the cache. */
+		public final int nodes;
+		
+		/**
+		 * Creates a result.
+		 * @param card The card to use. {@code null} to draw a card.
+		 * @param outcome The outcome for the player whose turn it is.
+		 * @param nodes The number of states searched.
+		 */
+		private Result(CardData card, Outcome outcome, int nodes) {
+			this.card = card;
+			this.outcome = outcome;
+			this.nodes = nodes;
+		}
+		
+		public String toString() {
+			return String.format("Result(%s, %s, %d nodes)", card == null ? "DRAW" : card, outcome, nodes);
+		}
+	}
+	
+	/** The largest hand size, for both players, at which the solver applies. */
+	public static final int MAX_HAND = 3;
+	
+	/** The most cards of the deck the solver looks ahead at. */
+	public static final int MAX_DRAWS = 8;
+	
+	/** The number of cards which can be held in a hand. */
+	private static final int HELD = CardData.heldCards();
+	
+	/** Mixes the key of the card at the center. */
+	private static final long CENTER_SALT = 0x5DEECE66DL;
+	
+	/** Mixes the keys of the cards of the deck. */
+	private static final long DECK_SALT = 0x2545F4914F6CDD1DL;
+	
+	/** The cache of solved states shared by every solve, sized by the rauno.endgameTable system property. */
+	private static final TranspositionTable TABLE = new TranspositionTable(Integer.getInteger("rauno.endgameTable", 1 << 18));
+	
+	/** The number of copies of each card in each player's hand, indexed by player, then bit. */
+	private final int[][] counts = new int[2][HELD];
+	
+	/** The mask of the cards in each player's hand. */
+	private final long[] masks = new long[2];
+	
+	/** The number of cards in each player's hand. */
+	private final int[] sizes = new int[2];
+	
+	/** The key of each player's hand, kept as cards are added and removed. */
+	private final long[] handKeys = new long[2];
+	
+	/** The bits of the cards of the deck the solver looks ahead at, starting from the top card. */
+	private final int[] deck;
+	
+	/** The keys of the cards left in the deck, indexed by the number of cards drawn. */
+	private final long[] deckKeys;
+	
+	/** The number of cards drawn from the deck. */
+	private int drawn = 0;
+	
+	/** The code of the card at the center. */
+	private int center;
+	
+	/** The player whose turn it is. */
+	private int turn = 0;
+	
+	/** The number of states searched. */
+	private int nodes = 0;
+	
+	/**
+	 * Creates a solver for the given state, in which it is the first player's turn.
+	 * @param mover The hand of the player whose turn it is.
+	 * @param opponent The hand of the other player.
+	 * @param center The card at the center.
+	 * @param deck The cards of the deck, starting from the top card. Only the first {@link #MAX_DRAWS} are used.
+	 */
+	private EndgameSolver(HandData mover, HandData opponent, CardData center, CardData[] deck) {
+		this.center = center.code();
+		for (int i = 0; i < mover.size(); i++)
+			add(0, Simulation.BITS[mover.get(i).code()]);
+		for (int i = 0; i < opponent.size(); i++)
+			add(1, Simulation.BITS[opponent.get(i).code()]);
+		
+		// Keys the deck by the cards left in it, so that states with different decks never share an entry
+		this.deck = new int[Math.min(deck.length, MAX_DRAWS)];
+		deckKeys = new long[this.deck.length + 1];
+		deckKeys[this.deck.length] = mix(DECK_SALT);
+		for (int i = this.deck.length-1; i >= 0; i--) {
+			this.deck[i] = Simulation.BITS[deck[i].code()];
+			deckKeys[i] = mix(deckKeys[i+1] ^ DECK_SALT + this.deck[i]);
+		}
+	}
+	
+	/**
+	 * Finds the best move of the given state and its outcome, if both players play perfectly.
+	 * Uno is assumed to always be called.
+	 * 
+	 * @param mover The hand of the player whose turn it is.
+	 * @param opponent The hand of the other player.
+	 * @param center The card at the center.
+	 * @param deck The cards of the deck, starting from the top card. Only the first {@link #MAX_DRAWS} are used.
+	 * @return The best move and its outcome. Wins are preferred over unknown outcomes, which are preferred over losses.
+	 */
+	public static Result solve(HandData mover, HandData opponent, CardData center, CardData[] deck) {
+		final EndgameSolver solver = new EndgameSolver(mover, opponent, center, deck);
+		final int entry = solver.search(-1, 1);
+		final int move = TranspositionTable.move(entry);
+		return new Result(move == Simulation.DRAW ? null : CardData.fromCode(move),
+				Outcome.values()[1 - TranspositionTable.outcome(entry)], solver.nodes);
+	}
+	
+	/**
+	 * @param mover The hand of the player whose turn it is.
+	 * @param opponent The hand of the other player.
+	 * @return Whether both hands are small enough for the solver (see {@link #MAX_HAND}).
+	 */
+	public static boolean applies(HandData mover, HandData opponent) {
+		return mover.size() <= MAX_HAND && opponent.size() <= MAX_HAND;
+	}
+	
+	/**
+	 * @return A summary of the metrics of the cache shared by every solve, including its hit rate, for logging.
+	 */
+	public static String stats() {
+		return "Endgame cache: " + TABLE.stats();
+	}
+	
+	/**
+	 * @return The ratio of states found in the cache shared by every solve.
+	 */
+	public static double getHitRate() {
+		return TABLE.getHitRate();
+	}
+	
+	/**
+	 * Solves the current state with alpha-beta pruning, searching every move not already solved.
+	 * Outcomes outside of the given window are only bounded: once a move reaches {@code beta},
+	 * the other moves are not searched, and if no move beats {@code alpha}, the outcome is only known not to.
+	 * 
+	 * @param alpha The outcome the player whose turn it is can already reach elsewhere.
+	 * @param beta The outcome the other player can already hold the player whose turn it is to elsewhere.
+	 * @return The state's entry (see {@link TranspositionTable#entry(int, int, int, long)}).
+	 */
+	private int search(int alpha, int beta) {
+		final long key = key();
+		final int cached = TABLE.get(key);
+		if (cached != 0) {
+			final int outcome = TranspositionTable.outcome(cached);
+			final int bound = TranspositionTable.bound(cached);
+			if (bound == TranspositionTable.EXACT
+					|| (bound == TranspositionTable.LOWER && outcome >= beta)
+					|| (bound == TranspositionTable.UPPER && outcome <= alpha))
+				return cached;
+		}
+		final int start = ++nodes;
+		final int originalAlpha = alpha;
+		
+		// Tries every card which can be used, then drawing a card, until one reaches beta
+		int bestOutcome = -2;
+		int bestMove = Simulation.DRAW;
+		for (long playable = masks[turn] & Simulation.FOLLOWERS[center]; playable != 0 && alpha < beta; playable &= playable-1) {
+			final int code = Simulation.CODES[Long.numberOfTrailingZeros(playable)];
+			final CardValue value = Simulation.VALUES[code];
+			for (int color = 0; color < (value.special ? Simulation.COLORS : 1) && alpha < beta; color++) {
+				final int move = value.special ? CardData.of(CardColor.REGULAR_COLORS[color], value).code() : code;
+				final int outcome = play(move, alpha, beta);
+				if (outcome > bestOutcome) {
+					bestOutcome = outcome;
+					bestMove = move;
+					alpha = Math.max(alpha, outcome);
+				}
+			}
+		}
+		if (alpha < beta) {
+			final int outcome = drawCard(alpha, beta);
+			if (outcome > bestOutcome) {
+				bestOutcome = outcome;
+				bestMove = Simulation.DRAW;
+			}
+		}
+		
+		final int bound = bestOutcome <= originalAlpha ? TranspositionTable.UPPER
+				: bestOutcome >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		final int entry = TranspositionTable.entry(bestOutcome, bound, bestMove, nodes - start + 1);
+		TABLE.put(key, entry);
+		return entry;
+	}
+	
+	/**
+	 * Solves the state reached after the player whose turn it is, who is given the window, ends their turn.
+	 * @param player The player who was given the window.
+	 * @param alpha The outcome the player can already reach elsewhere.
+	 * @param beta The outcome the other player can already hold the player to elsewhere.
+	 * @return The outcome for the player.
+	 */
+	private int searchAfter(int player, int alpha, int beta) {
+		if (turn == player)
+			return TranspositionTable.outcome(search(alpha, beta));
+		return -TranspositionTable.outcome(search(-beta, -alpha));
+	}
+	
+	/**
+	 * Uses the given card for the player whose turn it is, following the same rules as the server, then solves the state reached.
+	 * @param move The code of the card used, with its chosen color if special.
+	 * @param alpha The outcome the player can already reach elsewhere.
+	 * @param beta The outcome the other player can already hold the player to elsewhere.
+	 * @return The outcome for the player who used the card.
+	 */
+	private int play(int move, int alpha, int beta) {
+		final int player = turn;
+		final int bit = Simulation.BITS[move];
+		final int previousCenter = center;
+		remove(player, bit);
+		center = move;
+		
+		// Applies the card's power
+		int outcome;
+		final CardValue value = Simulation.VALUES[move];
+		if (sizes[player] == 0) {
+			outcome = 1;
+		} else if (value == CardValue.DRAW_TWO || value == CardValue.DRAW_FOUR) {
+			final int cards = value == CardValue.DRAW_TWO ? 2 : 4;
+			if (drawn + cards > deck.length) {
+				outcome = 0;
+			} else {
+				for (int i = 0; i < cards; i++)
+					add(1-player, deck[drawn++]);
+				outcome = searchAfter(player, alpha, beta);
+				for (int i = 0; i < cards; i++)
+					remove(1-player, deck[--drawn]);
+			}
+		} else if (value == CardValue.REVERSE || value == CardValue.SKIP) {
+			outcome = searchAfter(player, alpha, beta);
+		} else {
+			turn = 1-player;
+			outcome = searchAfter(player, alpha, beta);
+			turn = player;
+		}
+		
+		center = previousCenter;
+		add(player, bit);
+		return outcome;
+	}
+	
+	/**
+	 * Draws a card for the player whose turn it is, ending the turn, then solves the state reached.
+	 * @param alpha The outcome the player can already reach elsewhere.
+	 * @param beta The outcome the other player can already hold the player to elsewhere.
+	 * @return The outcome for the player who drew. 0 if the deck has no cards left to look ahead at.
+	 */
+	private int drawCard(int alpha, int beta) {
+		if (drawn == deck.length)
+			return 0;
+		final int player = turn;
+		add(player, deck[drawn++]);
+		turn = 1-player;
+		final int outcome = searchAfter(player, alpha, beta);
+		turn = player;
+		remove(player, deck[--drawn]);
+		return outcome;
+	}
+	
+	/**
+	 * @return The key of the current state, from the point of view of the player whose turn it is.
+	 */
+	private long key() {
+		return handKeys[turn] ^ Long.rotateLeft(handKeys[1-turn], 32) ^ mix(CENTER_SALT + center) ^ deckKeys[drawn];
+	}
+	
+	/**
+	 * Adds a copy of the given card to the given player's hand.
+	 * @param player The player.
+	 * @param bit The bit of the card.
+	 */
+	private void add(int player, int bit) {
+		handKeys[player] ^= mix((long) bit << 8 | counts[player][bit]);
+		counts[player][bit]++;
+		masks[player] |= 1L << bit;
+		sizes[player]++;
+	}
+	
+	/**
+	 * Removes a copy of the given card from the given player's hand.
+	 * @param player The player.
+	 * @param bit The bit of the card.
+	 */
+	private void remove(int player, int bit) {
+		if (--counts[player][bit] == 0)
+			masks[player] &= ~(1L << bit);
+		handKeys[player] ^= mix((long) bit << 8 | counts[player][bit]);
+		sizes[player]--;
+	}
+	
+	/**
+	 * Scrambles the given number into a key (the finalizer of SplitMix64).
+	 * @param x The number.
+	 * @return The key.
+	 */
+	private static long mix(long x) {
+		x = (x ^ x >>> 30) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ x >>> 27) * 0x94D049BB133111EBL;
+		return x ^ x >>> 31;
+	}
+}
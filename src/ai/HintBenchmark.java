@@ -0,0 +1,52 @@
+package ai;
+
+import cards.CardData;
+import cards.Deck;
+import cards.HandData;
+
+/**
+ * Benchmarks the number of games the hint service plays out within its time budget,
+ * on random deals of a game which just started.
+ * <br><br>
+ * Arguments: [BUDGET IN MILLISECONDS (default: 100)] [PLAYERS (default: 4)] [HINTS (default: 20)]
+ * @author Raul Hernandez, 02/06/2024
+ * 
+ */
+public class HintBenchmark {
+	
+	public static void main(String[] args) {
+		final int budget = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		final int players = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		final int hints = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		
+		long rollouts = 0;
+		long time = 0;
+		for (int i = 0; i < hints; i++) {
+			
+			// Deals a new game
+			final Deck deck = new Deck();
+			final HandData hand = new HandData();
+			for (int j = 0; j < HandData.START_SIZE; j++)
+				hand.add(deck.draw());
+			CardData center;
+			do
+				center = deck.draw();
+			while (center.getValue().special);
+			final int[] handSizes = new int[players];
+			for (int j = 0; j < players; j++)
+				handSizes[j] = HandData.START_SIZE;
+			
+			// Asks for a hint
+			final long start = System.nanoTime();
+			final HintService.Hint hint = HintService.suggest(hand, center, handSizes, 0, 1, budget);
+			time += System.nanoTime() - start;
+			if (i > 0) // Skips the first hint, which warms up the search
+				rollouts += hint.rollouts;
+			System.out.println("Center: " + center + ", " + hint);
+		}
+		
+		System.out.printf("%d players, %d ms budget: %.0f rollouts per hint, %.1f ms per hint on %d workers%n",
+				players, budget, (double) rollouts / Math.max(1, hints-1), time / 1e6 / hints,
+				Runtime.getRuntime().availableProcessors());
+	}
+}
@@ -0,0 +1,315 @@
+package ai;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cards.CardData;
+import cards.HandData;
+
+/**
+ * Handles suggesting the best move to a player, within a time budget.
+ * <br><br>
+ * Moves are searched with information set Monte Carlo tree search: each iteration guesses the
+ * cards the player cannot see, walks down a tree of moves shared by every guess (only choosing
+ * among the moves legal under the current guess), then plays the game out at random.
+ * The search runs in parallel on a fork/join pool, with one tree per worker, and the workers'
+ * statistics for the player's moves are merged once the budget runs out.
+ * @author Raul Hernandez, 02/06/2024
+ * 
+ */
+public class HintService {
+	
+	/**
+	 * Stores a suggested move.
+	 */
+	public static class Hint {
+		
+		/** The card to use, with its chosen color if special. {@code null} to draw a card. */
+		public final CardData card;
+		
+		/** The ratio of the games played out after this move which the player won. */
+		public final double winRate;
+		
+		/** The number of games played out to find this move. */
+		public final int rollouts;
+		
+		/**
+		 * Creates a hint.
+		 * @param card The card to use. {@code null} to draw a card.
+		 * @param winRate The ratio of the games played out after this move which the player won.
+		 * @param rollouts The number of games played out to find this move.
+		 */
+		private Hint(CardData card, double winRate, int rollouts) {
+			this.card = card;
+			this.winRate = winRate;
+			this.rollouts = rollouts;
+		}
+		
+		public String toString() {
+			return String.format("Hint(%s, %.1f%% wins, %d rollouts)",
+					card == null ? "DRAW" : card, 100*winRate, rollouts);
+		}
+	}
+	
+	/**
+	 * Stores a node of a search tree: the state reached by a move, across every guess of the hidden cards.
+	 */
+	private static class Node {
+		
+		/** The move leading to this node. */
+		private final int move;
+		
+		/** The player who made the move. */
+		private final int player;
+		
+		/** The parent of this node. {@code null} for the root. */
+		private final Node parent;
+		
+		/** The nodes reached by the moves tried from this node. */
+		private final ArrayList<Node> children = new ArrayList<Node>();
+		
+		/** The number of games played out through this node. */
+		private int visits = 0;
+		
+		/** The number of those games won by the player who made the move. */
+		private double wins = 0;
+		
+		/** The number of times this node's move was legal when its parent was visited. */
+		private int availability = 1;
+		
+		/**
+		 * Creates a node.
+		 * @param move The move leading to this node.
+		 * @param player The player who made the move.
+		 * @param parent The parent of this node. {@code null} for the root.
+		 */
+		private Node(int move, int player, Node parent) {
+			this.move = move;
+			this.player = player;
+			this.parent = parent;
+		}
+		
+		/**
+		 * @param move A move.
+		 * @return The child reached by the given move. {@code null} if it was not tried yet.
+		 */
+		private Node child(int move) {
+			for (int i = 0; i < children.size(); i++)
+				if (children.get(i).move == move)
+					return children.get(i);
+			return null;
+		}
+		
+		/**
+		 * @return The node's upper confidence bound, balancing its win rate with how rarely it was tried.
+		 */
+		private double bound() {
+			return wins / visits + EXPLORATION * Math.sqrt(Math.log(availability) / visits);
+		}
+	}
+	
+	/**
+	 * Handles searching with the trees of a range of workers, splitting the range in half until one worker is left.
+	 */
+	private static class Search extends RecursiveAction {
+		
+		/** The serial version UID of the search. */
+		private static final long serialVersionUID = 1L;
+		
+		/** The player the search is for. */
+		private final int seat;
+		
+		/** The number of copies of each card in the player's hand, indexed by bit. */
+		private final int[] hand;
+		
+		/** The code of the card at the center. */
+		private final int center;
+		
+		/** The number of cards in each player's hand. */
+		private final int[] handSizes;
+		
+		/** The direction in which turns progress (either 1 or -1). */
+		private final int direction;
+		
+		/** The time (in nanoseconds) at which the search stops. */
+		private final long deadline;
+		
+		/** The roots of every worker's tree, filled by the workers. */
+		private final Node[] roots;
+		
+		/** The first worker of the range. */
+		private final int from;
+		
+		/** The worker after the last worker of the range. */
+		private final int to;
+		
+		/**
+		 * Creates a search for the given range of workers.
+		 * @param parent The search splitting its range, or the search with the range's data.
+		 * @param from The first worker of the range.
+		 * @param to The worker after the last worker of the range.
+		 */
+		private Search(Search parent, int from, int to) {
+			this(parent.seat, parent.hand, parent.center, parent.handSizes, parent.direction, parent.deadline, parent.roots, from, to);
+		}
+		
+		/**
+		 * Creates a search.
+		 * @param seat The player the search is for.
+		 * @param hand The number of copies of each card in the player's hand, indexed by bit.
+		 * @param center The code of the card at the center.
+		 * @param handSizes The number of cards in each player's hand.
+		 * @param direction The direction in which turns progress (either 1 or -1).
+		 * @param deadline The time (in nanoseconds) at which the search stops.
+		 * @param roots The roots of every worker's tree, filled by the workers.
+		 * @param from The first worker of the range.
+		 * @param to The worker after the last worker of the range.
+		 */
+		private Search(int seat, int[] hand, int center, int[] handSizes, int direction, long deadline, Node[] roots, int from, int to) {
+			this.seat = seat;
+			this.hand = hand;
+			this.center = center;
+			this.handSizes = handSizes;
+			this.direction = direction;
+			this.deadline = deadline;
+			this.roots = roots;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new Search(this, from, middle), new Search(this, middle, to));
+			} else {
+				roots[from] = search();
+			}
+		}
+		
+		/**
+		 * Grows a search tree until the deadline.
+		 * @return The root of the tree.
+		 */
+		private Node search() {
+			final SplittableRandom random = new SplittableRandom();
+			final Simulation game = new Simulation(handSizes.length);
+			final int[] moves = new int[Simulation.maxMoves()];
+			final int[] untried = new int[Simulation.maxMoves()];
+			final Node root = new Node(Simulation.DRAW, -1, null);
+			
+			do {
+				game.deal(seat, hand, center, handSizes, direction, random);
+				Node node = root;
+				
+				// Walks down the tree while every legal move was tried, choosing the most promising
+				while (!game.isOver()) {
+					final int count = game.moves(moves);
+					int untriedCount = 0;
+					Node best = null;
+					for (int i = 0; i < count; i++) {
+						final Node child = node.child(moves[i]);
+						if (child == null) {
+							untried[untriedCount++] = moves[i];
+						} else {
+							child.availability++;
+							if (best == null || child.bound() > best.bound())
+								best = child;
+						}
+					}
+					
+					// Adds a node for an untried move, then plays the game out from there
+					if (untriedCount > 0) {
+						final Node child = new Node(untried[random.nextInt(untriedCount)], game.turn, node);
+						node.children.add(child);
+						game.play(child.move);
+						node = child;
+						break;
+					}
+					game.play(best.move);
+					node = best;
+				}
+				
+				// Plays the game out, and credits the nodes on the way
+				final int winner = game.isOver() ? game.winner : game.playOut(random);
+				for (; node != null; node = node.parent) {
+					node.visits++;
+					if (node.player == winner)
+						node.wins++;
+				}
+			} while (System.nanoTime() < deadline);
+			
+			return root;
+		}
+	}
+	
+	/** The weight given to rarely tried moves over moves with high win rates. */
+	private static final double EXPLORATION = 0.7;
+	
+	/** The default time budget (in milliseconds) of a hint, set by the rauno.hintBudget system property. */
+	public static final int BUDGET = Integer.getInteger("rauno.hintBudget", 50);
+	
+	/** The pool on which every search runs, shared by every table. */
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * Suggests the best move for the given player, whose turn it is.
+	 * Blocks until the time budget runs out.
+	 * 
+	 * @param hand The player's hand.
+	 * @param center The card at the center.
+	 * @param handSizes The number of cards in each player's hand.
+	 * @param seat The player's ID.
+	 * @param direction The direction in which turns progress (either 1 or -1).
+	 * @param budget The time (in milliseconds) to search for.
+	 * @return The suggested move.
+	 */
+	public static Hint suggest(HandData hand, CardData center, int[] handSizes, int seat, int direction, long budget) {
+		
+		// Counts the player's cards by bit
+		final int[] counts = new int[CardData.heldCards()];
+		for (long mask = hand.mask(); mask != 0; mask &= mask-1)
+			counts[Long.numberOfTrailingZeros(mask)] = hand.count(CardData.lowest(mask));
+		
+		// Searches on every worker until the budget runs out
+		final Node[] roots = new Node[POOL.getParallelism()];
+		POOL.invoke(new Search(seat, counts, center.code(), handSizes.clone(), direction,
+				System.nanoTime() + budget*1_000_000, roots, 0, roots.length));
+		
+		// Merges the workers' statistics of the player's moves
+		final int[] visits = new int[CardData.codes() + 1];
+		final double[] wins = new double[CardData.codes() + 1];
+		int rollouts = 0;
+		for (Node root : roots) {
+			rollouts += root.visits;
+			for (Node child : root.children) {
+				visits[child.move+1] += child.visits;
+				wins[child.move+1] += child.wins;
+			}
+		}
+		
+		// Picks the move played out the most
+		int best = 0;
+		for (int i = 1; i < visits.length; i++)
+			if (visits[i] > visits[best])
+				best = i;
+		final int move = best - 1;
+		return new Hint(move == Simulation.DRAW ? null : CardData.fromCode(move),
+				visits[best] == 0 ? 0 : wins[best] / visits[best], rollouts);
+	}
+	
+	/**
+	 * Suggests the best move for the given player, within the default time budget (see {@link #BUDGET}).
+	 * @param hand The player's hand.
+	 * @param center The card at the center.
+	 * @param handSizes The number of cards in each player's hand.
+	 * @param seat The player's ID.
+	 * @param direction The direction in which turns progress (either 1 or -1).
+	 * @return The suggested move.
+	 */
+	public static Hint suggest(HandData hand, CardData center, int[] handSizes, int seat, int direction) {
+		return suggest(hand, center, handSizes, seat, direction, BUDGET);
+	}
+}
@@ -0,0 +1,394 @@
+package ai;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import cards.CardColor;
+import cards.CardData;
+import cards.CardValue;
+import cards.Deck;
+import cards.HandData;
+
+/**
+ * Handles a determinized game of RaUno, in which every hidden card was given a guess.
+ * Hands are kept as card counts and masks indexed by the cards' bits (see {@link CardData#mask()}),
+ * so that playing the game out allocates nothing.
+ * @author Raul Hernandez, 02/06/2024
+ * 
+ */
+class Simulation {
+	
+	/** The move drawing a card from the deck. Any other move is the code of the card used. */
+	static final int DRAW = -1;
+	
+	/** The number of cards which can be held in a hand. */
+	private static final int HELD = CardData.heldCards();
+	
+	/** The number of colors a special card can be given. */
+	static final int COLORS = CardColor.REGULAR_COLORS.length;
+	
+	/** The most turns played out before a game is scored by its hand sizes. */
+	static final int MAX_TURNS = 200;
+	
+	/** The code of each held card, indexed by bit. */
+	static final int[] CODES = new int[HELD];
+	
+	/** The bit of each card as held in a hand, indexed by code. -1 if it cannot be held. */
+	static final int[] BITS = new int[CardData.codes()];
+	
+	/** The value of each card, indexed by code. */
+	static final CardValue[] VALUES = new CardValue[CardData.codes()];
+	
+	/** The mask of the held cards which can follow each card, indexed by code. */
+	static final long[] FOLLOWERS = new long[CardData.codes()];
+	
+	/** The number of copies of each card in a full deck, indexed by bit. */
+	private static final int[] FULL_DECK = new int[HELD];
+	
+	/** The number of cards in a full deck. */
+	private static final int DECK_SIZE;
+	static {
+		for (int code = 0; code < CardData.codes(); code++) {
+			final CardData card = CardData.fromCode(code);
+			final long held = card.withColor(CardColor.BLACK).mask();
+			BITS[code] = held == 0 ? -1 : Long.numberOfTrailingZeros(held);
+			VALUES[code] = card.getValue();
+			FOLLOWERS[code] = CardData.followers(card);
+			if (card.mask() != 0)
+				CODES[Long.numberOfTrailingZeros(card.mask())] = code;
+		}
+		final CardData[] cards = new Deck().getCards();
+		for (CardData card : cards)
+			FULL_DECK[BITS[card.code()]]++;
+		DECK_SIZE = cards.length;
+	}
+	
+	/** The number of players. */
+	final int players;
+	
+	/** The number of copies of each card in each player's hand, indexed by player, then bit. */
+	private final int[][] counts;
+	
+	/** The mask of the cards in each player's hand. */
+	private final long[] masks;
+	
+	/** The number of cards in each player's hand. */
+	private final int[] sizes;
+	
+	/** The bits of the cards in the deck. The top card is at index {@code deckSize-1}. */
+	private final int[] deck = new int[DECK_SIZE];
+	
+	/** The number of cards in the deck. */
+	private int deckSize;
+	
+	/** The code of the card at the center. */
+	private int center;
+	
+	/** The player whose turn it is. */
+	int turn;
+	
+	/** The direction in which turns progress (either 1 or -1). */
+	private int direction;
+	
+	/** The player who won. -1 if none yet. */
+	int winner;
+	
+	/** Whether the deck ran out, ending the game without a winner. */
+	private boolean exhausted;
+	
+	/**
+	 * Creates a simulation for the given number of players. It must be dealt before being played.
+	 * @param players The number of players.
+	 */
+	Simulation(int players) {
+		this.players = players;
+		counts = new int[players][HELD];
+		masks = new long[players];
+		sizes = new int[players];
+	}
+	
+	/**
+	 * Deals a guess of the hidden cards, given what the given player knows of the game.
+	 * The cards the player has not seen are shuffled, then dealt to the opponents
+	 * according to their hand sizes, and the rest makes up the deck.
+	 * 
+	 * @param seat The player whose knowledge the guess is based on, whose turn it is.
+	 * @param hand The number of copies of each card in the player's hand, indexed by bit.
+	 * @param center The code of the card at the center.
+	 * @param handSizes The number of cards in each player's hand.
+	 * @param direction The direction in which turns progress (either 1 or -1).
+	 * @param random The source of randomness of the guess.
+	 */
+	void deal(int seat, int[] hand, int center, int[] handSizes, int direction, SplittableRandom random) {
+		this.center = center;
+		this.direction = direction;
+		turn = seat;
+		winner = -1;
+		
+		// Gathers the cards the player has not seen
+		deckSize = 0;
+		final int centerBit = BITS[center];
+		for (int bit = 0; bit < HELD; bit++) {
+			final int unseen = FULL_DECK[bit] - hand[bit] - (bit == centerBit ? 1 : 0);
+			for (int i = 0; i < unseen; i++)
+				deck[deckSize++] = bit;
+		}
+		
+		// Shuffles them, then deals the opponents' hands
+		for (int i = deckSize-1; i > 0; i--) {
+			final int j = random.nextInt(i+1);
+			final int bit = deck[i];
+			deck[i] = deck[j];
+			deck[j] = bit;
+		}
+		for (int player = 0; player < players; player++) {
+			Arrays.fill(counts[player], 0);
+			masks[player] = 0;
+			sizes[player] = 0;
+			if (player == seat) {
+				for (int bit = 0; bit < HELD; bit++)
+					for (int i = 0; i < hand[bit]; i++)
+						add(player, bit);
+			} else {
+				draw(player, handSizes[player]);
+			}
+		}
+		exhausted = false; // Opponents are dealt what is left if too few cards are unseen
+	}
+	
+	/**
+	 * Deals a new game from a full shuffled deck, the same way as the server: the card at the center
+	 * is drawn first (discarding special cards), then every player is dealt a starting hand.
+	 * The first player starts, and turns progress in increasing order.
+	 * 
+	 * @param random The source of randomness of the shuffle.
+	 */
+	void start(SplittableRandom random) {
+		direction = 1;
+		turn = 0;
+		winner = -1;
+		exhausted = false;
+		
+		// Shuffles a full deck
+		deckSize = 0;
+		for (int bit = 0; bit < HELD; bit++)
+			for (int i = 0; i < FULL_DECK[bit]; i++)
+				deck[deckSize++] = bit;
+		for (int i = deckSize-1; i > 0; i--) {
+			final int j = random.nextInt(i+1);
+			final int bit = deck[i];
+			deck[i] = deck[j];
+			deck[j] = bit;
+		}
+		
+		// Draws the card at the center, then deals the starting hands
+		do
+			center = CODES[deck[--deckSize]];
+		while (VALUES[center].special);
+		for (int player = 0; player < players; player++) {
+			Arrays.fill(counts[player], 0);
+			masks[player] = 0;
+			sizes[player] = 0;
+			draw(player, HandData.START_SIZE);
+		}
+	}
+	
+	/**
+	 * Stores the legal moves of the player whose turn it is in the given array.
+	 * Special cards can be used with any of the regular colors, and drawing a card is always legal.
+	 * 
+	 * @param moves The array in which the moves are stored. Must fit every possible move.
+	 * @return The number of legal moves.
+	 */
+	int moves(int[] moves) {
+		int count = 0;
+		for (long playable = masks[turn] & FOLLOWERS[center]; playable != 0; playable &= playable-1) {
+			final int code = CODES[Long.numberOfTrailingZeros(playable)];
+			if (VALUES[code].special)
+				for (int color = 0; color < COLORS; color++)
+					moves[count++] = CardData.of(CardColor.REGULAR_COLORS[color], VALUES[code]).code();
+			else
+				moves[count++] = code;
+		}
+		moves[count++] = DRAW;
+		return count;
+	}
+	
+	/**
+	 * @return The largest number of legal moves a player can have.
+	 */
+	static int maxMoves() {
+		return HELD * COLORS + 1;
+	}
+	
+	/**
+	 * Picks a random legal move for the player whose turn it is, drawing a card only if no card can be used.
+	 * @param random The source of randomness of the choice.
+	 * @return The move.
+	 */
+	int randomMove(SplittableRandom random) {
+		long playable = masks[turn] & FOLLOWERS[center];
+		if (playable == 0)
+			return DRAW;
+		
+		// Picks a random card among the cards which can be used
+		for (int skip = random.nextInt(Long.bitCount(playable)); skip > 0; skip--)
+			playable &= playable-1;
+		final int code = CODES[Long.numberOfTrailingZeros(playable)];
+		if (!VALUES[code].special)
+			return code;
+		return CardData.of(CardColor.REGULAR_COLORS[random.nextInt(COLORS)], VALUES[code]).code();
+	}
+	
+	/**
+	 * Plays the given move for the player whose turn it is, following the same rules as the server.
+	 * @param move The move to play. Must be legal.
+	 */
+	void play(int move) {
+		
+		// Draws a card, ending the turn
+		if (move == DRAW) {
+			draw(turn, 1);
+			nextPlayer();
+			return;
+		}
+		
+		// Uses the card
+		final int player = turn;
+		remove(player, BITS[move]);
+		center = move;
+		if (sizes[player] == 0) {
+			winner = player;
+			return;
+		}
+		
+		// Applies the card's power, then ends the turn
+		final CardValue value = VALUES[move];
+		if (value == CardValue.DRAW_TWO || value == CardValue.DRAW_FOUR) {
+			nextPlayer();
+			draw(turn, value == CardValue.DRAW_TWO ? 2 : 4);
+		} else if (value == CardValue.REVERSE) {
+			direction *= -1;
+			if (players == 2)
+				nextPlayer();
+		} else if (value == CardValue.SKIP) {
+			nextPlayer();
+		}
+		nextPlayer();
+	}
+	
+	/**
+	 * Plays the game out with random moves.
+	 * @param random The source of randomness of the moves.
+	 * @return The player who won, or the player with the fewest cards if the game did not end.
+	 * -1 if several players tied for the fewest cards.
+	 */
+	int playOut(SplittableRandom random) {
+		for (int turns = 0; !isOver() && turns < MAX_TURNS; turns++)
+			play(randomMove(random));
+		return leader();
+	}
+	
+	/**
+	 * @return The player who won, or the player with the fewest cards if the game did not end.
+	 * -1 if several players tied for the fewest cards.
+	 */
+	int leader() {
+		if (winner != -1)
+			return winner;
+		
+		// Scores the unfinished game by its hand sizes
+		int leader = -1;
+		int fewest = Integer.MAX_VALUE;
+		for (int player = 0; player < players; player++) {
+			if (sizes[player] < fewest) {
+				fewest = sizes[player];
+				leader = player;
+			} else if (sizes[player] == fewest) {
+				leader = -1;
+			}
+		}
+		return leader;
+	}
+	
+	/**
+	 * @param player A player.
+	 * @return The number of cards in the player's hand.
+	 */
+	int size(int player) {
+		return sizes[player];
+	}
+	
+	/**
+	 * @param player A player.
+	 * @return The mask of the cards in the player's hand.
+	 */
+	long mask(int player) {
+		return masks[player];
+	}
+	
+	/**
+	 * @return The code of the card at the center.
+	 */
+	int center() {
+		return center;
+	}
+	
+	/**
+	 * @return The direction in which turns progress (either 1 or -1).
+	 */
+	int direction() {
+		return direction;
+	}
+	
+	/**
+	 * @return Whether the game ended, either with a winner or with the deck running out.
+	 */
+	boolean isOver() {
+		return winner != -1 || exhausted;
+	}
+	
+	/**
+	 * Moves the turn to the next player according to the direction of turn progression.
+	 */
+	private void nextPlayer() {
+		turn = (players + turn + direction) % players;
+	}
+	
+	/**
+	 * Draws the given number of cards from the deck into the given player's hand.
+	 * @param player The player drawing.
+	 * @param cards The number of cards to draw.
+	 */
+	private void draw(int player, int cards) {
+		for (int i = 0; i < cards; i++) {
+			if (deckSize == 0) {
+				exhausted = true;
+				return;
+			}
+			add(player, deck[--deckSize]);
+		}
+	}
+	
+	/**
+	 * Adds a copy of the given card to the given player's hand.
+	 * @param player The player.
+	 * @param bit The bit of the card.
+	 */
+	private void add(int player, int bit) {
+		counts[player][bit]++;
+		masks[player] |= 1L << bit;
+		sizes[player]++;
+	}
+	
+	/**
+	 * Removes a copy of the given card from the given player's hand.
+	 * @param player The player.
+	 * @param bit The bit of the card.
+	 */
+	private void remove(int player, int bit) {
+		if (--counts[player][bit] == 0)
+			masks[player] &= ~(1L << bit);
+		sizes[player]--;
+	}
+}
@@ -0,0 +1,181 @@
+package ai;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Handles a bounded cache of solved game states, shared by every thread solving games.
+ * <br><br>
+ * States are found by their 64-bit keys in buckets of a few entries. Each bucket is
+ * guarded by one of a fixed number of locks (lock striping), so threads only wait for each other
+ * when they touch buckets sharing a lock. When a bucket is full, its entry which took the
+ * least work to solve is evicted, keeping the states most expensive to solve again.
+ * @author Raul Hernandez, 02/07/2024
+ * 
+ */
+class TranspositionTable {
+	
+	/** The number of entries in each bucket. */
+	private static final int WAYS = 4;
+	
+	/** The number of locks guarding the buckets, a power of two. */
+	private static final int STRIPES = 64;
+	
+	/** The bound of an entry whose outcome is exact. */
+	static final int EXACT = 0;
+	
+	/** The bound of an entry whose state's outcome is at least the entry's outcome. */
+	static final int LOWER = 1;
+	
+	/** The bound of an entry whose state's outcome is at most the entry's outcome. */
+	static final int UPPER = 2;
+	
+	/** The largest amount of work stored in an entry. */
+	private static final int MAX_WORK = (1 << 20) - 1;
+	
+	/** The keys of the entries. */
+	private final long[] keys;
+	
+	/** The entries, each packing an outcome, its bound, a move and the work spent on it. 0 if empty. */
+	private final int[] entries;
+	
+	/** Masks a key into the index of its bucket. */
+	private final int mask;
+	
+	/** The locks guarding the buckets. */
+	private final Object[] locks = new Object[STRIPES];
+	
+	/** The number of lookups which found their state. */
+	private final LongAdder hits = new LongAdder();
+	
+	/** The number of lookups which did not find their state. */
+	private final LongAdder misses = new LongAdder();
+	
+	/** The number of entries replaced by entries of other states. */
+	private final LongAdder evictions = new LongAdder();
+	
+	/**
+	 * Creates an empty table.
+	 * @param capacity The minimum number of entries the table can hold.
+	 */
+	TranspositionTable(int capacity) {
+		final int buckets = Integer.highestOneBit(Math.max(STRIPES, (capacity + WAYS - 1) / WAYS - 1)) << 1;
+		keys = new long[buckets * WAYS];
+		entries = new int[buckets * WAYS];
+		mask = buckets - 1;
+		for (int i = 0; i < STRIPES; i++)
+			locks[i] = new Object();
+	}
+	
+	/**
+	 * Packs an entry.
+	 * @param outcome The outcome of the state, for the player whose turn it is (1, 0 or -1).
+	 * @param bound Whether the outcome is {@link #EXACT}, a {@link #LOWER} bound or an {@link #UPPER} bound.
+	 * @param move The best move of the state.
+	 * @param work The number of states searched to solve the state.
+	 * @return The entry, never 0.
+	 */
+	static int entry(int outcome, int bound, int move, long work) {
+		return (outcome + 2) | bound << 2 | (move + 1) << 4 | (int) Math.min(work, MAX_WORK) << 12;
+	}
+	
+	/**
+	 * @param entry A non-empty entry.
+	 * @return The outcome of the entry's state, for the player whose turn it is (1, 0 or -1).
+	 */
+	static int outcome(int entry) {
+		return (entry & 3) - 2;
+	}
+	
+	/**
+	 * @param entry A non-empty entry.
+	 * @return Whether the entry's outcome is {@link #EXACT}, a {@link #LOWER} bound or an {@link #UPPER} bound.
+	 */
+	static int bound(int entry) {
+		return entry >>> 2 & 3;
+	}
+	
+	/**
+	 * @param entry A non-empty entry.
+	 * @return The best move of the entry's state.
+	 */
+	static int move(int entry) {
+		return (entry >>> 4 & 0xFF) - 1;
+	}
+	
+	/**
+	 * @param entry A non-empty entry.
+	 * @return The number of states searched to solve the entry's state.
+	 */
+	private static int work(int entry) {
+		return entry >>> 12;
+	}
+	
+	/**
+	 * Looks up the given state.
+	 * @param key The key of the state.
+	 * @return The state's entry. 0 if the state is not in the table.
+	 */
+	int get(long key) {
+		final int bucket = (int) (key ^ key >>> 32) & mask;
+		synchronized (locks[bucket & (STRIPES-1)]) {
+			for (int i = bucket*WAYS; i < (bucket+1)*WAYS; i++) {
+				if (entries[i] != 0 && keys[i] == key) {
+					hits.increment();
+					return entries[i];
+				}
+			}
+		}
+		misses.increment();
+		return 0;
+	}
+	
+	/**
+	 * Stores the given state, evicting the entry of the bucket which took the least work if the bucket is full.
+	 * @param key The key of the state.
+	 * @param entry The state's entry (see {@link #entry(int, int, int, long)}).
+	 */
+	void put(long key, int entry) {
+		final int bucket = (int) (key ^ key >>> 32) & mask;
+		synchronized (locks[bucket & (STRIPES-1)]) {
+			
+			// Finds the state's entry, an empty entry, or the entry which took the least work
+			int victim = -1;
+			for (int i = bucket*WAYS; i < (bucket+1)*WAYS; i++) {
+				if (entries[i] == 0 || keys[i] == key) {
+					victim = i;
+					break;
+				}
+				if (victim == -1 || work(entries[i]) < work(entries[victim]))
+					victim = i;
+			}
+			if (entries[victim] != 0 && keys[victim] != key)
+				evictions.increment();
+			keys[victim] = key;
+			entries[victim] = entry;
+		}
+	}
+	
+	/**
+	 * @return The ratio of lookups which found their state.
+	 */
+	double getHitRate() {
+		final long hits = this.hits.sum();
+		final long lookups = hits + misses.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+	
+	/**
+	 * @return The number of entries the table can hold.
+	 */
+	int getCapacity() {
+		return entries.length;
+	}
+	
+	/**
+	 * @return A summary of the table's metrics, for logging.
+	 */
+	String stats() {
+		return String.format("%d entries, %d hits, %d misses, %d evictions (%.1f%% hit rate)",
+				entries.length, hits.sum(), misses.sum(), evictions.sum(), 100*getHitRate());
+	}
+}
@@ -0,0 +1,196 @@
+package ai;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import cards.CardColor;
+import cards.CardData;
+import cards.CardValue;
+import cards.HandData;
+
+/**
+ * Handles looking up the probability that a player wins, from what everyone can see of the game
+ * and the composition of the player's own hand.
+ * <br><br>
+ * The probabilities are simulated offline (see {@link WinTableBuilder}) and stored in a file,
+ * which is memory-mapped rather than read, so looking up a probability is a single index
+ * computation and a read from the mapped file. States are grouped into cells by:<br>
+ * - The number of players, and how many turns away the player's turn is.<br>
+ * - The player's hand size, and the fewest cards held by another player.<br>
+ * - How many distinct special cards, regular power cards and colors the player holds,
+ * and how many distinct cards the player could use on the card at the center.
+ * <br><br>
+ * The file starts with a header of {@link #MAGIC}, {@link #VERSION} and the number of cells,
+ * followed by each cell's probability as an unsigned 16-bit fraction.
+ * @author Raul Hernandez, 02/08/2024
+ * 
+ */
+public class WinTable {
+	
+	/** The first bytes of a win table file. */
+	static final int MAGIC = 0x52555754;
+	
+	/** The version of the win table file format, changed whenever the cells change. */
+	static final int VERSION = 1;
+	
+	/** The number of bytes before the cells of a win table file. */
+	static final int HEADER = 12;
+	
+	/** The path of the win table file, set by the rauno.winTable system property. */
+	public static final String DEFAULT_PATH = System.getProperty("rauno.winTable", "wintable.bin");
+	
+	/** The fewest players in a game. */
+	private static final int MIN_PLAYERS = 2;
+	
+	/** The most players told apart. Larger games share the cells of this many players. */
+	private static final int MAX_PLAYERS = 5;
+	
+	/** The largest hand size told apart. Larger hands share the cells of this many cards. */
+	private static final int MAX_HAND = 10;
+	
+	/** The most turns away told apart. */
+	private static final int MAX_TURNS_AWAY = 3;
+	
+	/** The most distinct special cards told apart. */
+	private static final int MAX_SPECIALS = 2;
+	
+	/** The most distinct regular power cards told apart. */
+	private static final int MAX_POWERS = 3;
+	
+	/** The most distinct cards which can be used told apart. */
+	private static final int MAX_PLAYABLE = 4;
+	
+	/** The number of regular colors. */
+	private static final int COLORS = CardColor.REGULAR_COLORS.length;
+	
+	/** The number of cells sharing the same players, turns and hand sizes, one for each hand composition. */
+	static final int COMPOSITIONS = (MAX_SPECIALS+1) * (MAX_POWERS+1) * (MAX_PLAYABLE+1) * (COLORS+1);
+	
+	/** The number of cells in a win table. */
+	static final int CELLS = (MAX_PLAYERS-MIN_PLAYERS+1) * (MAX_TURNS_AWAY+1) * MAX_HAND * MAX_HAND * COMPOSITIONS;
+	
+	/** The mask of the special cards (see {@link CardData#mask()}). */
+	private static final long SPECIALS;
+	
+	/** The mask of the regular power cards. */
+	private static final long POWERS;
+	
+	/** The mask of the cards of each regular color. */
+	private static final long[] COLOR_MASKS = new long[COLORS];
+	static {
+		long specials = 0;
+		long powers = 0;
+		for (CardValue value : CardValue.SPECIAL_POWERS)
+			specials |= CardData.of(value).mask();
+		for (int color = 0; color < COLORS; color++) {
+			for (CardValue value : CardValue.values())
+				COLOR_MASKS[color] |= CardData.of(CardColor.REGULAR_COLORS[color], value).mask();
+			for (CardValue value : CardValue.REGULAR_POWERS)
+				powers |= CardData.of(CardColor.REGULAR_COLORS[color], value).mask();
+		}
+		SPECIALS = specials;
+		POWERS = powers;
+	}
+	
+	/** The mapped cells of the table. */
+	private final MappedByteBuffer cells;
+	
+	/**
+	 * Creates a table from its mapped file.
+	 * @param cells The mapped cells of the table.
+	 */
+	private WinTable(MappedByteBuffer cells) {
+		this.cells = cells;
+	}
+	
+	/**
+	 * Maps the given win table file into memory.
+	 * @param path The path of the file.
+	 * @return The table.
+	 * @throws IOException If the file cannot be read, or is not a win table of the current version.
+	 */
+	public static WinTable load(String path) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			final MappedByteBuffer cells = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (channel.size() != HEADER + 2L*CELLS || cells.getInt(0) != MAGIC
+					|| cells.getInt(4) != VERSION || cells.getInt(8) != CELLS)
+				throw new IOException(path + " is not a win table of version " + VERSION + ", build it with WinTableBuilder");
+			return new WinTable(cells);
+		}
+	}
+	
+	/**
+	 * Looks up the probability that the given player wins.
+	 * @param hand The player's hand.
+	 * @param center The card at the center.
+	 * @param handSizes The number of cards in each player's hand.
+	 * @param seat The player's ID.
+	 * @param turn The ID of the player whose turn it is.
+	 * @param direction The direction in which turns progress (either 1 or -1).
+	 * @return The probability that the player wins, between 0 and 1.
+	 */
+	public double probability(HandData hand, CardData center, int[] handSizes, int seat, int turn, int direction) {
+		int fewestOther = Integer.MAX_VALUE;
+		for (int i = 0; i < handSizes.length; i++)
+			if (i != seat)
+				fewestOther = Math.min(fewestOther, handSizes[i]);
+		final int players = handSizes.length;
+		final int turnsAway = ((seat - turn) * direction % players + players) % players;
+		return probability(index(players, turnsAway, hand.size(), fewestOther, hand.mask(), center.code()));
+	}
+	
+	/**
+	 * @param index The index of a cell.
+	 * @return The probability stored in the cell.
+	 */
+	double probability(int index) {
+		return (cells.getShort(HEADER + 2*index) & 0xFFFF) / 65535.0;
+	}
+	
+	/**
+	 * Computes the index of the cell a state falls in.
+	 * @param players The number of players.
+	 * @param turnsAway The number of turns until the player's turn. 0 if it is the player's turn.
+	 * @param handSize The number of cards in the player's hand.
+	 * @param fewestOther The fewest cards held by another player.
+	 * @param mask The mask of the cards in the player's hand.
+	 * @param center The code of the card at the center.
+	 * @return The index of the cell.
+	 */
+	static int index(int players, int turnsAway, int handSize, int fewestOther, long mask, int center) {
+		int colors = 0;
+		for (int color = 0; color < COLORS; color++)
+			if ((mask & COLOR_MASKS[color]) != 0)
+				colors++;
+		
+		int index = clamp(players, MIN_PLAYERS, MAX_PLAYERS) - MIN_PLAYERS;
+		index = index * (MAX_TURNS_AWAY+1) + Math.min(turnsAway, MAX_TURNS_AWAY);
+		index = index * MAX_HAND + clamp(handSize, 1, MAX_HAND) - 1;
+		index = index * MAX_HAND + clamp(fewestOther, 1, MAX_HAND) - 1;
+		index = index * (MAX_SPECIALS+1) + Math.min(Long.bitCount(mask & SPECIALS), MAX_SPECIALS);
+		index = index * (MAX_POWERS+1) + Math.min(Long.bitCount(mask & POWERS), MAX_POWERS);
+		index = index * (MAX_PLAYABLE+1) + Math.min(Long.bitCount(mask & Simulation.FOLLOWERS[center]), MAX_PLAYABLE);
+		return index * (COLORS+1) + colors;
+	}
+	
+	/**
+	 * @param index The index of a cell.
+	 * @return The number of players of the cell, counting every larger game as {@link #MAX_PLAYERS}.
+	 */
+	static int players(int index) {
+		return MIN_PLAYERS + index / (CELLS / (MAX_PLAYERS-MIN_PLAYERS+1));
+	}
+	
+	/**
+	 * @param value A number.
+	 * @param min The smallest number returned.
+	 * @param max The largest number returned.
+	 * @return The number, clamped between the given bounds.
+	 */
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+}
@@ -0,0 +1,195 @@
+package ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import cards.CardData;
+import cards.Deck;
+import cards.HandData;
+
+/**
+ * Handles building the win table file offline (see {@link WinTable}), by playing random games
+ * in parallel and counting, for every turn of every game, which cell each player was in and who won.
+ * Cells seen too rarely fall back to the win rate of every hand composition
+ * sharing the same players, turns and hand sizes.
+ * <br><br>
+ * Arguments: [GAMES (default: 1000000)] [PATH (default: {@link WinTable#DEFAULT_PATH})]
+ * @author Raul Hernandez, 02/08/2024
+ * 
+ */
+public class WinTableBuilder {
+	
+	/**
+	 * Handles playing the games of a range of workers, splitting the range in half until one worker is left.
+	 */
+	private static class Build extends RecursiveAction {
+		
+		/** The serial version UID of the build. */
+		private static final long serialVersionUID = 1L;
+		
+		/** The number of games each worker plays. */
+		private final int games;
+		
+		/** The number of times each cell was seen, filled by the workers. */
+		private final int[][] visits;
+		
+		/** The number of times each cell's player went on to win, filled by the workers. */
+		private final int[][] wins;
+		
+		/** The first worker of the range. */
+		private final int from;
+		
+		/** The worker after the last worker of the range. */
+		private final int to;
+		
+		/**
+		 * Creates a build for the given range of workers.
+		 * @param games The number of games each worker plays.
+		 * @param visits The number of times each cell was seen, filled by the workers.
+		 * @param wins The number of times each cell's player went on to win, filled by the workers.
+		 * @param from The first worker of the range.
+		 * @param to The worker after the last worker of the range.
+		 */
+		private Build(int games, int[][] visits, int[][] wins, int from, int to) {
+			this.games = games;
+			this.visits = visits;
+			this.wins = wins;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new Build(games, visits, wins, from, middle), new Build(games, visits, wins, middle, to));
+			} else {
+				play();
+			}
+		}
+		
+		/**
+		 * Plays the worker's games, counting the cells seen and who won.
+		 */
+		private void play() {
+			final SplittableRandom random = new SplittableRandom();
+			final int[] visits = new int[WinTable.CELLS];
+			final int[] wins = new int[WinTable.CELLS];
+			final int[] seen = new int[Simulation.MAX_TURNS * MAX_PLAYERS];
+			final Simulation[] games = new Simulation[MAX_PLAYERS+1];
+			for (int players = MIN_PLAYERS; players <= MAX_PLAYERS; players++)
+				games[players] = new Simulation(players);
+			
+			for (int i = 0; i < this.games; i++) {
+				final Simulation game = games[MIN_PLAYERS + i % (MAX_PLAYERS-MIN_PLAYERS+1)];
+				game.start(random);
+				
+				// Plays the game out, noting the cell of every player on every turn
+				int count = 0;
+				for (int turns = 0; !game.isOver() && turns < Simulation.MAX_TURNS; turns++) {
+					for (int seat = 0; seat < game.players; seat++) {
+						int fewestOther = Integer.MAX_VALUE;
+						for (int other = 0; other < game.players; other++)
+							if (other != seat)
+								fewestOther = Math.min(fewestOther, game.size(other));
+						final int turnsAway = ((seat - game.turn) * game.direction() % game.players + game.players) % game.players;
+						seen[count++] = WinTable.index(game.players, turnsAway, game.size(seat), fewestOther, game.mask(seat), game.center()) * MAX_PLAYERS + seat;
+					}
+					game.play(game.randomMove(random));
+				}
+				
+				// Credits the cells of the winner
+				final int winner = game.leader();
+				for (int j = 0; j < count; j++) {
+					final int cell = seen[j] / MAX_PLAYERS;
+					visits[cell]++;
+					if (seen[j] % MAX_PLAYERS == winner)
+						wins[cell]++;
+				}
+			}
+			
+			this.visits[from] = visits;
+			this.wins[from] = wins;
+		}
+	}
+	
+	/** The fewest players in a simulated game. */
+	private static final int MIN_PLAYERS = 2;
+	
+	/** The most players in a simulated game. */
+	private static final int MAX_PLAYERS = 5;
+	
+	/** The fewest times a cell must be seen for its own win rate to be used. */
+	private static final int MIN_VISITS = 30;
+	
+	public static void main(String[] args) throws IOException {
+		final int games = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		final String path = args.length > 1 ? args[1] : WinTable.DEFAULT_PATH;
+		
+		// Plays the games on every core
+		final long start = System.nanoTime();
+		final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		final int workers = pool.getParallelism();
+		final int[][] visits = new int[workers][];
+		final int[][] wins = new int[workers][];
+		pool.invoke(new Build((games + workers - 1) / workers, visits, wins, 0, workers));
+		pool.shutdown();
+		
+		// Merges the workers' counts, and the counts of every hand composition
+		final long[] cellVisits = new long[WinTable.CELLS];
+		final long[] cellWins = new long[WinTable.CELLS];
+		final long[] groupVisits = new long[WinTable.CELLS / WinTable.COMPOSITIONS];
+		final long[] groupWins = new long[WinTable.CELLS / WinTable.COMPOSITIONS];
+		for (int worker = 0; worker < workers; worker++) {
+			for (int cell = 0; cell < WinTable.CELLS; cell++) {
+				cellVisits[cell] += visits[worker][cell];
+				cellWins[cell] += wins[worker][cell];
+				groupVisits[cell / WinTable.COMPOSITIONS] += visits[worker][cell];
+				groupWins[cell / WinTable.COMPOSITIONS] += wins[worker][cell];
+			}
+		}
+		
+		// Writes the table, falling back to coarser win rates for rarely seen cells
+		int covered = 0;
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+			output.writeInt(WinTable.MAGIC);
+			output.writeInt(WinTable.VERSION);
+			output.writeInt(WinTable.CELLS);
+			for (int cell = 0; cell < WinTable.CELLS; cell++) {
+				final int group = cell / WinTable.COMPOSITIONS;
+				final double probability;
+				if (cellVisits[cell] >= MIN_VISITS) {
+					probability = (double) cellWins[cell] / cellVisits[cell];
+					covered++;
+				} else if (groupVisits[group] >= MIN_VISITS) {
+					probability = (double) groupWins[group] / groupVisits[group];
+				} else {
+					probability = 1.0 / WinTable.players(cell);
+				}
+				output.writeShort((int) Math.round(probability * 65535));
+			}
+		}
+		System.out.printf("Wrote %s: %d games in %.1f s on %d workers, %.1f%% of %d cells seen at least %d times%n",
+				path, games, (System.nanoTime() - start) / 1e9, workers, 100.0 * covered / WinTable.CELLS, WinTable.CELLS, MIN_VISITS);
+		
+		// Measures the time a lookup takes on random hands
+		final WinTable table = WinTable.load(path);
+		final Deck deck = new Deck();
+		final HandData hand = new HandData();
+		for (int i = 0; i < HandData.START_SIZE; i++)
+			hand.add(deck.draw());
+		final CardData center = deck.draw();
+		final int[] handSizes = {HandData.START_SIZE, 3, 5, 1};
+		double sum = 0;
+		final int lookups = 10_000_000;
+		final long lookupStart = System.nanoTime();
+		for (int i = 0; i < lookups; i++)
+			sum += table.probability(hand, center, handSizes, i & 3, 0, 1);
+		System.out.printf("%.1f ns per lookup (average probability %.3f)%n", (double) (System.nanoTime() - lookupStart) / lookups, sum / lookups);
+	}
+}
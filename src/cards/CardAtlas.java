@@ -0,0 +1,174 @@
+package cards;
+
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.geometry.Pos;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * Handles the image atlas onto which every RaUno card face and the card back are rendered once.
+ * Each row of the atlas holds a card color, and each column a card value, with the card back
+ * in the last column of the first row.
+ * @author Raul Hernandez, 01/20/2024
+ * 
+ */
+public class CardAtlas {
+	
+	/** The number of columns in the atlas. */
+	private static final int COLUMNS = CardValue.values().length + 1;
+	
+	/** The number of rows in the atlas. */
+	private static final int ROWS = CardColor.values().length;
+	
+	/** The atlas image. Holds {@code null} until the atlas is rendered. */
+	public static final ObjectProperty<Image> IMAGE = new SimpleObjectProperty<Image>();
+	
+	/** The viewport of each card in the atlas, indexed by row and column. */
+	private static final Rectangle2D[] VIEWPORTS = new Rectangle2D[ROWS*COLUMNS];
+	
+	static {
+		// Computes the viewports
+		for (int row = 0; row < ROWS; row++)
+			for (int column = 0; column < COLUMNS; column++)
+				VIEWPORTS[row*COLUMNS + column] = new Rectangle2D(
+					column*Card.WIDTH, row*Card.HEIGHT, Card.WIDTH, Card.HEIGHT
+				);
+	}
+	
+	/**
+	 * Renders every card face and the card back into the atlas image.
+	 * Must be called from the JavaFX application thread.
+	 */
+	public static void render() {
+		if (IMAGE.get() != null)
+			return;
+		
+		// Lays out every card face
+		final Group atlas = new Group();
+		for (CardColor color : CardColor.values()) {
+			for (CardValue value : CardValue.values()) {
+				final Group face = face(color, value);
+				face.setLayoutX(value.ordinal()*Card.WIDTH);
+				face.setLayoutY(color.ordinal()*Card.HEIGHT);
+				atlas.getChildren().add(face);
+			}
+		}
+		
+		// Lays out the card back
+		final Group back = back();
+		back.setLayoutX((COLUMNS-1)*Card.WIDTH);
+		atlas.getChildren().add(back);
+		
+		// Renders the atlas
+		final SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
+		parameters.setViewport(new Rectangle2D(0, 0, COLUMNS*Card.WIDTH, ROWS*Card.HEIGHT));
+		IMAGE.set(atlas.snapshot(parameters, null));
+	}
+	
+	/**
+	 * @param data The data of the card.
+	 * @return The viewport of the card's face in the atlas.
+	 */
+	public static Rectangle2D viewport(CardData data) {
+		return VIEWPORTS[data.getColor().ordinal()*COLUMNS + data.getValue().ordinal()];
+	}
+	
+	/**
+	 * @return The viewport of the card back in the atlas.
+	 */
+	public static Rectangle2D backViewport() {
+		return VIEWPORTS[COLUMNS-1];
+	}
+	
+	/**
+	 * Builds the nodes of the face of a card.
+	 * @param color The color of the card.
+	 * @param value The value of the card.
+	 * @return The group holding the card's face.
+	 */
+	private static Group face(CardColor color, CardValue value) {
+		final Group face = new Group();
+		
+		// Sets up the card background
+		final Rectangle background = new Rectangle(Card.WIDTH-Card.BORDER, Card.HEIGHT-Card.BORDER);
+		background.setFill(color.color);
+		background.setOpacity(Card.OPACITY);
+		background.setLayoutX(Card.BORDER/2);
+		background.setLayoutY(Card.BORDER/2);
+		face.getChildren().add(background);
+		
+		// Sets up the upper-left card text
+		final String valueText = " " + value.text;
+		final Label upperLeftText = new Label(valueText);
+		upperLeftText.setPrefSize(Card.WIDTH-2*Card.BORDER, Card.HEIGHT/2-Card.BORDER);
+		upperLeftText.setLayoutX(Card.BORDER);
+		upperLeftText.setLayoutY(Card.BORDER);
+		upperLeftText.setAlignment(Pos.TOP_LEFT);
+		upperLeftText.setFont(Card.TEXT_FONT);
+		upperLeftText.setTextFill(Color.WHITE);
+		face.getChildren().add(upperLeftText);
+		
+		// Sets up the lower-right card text
+		final Label lowerRightText = new Label(valueText);
+		lowerRightText.setPrefSize(Card.WIDTH-2*Card.BORDER, Card.HEIGHT/2-Card.BORDER);
+		lowerRightText.setLayoutY(Card.HEIGHT/2);
+		lowerRightText.setAlignment(Pos.TOP_LEFT);
+		lowerRightText.setFont(Card.TEXT_FONT);
+		lowerRightText.setTextFill(Color.WHITE);
+		lowerRightText.setRotate(180);
+		face.getChildren().add(lowerRightText);
+		
+		addBorder(face);
+		return face;
+	}
+	
+	/**
+	 * Builds the nodes of the back of a card.
+	 * @return The group holding the card's back.
+	 */
+	private static Group back() {
+		final Group back = new Group();
+		
+		// Sets up card's back side
+		final Rectangle background = new Rectangle(Card.WIDTH-Card.BORDER, Card.HEIGHT-Card.BORDER, Color.BLACK);
+		background.setLayoutX(Card.BORDER/2);
+		background.setLayoutY(Card.BORDER/2);
+		background.setOpacity(Card.OPACITY);
+		back.getChildren().add(background);
+		
+		addBorder(back);
+		return back;
+	}
+	
+	/**
+	 * Adds the card border to the given card side.
+	 * @param side The group holding a side of a card.
+	 */
+	private static void addBorder(Group side) {
+		final Rectangle topBorder = new Rectangle(Card.WIDTH, Card.BORDER, Color.WHITE);
+		topBorder.setArcWidth(Card.BORDER);
+		topBorder.setArcHeight(Card.BORDER);
+		final Rectangle bottomBorder = new Rectangle(Card.WIDTH, Card.BORDER, Color.WHITE);
+		bottomBorder.setLayoutY(Card.HEIGHT-Card.BORDER);
+		bottomBorder.setArcWidth(Card.BORDER);
+		bottomBorder.setArcHeight(Card.BORDER);
+		final Rectangle leftBorder = new Rectangle(Card.BORDER, Card.HEIGHT, Color.WHITE);
+		leftBorder.setArcWidth(Card.BORDER);
+		leftBorder.setArcHeight(Card.BORDER);
+		final Rectangle rightBorder = new Rectangle(Card.BORDER, Card.HEIGHT, Color.WHITE);
+		rightBorder.setLayoutX(Card.WIDTH-Card.BORDER);
+		rightBorder.setArcWidth(Card.BORDER);
+		rightBorder.setArcHeight(Card.BORDER);
+		side.getChildren().add(topBorder);
+		side.getChildren().add(bottomBorder);
+		side.getChildren().add(leftBorder);
+		side.getChildren().add(rightBorder);
+	}
+}
@@ -2,36 +2,132 @@ package cards;
 
 /**
  * Handles the data of RaUno cards.
+ * Card data is immutable, and there is exactly one instance for each color and value,
+ * so cards can be shared freely and compared by reference. A special card whose color
+ * was chosen is the instance with that color, and the special card with
+ * {@link CardColor#BLACK} is the one whose color was not chosen yet.
+ * <br><br>
+ * Which cards can follow which is precomputed for every pair of cards. Each card which
+ * can be held in a hand also has a bit (see {@link #mask()}), so a set of held cards
+ * fits in a {@code long}, and the cards of a hand which can be played come down to
+ * a single AND with {@link #followers(CardData)}.
  * @author Raul Hernandez, 12/26/2023
  *
  */
-public class CardData {
+public final class CardData {
+	
+	/** The number of card values, used to compute card codes. */
+	private static final int VALUES = CardValue.values().length;
+	
+	/** The number of cards which can be held in a hand, each given its own bit. */
+	private static int heldCards = 0;
+	
+	/** The only instance of each card, indexed by code. */
+	private static final CardData[] CARDS = new CardData[CardColor.values().length * VALUES];
+	
+	/** The cards which can be held in a hand, indexed by bit. */
+	private static final CardData[] HELD;
+	
+	/** Whether each card can follow each card, indexed by the card's code times the number of codes, plus the followed card's code. */
+	private static final boolean[] FOLLOWS;
+	
+	/** The held cards which can follow each card, as a mask (see {@link #mask()}), indexed by the followed card's code. */
+	private static final long[] FOLLOWERS;
+	static {
+		for (CardColor color : CardColor.values())
+			for (CardValue value : CardValue.values())
+				CARDS[color.ordinal()*VALUES + value.ordinal()] = new CardData(color, value);
+		
+		// Indexes the cards which can be held
+		HELD = new CardData[heldCards];
+		for (CardData card : CARDS)
+			if (card.bit != -1)
+				HELD[card.bit] = card;
+		
+		// Precomputes which cards can follow which
+		FOLLOWS = new boolean[CARDS.length * CARDS.length];
+		FOLLOWERS = new long[CARDS.length];
+		for (CardData card : CARDS) {
+			for (CardData center : CARDS) {
+				final boolean follows = card.value.special || card.value == center.value || card.color == center.color;
+				FOLLOWS[card.code*CARDS.length + center.code] = follows;
+				if (follows)
+					FOLLOWERS[center.code] |= card.mask();
+			}
+		}
+	}
 	
 	/** The color of the RaUno card. */
-	private CardColor color;
+	private final CardColor color;
 	
 	/** The value of the RaUno card. */
 	private final CardValue value;
+	
+	/** The code of the RaUno card (see {@link #code()}). */
+	private final byte code;
+	
+	/** The bit of the RaUno card in hand masks (see {@link #mask()}). -1 if it cannot be held. */
+	private final int bit;
 
 	/**
-	 * Constructs a RaUno card with the given data.
+	 * Constructs the only instance of a RaUno card with the given data.
 	 * 
 	 * @param color The color of the card. 
 	 * @param value The value of the card.
 	 */
-	public CardData(CardColor color, CardValue value) {
+	private CardData(CardColor color, CardValue value) {
 		this.color = color;
 		this.value = value;
+		code = (byte) (color.ordinal()*VALUES + value.ordinal());
+		
+		// Only colored regular cards and uncolored special cards can be held
+		if (value.special == (color == CardColor.BLACK))
+			bit = heldCards++;
+		else
+			bit = -1;
+	}
+	
+	/**
+	 * @param color The color of the card.
+	 * @param value The value of the card.
+	 * @return The card with the given data.
+	 */
+	public static CardData of(CardColor color, CardValue value) {
+		return CARDS[color.ordinal()*VALUES + value.ordinal()];
 	}
 	
 	/**
-	 * Constructs a card with a special value.
-	 * @param value The value of the RaUno card. Must be special.
+	 * @param color The ordinal of the card's color, as sent in requests.
+	 * @param value The ordinal of the card's value, as sent in requests.
+	 * @return The card with the given data.
 	 */
-	public CardData(CardValue value) {
-		this(CardColor.BLACK, value);
+	public static CardData of(int color, int value) {
+		return CARDS[color*VALUES + value];
+	}
+	
+	/**
+	 * @param value The value of the card. Must be special.
+	 * @return The card with the given value, whose color was not chosen yet.
+	 */
+	public static CardData of(CardValue value) {
 		if (!value.special)
 			throw new RuntimeException("The value of a color-less card must be special.");
+		return of(CardColor.BLACK, value);
+	}
+	
+	/**
+	 * @param code The code of the card (see {@link #code()}).
+	 * @return The card with the given code.
+	 */
+	public static CardData fromCode(int code) {
+		return CARDS[code];
+	}
+	
+	/**
+	 * @return The number of different card codes.
+	 */
+	public static int codes() {
+		return CARDS.length;
 	}
 	
 	/**
@@ -40,7 +136,48 @@ public class CardData {
 	 * @return Whether this card can follow the given card.
 	 */
 	public boolean canFollow(CardData card) {
-		return value.special || value == card.value || color == card.color;
+		return FOLLOWS[code*CARDS.length + card.code];
+	}
+	
+	/**
+	 * Checks whether this card can be used out of turn on the given card, with the jump-in house rule.
+	 * @param center The card at the center.
+	 * @return Whether this card is identical to the center card. Special cards never jump in,
+	 * as their chosen colors make them different cards.
+	 */
+	public boolean canJumpIn(CardData center) {
+		return this == center && !value.special;
+	}
+	
+	/**
+	 * @param center The card at the center.
+	 * @return The mask of the held cards which can follow the given card (see {@link #mask()}).
+	 */
+	public static long followers(CardData center) {
+		return FOLLOWERS[center.code];
+	}
+	
+	/**
+	 * @return The mask with only this card's bit set, as used in hand masks. 0 if the card cannot be held.
+	 * Held cards' bits are ordered the same way as their codes.
+	 */
+	public long mask() {
+		return bit == -1 ? 0 : 1L << bit;
+	}
+	
+	/**
+	 * @param mask A mask of held cards, with at least one bit set.
+	 * @return The held card with the lowest bit set in the given mask.
+	 */
+	public static CardData lowest(long mask) {
+		return HELD[Long.numberOfTrailingZeros(mask)];
+	}
+	
+	/**
+	 * @return The number of different cards which can be held in a hand.
+	 */
+	public static int heldCards() {
+		return HELD.length;
 	}
 	
 	/**
@@ -51,11 +188,11 @@ public class CardData {
 	}
 	
 	/**
-	 * Sets the RaUno card's color to the given color.
-	 * @param color The color to which the card's color will be set.
+	 * @param color The color chosen for the card. Only used by special cards.
+	 * @return The same card with the given color if special, or this card otherwise.
 	 */
-	public void setColor(CardColor color) {
-		this.color = color;
+	public CardData withColor(CardColor color) {
+		return value.special ? of(color, value) : this;
 	}
 	
 	/**
@@ -65,6 +202,14 @@ public class CardData {
 		return value;
 	}
 	
+	/**
+	 * @return The code of the RaUno card, unique to its color and value. Cards
+	 * are ordered by color, then by value.
+	 */
+	public byte code() {
+		return code;
+	}
+	
 	public String toString() {
 		return "CardData(" + color + ", " + value + ")";
 	}
@@ -1,6 +1,8 @@
 package cards;
 
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Handles a deck of RaUno cards.
@@ -15,22 +17,89 @@ public class Deck {
 	 * The card at index i is on top of the card at index i+1.
 	 */
 	private final ArrayList<CardData> cards;
+	
+	/** Every card of a full deck, kept to refill the deck when it is reset. {@code null} until needed. */
+	private CardData[] fullDeck;
 
 	/** 
 	 * Creates a full deck for playing RaUno with shuffled cards.
 	 */
 	public Deck() {
-		cards = defaultCards();
+		final ArrayList<CardData> cards = defaultCards();
+		fullDeck = cards.toArray(new CardData[cards.size()]);
+		this.cards = cards;
 		shuffle();
 	}
 	
+	/**
+	 * Creates a deck with the given cards, in the given order.
+	 * @param cards The cards in the deck, starting from the top card.
+	 */
+	public Deck(CardData...cards) {
+		this.cards = new ArrayList<CardData>(cards.length);
+		reset(cards);
+	}
+	
+	/**
+	 * Refills the deck with every card of a full deck, shuffled, so it can be used for another game.
+	 */
+	public void reset() {
+		reset(ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Refills the deck with every card of a full deck, shuffled by the given source of randomness,
+	 * so that the same source always deals the same game.
+	 * @param random The source of randomness of the shuffle.
+	 */
+	public void reset(Random random) {
+		reset(random, 1);
+	}
+	
+	/**
+	 * Refills the deck with every card of the given number of full decks, shuffled together by
+	 * the given source of randomness, for tables too large to be dealt from a single deck.
+	 * @param random The source of randomness of the shuffle.
+	 * @param decks The number of full decks.
+	 */
+	public void reset(Random random, int decks) {
+		if (fullDeck == null) {
+			final ArrayList<CardData> cards = defaultCards();
+			fullDeck = cards.toArray(new CardData[cards.size()]);
+		}
+		cards.clear();
+		cards.ensureCapacity(decks * fullDeck.length);
+		for (int i = 0; i < decks; i++)
+			for (CardData card : fullDeck)
+				cards.add(card);
+		shuffle(random);
+	}
+	
+	/**
+	 * Replaces the cards in the deck with the given cards, in the given order.
+	 * @param cards The cards in the deck, starting from the top card.
+	 */
+	public void reset(CardData...cards) {
+		this.cards.clear();
+		for (CardData card : cards)
+			this.cards.add(card);
+	}
+	
 	/**
 	 * Shuffles all the cards currently in the deck.
 	 */
 	public void shuffle() {
+		shuffle(ThreadLocalRandom.current());
+	}
+	
+	/**
+	 * Shuffles all the cards currently in the deck.
+	 * @param random The source of randomness of the shuffle.
+	 */
+	public void shuffle(Random random) {
 		final int size = cards.size();
 		for (int i = size; i > 0; i--)
-			cards.add(cards.remove((int)(i*Math.random())));
+			cards.add(cards.remove(random.nextInt(i)));
 	}
 	
 	/** 
@@ -50,6 +119,13 @@ public class Deck {
 		return cards.size();
 	}
 	
+	/**
+	 * @return The cards currently in the deck, starting from the top card.
+	 */
+	public CardData[] getCards() {
+		return cards.toArray(new CardData[cards.size()]);
+	}
+	
 	/**
 	 * Creates a list of cards containing:<br>
 	 * - 2 of each digit card, in each color. (80 cards)<br>
@@ -65,18 +141,18 @@ public class Deck {
 		for (CardValue value : CardValue.DIGITS)
 			for (CardColor color : CardColor.REGULAR_COLORS)
 				for (int i = 0; i < 2; i++)
-					cards.add(new CardData(color, value));
+					cards.add(CardData.of(color, value));
 		
 		// Creates 2 of each color and regular power card
 		for (CardValue value : CardValue.REGULAR_POWERS)
 			for (CardColor color : CardColor.REGULAR_COLORS)
 				for (int i = 0; i < 2; i++)
-					cards.add(new CardData(color, value));
+					cards.add(CardData.of(color, value));
 		
 		// Creates 4 of each special power card
 		for (CardValue value : CardValue.SPECIAL_POWERS)
 			for (int i = 0; i < 4; i++)
-				cards.add(new CardData(CardColor.BLACK, value));
+				cards.add(CardData.of(value));
 		
 		return cards;
 	}
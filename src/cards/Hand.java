@@ -1,32 +1,85 @@
 package cards;
 
+import java.util.ArrayList;
+
 import client.RaUnoClient;
 import javafx.scene.Cursor;
 import javafx.scene.Group;
-import javafx.scene.Node;
+import javafx.scene.image.ImageView;
 
 /**
  * Handles RaUno hands.
+ * The cards are kept sorted by color, then value, and only the cards that fit
+ * on screen are given a node. Large hands are fanned out, then scrolled through.
  * @author Raul Hernandez, 12/25/2023
- *
+ * 
  */
 public class Hand extends Group {
 	
-	/** The spacing between cards in the hand. */
-	private static final int SPACING = Card.WIDTH + 10;
+	/** The largest spacing between cards in the hand. */
+	private static final int MAX_SPACING = Card.WIDTH + 10;
+	
+	/** The smallest spacing between cards in the hand, once fanned out. */
+	private static final int MIN_SPACING = 30;
+	
+	/** The largest width the hand can take up. */
+	private static final int MAX_WIDTH = RaUnoClient.WIDTH - 100;
+	
+	/** The opacity of the cards which cannot be played, while highlighting. */
+	private static final double DIMMED_OPACITY = 0.5;
+	
+	/** The largest number of cards shown at once. */
+	private static final int SLOTS = (MAX_WIDTH - Card.WIDTH) / MIN_SPACING + 1;
 	
-	/** The cards in this hand. */
+	/** The cards in this hand, sorted by color, then value. */
 	private final HandData cards;
 	
+	/** Whether each card in the hand is shown (as opposed to still being animated in). */
+	private final ArrayList<Boolean> shown = new ArrayList<Boolean>();
+	
+	/** The nodes showing the visible cards. Slot i shows the card at index {@code first+i}. */
+	private final ImageView[] slots = new ImageView[SLOTS];
+	
+	/** The index of the card shown in the first slot. */
+	private int first = 0;
+	
+	/** The current spacing between cards in the hand. */
+	private double spacing = MAX_SPACING;
+	
+	/** The card on which the highlighted cards can be played. {@code null} if no card is highlighted. */
+	private CardData highlighted = null;
+	
 	/**
 	 * Creates a hand with the given cards.
 	 * @param cards The cards in this hand.
 	 */
 	public Hand(HandData cards) {
 		super();
-		this.cards = cards;
+		this.cards = new HandData();
+		
+		// Sets up the card slots
+		for (int i = 0; i < SLOTS; i++) {
+			final int slot = i;
+			final ImageView node = new ImageView();
+			node.imageProperty().bind(CardAtlas.IMAGE);
+			node.setOnMouseClicked(m -> {
+				final int index = first + slot;
+				if (index < size())
+					RaUnoClient.useCard(this.cards.get(index), index);
+			});
+			node.setOnMouseEntered(m -> node.setCursor(Cursor.HAND));
+			node.setOnMouseExited(m -> node.setCursor(Cursor.DEFAULT));
+			node.setVisible(false);
+			slots[i] = node;
+			getChildren().add(node);
+		}
+		
+		// Scrolls through hands too large to show at once
+		setOnScroll(s -> scroll(s.getDeltaY() < 0 ? 1 : -1));
+		
 		for (CardData card : cards.getCards())
-			addNode(new Card(card));
+			show(add(card));
+		update(0);
 	}
 	
 	/**
@@ -37,43 +90,37 @@ public class Hand extends Group {
 	}
 	
 	/**
-	 * Adds the given card to the hand.
+	 * Adds the given card to the hand, hidden until it is shown.
 	 * @param card The card to be added to the hand.
+	 * @return The index at which the card was added.
 	 */
-	public void add(Card card) {
-		addNode(new Card(card.data));
-		cards.add(card.data);
+	public int add(CardData card) {
+		
+		// Finds the index after every card sorted before or with this card
+		final int key = sortKey(card);
+		int low = 0;
+		int high = size();
+		while (low < high) {
+			final int middle = (low+high) >>> 1;
+			if (sortKey(cards.get(middle)) <= key)
+				low = middle+1;
+			else
+				high = middle;
+		}
+		
+		cards.add(low, card);
+		shown.add(low, Boolean.FALSE);
+		update(low);
+		return low;
 	}
 	
 	/**
-	 * Adds the given card's node to the hand.
-	 * @param card The card whose node will be added.
+	 * Adds the given card to the hand, hidden until it is shown.
+	 * @param card The card to be added to the hand.
+	 * @return The index at which the card was added.
 	 */
-	private void addNode(Card card) {
-		
-		// Computes the card's x-coordinate
-		final int numCards = size();
-		final double cardX = cardX(numCards);
-		
-		// Adds mouse functionality
-		card.setOnMouseClicked(m -> {
-			final CardData[] cards = this.cards.getCards();
-			for (int i = 0; i < cards.length; i++) {
-				if (cards[i] == card.data) {
-					RaUnoClient.useCard(card.data, i);
-					break;
-				}
-			}
-		});
-		card.setOnMouseEntered(m -> card.setCursor(Cursor.HAND));
-		card.setOnMouseExited(m -> card.setCursor(Cursor.DEFAULT));
-		
-		// Adds the card to the hand
-		card.setLayoutX(cardX);
-		card.setVisible(false);
-		getChildren().add(card);
-		
-		setLayoutX((RaUnoClient.WIDTH-width()-SPACING)/2);
+	public int add(Card card) {
+		return add(card.data);
 	}
 	
 	/**
@@ -81,46 +128,166 @@ public class Hand extends Group {
 	 * @param index The index at which to display the card.
 	 */
 	public void show(int index) {
-		getChildren().get(index).setVisible(true);
+		if (index < 0 || index >= size()) // Skips cards removed while being animated
+			return;
+		shown.set(index, Boolean.TRUE);
+		refresh(index, index+1);
+	}
+	
+	/**
+	 * Displays the first hidden card with the same color and value as the given card.
+	 * @param card The card to display.
+	 */
+	public void show(CardData card) {
+		show(hiddenIndex(card));
+	}
+	
+	/**
+	 * @param card The card to look for.
+	 * @return The index of the first hidden card with the same color and value
+	 * 		   as the given card. -1 if there is none.
+	 */
+	public int hiddenIndex(CardData card) {
+		for (int i = 0; i < size(); i++) {
+			final CardData data = cards.get(i);
+			if (!shown.get(i) && data == card)
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param card The card to look for.
+	 * @return The index of the first shown card with the same color and value
+	 * 		   as the given card. -1 if there is none.
+	 */
+	public int shownIndex(CardData card) {
+		for (int i = 0; i < size(); i++) {
+			final CardData data = cards.get(i);
+			if (shown.get(i) && data == card)
+				return i;
+		}
+		return -1;
 	}
 	
 	/**
 	 * Removes the card from the hand.
-	 * @param card The card to remove.
+	 * @param index The index of the card to remove.
 	 */
 	public void remove(int index) {
+		cards.remove(index);
+		shown.remove(index);
+		update(index);
+	}
+	
+	/**
+	 * Removes every card from the hand.
+	 */
+	public void clear() {
+		cards.clear();
+		shown.clear();
+		update(0);
+	}
+	
+	/**
+	 * Highlights the cards which can be played on the given card, dimming the others.
+	 * @param center The card at the center. {@code null} to stop highlighting cards.
+	 */
+	public void highlight(CardData center) {
+		if (center != highlighted) {
+			highlighted = center;
+			refresh(first, first+SLOTS);
+		}
+	}
+	
+	/**
+	 * Scrolls through the hand by the given number of cards.
+	 * @param cards The number of cards to scroll by. Negative to scroll left.
+	 */
+	public void scroll(int cards) {
+		final int first = Math.max(0, Math.min(size()-SLOTS, this.first+cards));
+		if (first != this.first) {
+			this.first = first;
+			refresh(first, first+SLOTS);
+		}
+	}
+	
+	/**
+	 * Updates the layout after the cards from the given index onward changed.
+	 * @param from The index of the first card that changed.
+	 */
+	private void update(int from) {
 		
-		// Shifts next cards down
-		for (int i = index+1; i < size(); i++) {
-			final Node node = getChildren().get(i);
-			node.setLayoutX(node.getLayoutX()-SPACING);
+		// Keeps the scroll position within the hand
+		final int first = Math.max(0, Math.min(size()-SLOTS, this.first));
+		if (first != this.first) {
+			this.first = first;
+			from = first;
 		}
 		
-		// Removes from the hand data
-		getChildren().remove(index);
-		cards.remove(index);
+		// Fans the cards out when too many would be shown
+		final int visible = Math.min(size(), SLOTS);
+		final double spacing = visible <= 1 ? MAX_SPACING
+			: Math.max(MIN_SPACING, Math.min(MAX_SPACING, (double) (MAX_WIDTH - Card.WIDTH) / (visible-1)));
+		if (spacing != this.spacing) {
+			this.spacing = spacing;
+			for (int i = 0; i < SLOTS; i++)
+				slots[i].setLayoutX(cardX(first+i));
+		}
 		
+		refresh(from, first+SLOTS);
 		setLayoutX((RaUnoClient.WIDTH-width())/2);
 	}
 	
+	/**
+	 * Updates the slots showing the cards in the given range of indices.
+	 * @param from The index of the first card to update.
+	 * @param to The index after the last card to update.
+	 */
+	private void refresh(int from, int to) {
+		final long playable = highlighted == null ? -1 : cards.playable(highlighted);
+		for (int index = Math.max(from, first); index < Math.min(to, first+SLOTS); index++) {
+			final ImageView slot = slots[index-first];
+			slot.setLayoutX(cardX(index));
+			if (index < size()) {
+				final CardData card = cards.get(index);
+				slot.setViewport(CardAtlas.viewport(card));
+				slot.setOpacity((playable & card.mask()) != 0 ? 1 : DIMMED_OPACITY);
+				slot.setVisible(shown.get(index));
+			} else {
+				slot.setVisible(false);
+			}
+		}
+	}
+	
+	/**
+	 * @param card The card whose sort key will be computed.
+	 * @return The key by which the card is sorted in the hand.
+	 */
+	private static int sortKey(CardData card) {
+		return card.code();
+	}
+	
 	/**
 	 * @return The width of the hand group.
 	 */
 	public double width() {
-		final int numCards = size();
+		final int numCards = Math.min(size(), SLOTS);
 		if (numCards == 0)
 			return Card.WIDTH;
-		return Card.WIDTH + SPACING * (numCards-1);
+		return Card.WIDTH + spacing * (numCards-1);
 	}
 	
 	/**
 	 * Computes the x-coordinate of the card local to the hand.
+	 * Cards scrolled out of view are placed at the nearest edge of the hand.
 	 * 
 	 * @param index The index of the card.
 	 * @return The x-coordinate of the card in the hand's local coordinates.
 	 */
 	public double cardX(int index) {
-		return SPACING*index;
+		final int slot = Math.max(0, Math.min(Math.min(size(), SLOTS)-1, index-first));
+		return spacing*slot;
 	}
 	
 	/**
@@ -1,9 +1,12 @@
 package cards;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Handles the card data in a hand.
+ * Besides the cards themselves, the hand counts how many of each card it holds,
+ * and keeps a mask of the cards it holds at least one of (see {@link CardData#mask()}).
  * @author Raul Hernandez, 12/26/2023
  *
  */
@@ -14,6 +17,12 @@ public class HandData {
 	
 	/** The data of the cards in this hand. */
 	private final ArrayList<CardData> cards = new ArrayList<CardData>();
+	
+	/** The number of copies of each card in this hand, indexed by the card's bit. */
+	private final byte[] counts = new byte[CardData.heldCards()];
+	
+	/** The mask of the cards this hand holds at least one of. */
+	private long mask = 0;
 
 	/**
 	 * Constructs a hand data object storing the data of cards in this hand. 
@@ -21,7 +30,7 @@ public class HandData {
 	 */
 	public HandData(CardData...cards) {
 		for (CardData card : cards)
-			this.cards.add(card);
+			add(card);
 	}
 	
 	/**
@@ -30,6 +39,17 @@ public class HandData {
 	 */
 	public void add(CardData card) {
 		cards.add(card);
+		count(card, 1);
+	}
+	
+	/**
+	 * Adds the given card to the hand at the given index.
+	 * @param index The index at which to add the card.
+	 * @param card The card to add to the hand.
+	 */
+	public void add(int index, CardData card) {
+		cards.add(index, card);
+		count(card, 1);
 	}
 	
 	/**
@@ -37,10 +57,11 @@ public class HandData {
 	 * @param card The card to remove from the hand.
 	 */
 	public void remove(CardData card) {
-		for (CardData data : cards) {
-			if (data.getColor() == card.getColor() && data.getValue() == card.getValue()
-					|| data.getValue() == card.getValue() && card.getValue().special) {
-				cards.remove(data);
+		final CardData held = held(card);
+		for (int i = 0; i < cards.size(); i++) {
+			if (cards.get(i) == held) {
+				cards.remove(i);
+				count(held, -1);
 				break;
 			}
 		}
@@ -51,7 +72,33 @@ public class HandData {
 	 * @param index The index from which to remove a card.
 	 */
 	public void remove(int index) {
-		cards.remove(index);
+		count(cards.remove(index), -1);
+	}
+	
+	/**
+	 * Removes every card from the hand.
+	 */
+	public void clear() {
+		cards.clear();
+		Arrays.fill(counts, (byte) 0);
+		mask = 0;
+	}
+	
+	/**
+	 * Updates the count and mask of the given card.
+	 * @param card The card added or removed.
+	 * @param change The change in the number of copies of the card.
+	 */
+	private void count(CardData card, int change) {
+		final long bit = card.mask();
+		if (bit == 0) // Skips cards which cannot be held
+			return;
+		final int index = Long.numberOfTrailingZeros(bit);
+		counts[index] += change;
+		if (counts[index] == 0)
+			mask &= ~bit;
+		else
+			mask |= bit;
 	}
 	
 	/**
@@ -60,11 +107,58 @@ public class HandData {
 	 * @return Whether the hand has the card.
 	 */
 	public boolean has(CardData card) {
-		for (CardData data : cards)
-			if (data.getColor() == card.getColor() && data.getValue() == card.getValue()
-				|| data.getValue() == card.getValue() && card.getValue().special)
-				return true;
-		return false;
+		return (mask & held(card).mask()) != 0;
+	}
+	
+	/**
+	 * @param card The card to count.
+	 * @return The number of copies of the card in this hand.
+	 */
+	public int count(CardData card) {
+		final long bit = held(card).mask();
+		return bit == 0 ? 0 : counts[Long.numberOfTrailingZeros(bit)];
+	}
+	
+	/**
+	 * @param center The card at the center.
+	 * @return The mask of the cards in this hand which can be played on the given card.
+	 * Each card is then given by {@link CardData#lowest(long)}, clearing its bit in turn.
+	 */
+	public long playable(CardData center) {
+		return mask & CardData.followers(center);
+	}
+	
+	/**
+	 * Checks whether the given card can be played from this hand on the given center card.
+	 * @param card The card to play. Special cards may have their chosen color.
+	 * @param center The card at the center.
+	 * @return Whether the hand holds the card and the card can follow the center card.
+	 */
+	public boolean canPlay(CardData card, CardData center) {
+		return (playable(center) & held(card).mask()) != 0;
+	}
+	
+	/**
+	 * @return The mask of the cards this hand holds at least one of (see {@link CardData#mask()}).
+	 */
+	public long mask() {
+		return mask;
+	}
+	
+	/**
+	 * @param card A card, as used. Special cards may have their chosen color.
+	 * @return The card as held in a hand, before any color is chosen.
+	 */
+	private static CardData held(CardData card) {
+		return card.withColor(CardColor.BLACK);
+	}
+	
+	/**
+	 * @param index The index of the card.
+	 * @return The card at the given index.
+	 */
+	public CardData get(int index) {
+		return cards.get(index);
 	}
 	
 	/**
@@ -6,6 +6,7 @@ import javafx.scene.control.Label;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
+import javafx.scene.transform.Scale;
 
 /**
  * Handles the hand of an opponent.
@@ -29,6 +30,9 @@ public class OpponentHand extends Group {
 	/** The number of cards in this hand. */
 	private int cards;
 	
+	/** The size of this hand's display, relative to its full size. */
+	private double scale = 1;
+	
 	/**
 	 * Constructs an opponent hand with the given number of cards.
 	 * @param cards The number of cards to display.
@@ -72,7 +76,16 @@ public class OpponentHand extends Group {
 	 * @return The x-coordinate of the card node in the parent's coordinates.
 	 */
 	public double cardParentX() {
-		return getLayoutX() + (nameRight ? 0 : 120);
+		return getLayoutX() + (nameRight ? 0 : 120*scale);
+	}
+	
+	/**
+	 * Shrinks or grows this hand's display around its top left corner, so that more hands fit in the window.
+	 * @param scale The size of the display, relative to its full size.
+	 */
+	public void setScale(double scale) {
+		this.scale = scale;
+		getTransforms().setAll(new Scale(scale, scale));
 	}
 	
 	/**
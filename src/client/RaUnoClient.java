@@ -1,19 +1,22 @@
 package client;
 
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.File;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import cards.Card;
+import cards.CardAtlas;
 import cards.CardColor;
 import cards.CardData;
 import cards.CardValue;
 import cards.Hand;
 import cards.OpponentHand;
-import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Cursor;
 import javafx.scene.Group;
@@ -21,7 +24,8 @@ import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.Label;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
@@ -30,15 +34,19 @@ import javafx.scene.text.Font;
 import javafx.scene.text.TextAlignment;
 import javafx.scene.transform.Scale;
 import javafx.stage.Stage;
-import misc.LooseBox;
+import misc.Animator;
 import misc.Noise;
 import misc.PostAnimation;
-import misc.Vector2D;
+import net.Link;
+import net.SocketLink;
 import requests.ClientRequest;
 import requests.ServerRequest;
+import requests.StateChecksum;
 
 /**
  * Handles the RaUno client.
+ * Run with {@code --spectate} (after the server's IP, if given) to watch the game being played instead,
+ * laying out every player as an opponent, without a hand or any input.
  * @author Raul Hernandez, 12/25/2023
  *
  */
@@ -62,17 +70,17 @@ public class RaUnoClient extends Application {
 	/** The port on which the RaUno server is hosted. */
 	private static final int SERVER_PORT = 29175;
 	
-	/** The socket for the server. */
-	private static Socket SERVER;
+	/** The port on which the RaUno server lets spectators watch the current game. */
+	private static final int SPECTATOR_PORT = 29176;
 	
-	/** The input stream for the server. */
-	private static InputStream INPUT;
+	/** Whether the client connects as a spectator. */
+	private static boolean SPECTATING = false;
 	
-	/** The output stream for the server. */
-	private static OutputStream OUTPUT;
+	/** The link to the server. */
+	private static Link SERVER;
 	
-	/** Whether the client is processing for a server request. */
-	private static boolean PROCESSING_REQUEST;
+	/** The server requests decoded by the listening thread, waiting to be handled. */
+	private static final ConcurrentLinkedQueue<ServerEvent> EVENTS = new ConcurrentLinkedQueue<ServerEvent>();
 	
 	/** The pane onto which everything in the scene is placed. */
 	private static final AnchorPane PANE = new AnchorPane();
@@ -80,20 +88,28 @@ public class RaUnoClient extends Application {
 	/** The hand of the client. */
 	private static final Hand HAND = new Hand();
 	
-	/** The hands of the opponents. */
-	private static final OpponentHand[] OPPONENTS = {
-		new OpponentHand(0, 1, true),
-		new OpponentHand(0, 2, true),
-		new OpponentHand(0, 3, false),
-		new OpponentHand(0, 4, false),
-	};
+	/** The most players in a game. */
+	private static final int MAX_PLAYERS = ServerRequest.MAX_PLAYERS;
+	
+	/** The hands of the opponents, laid out by {@link #layOutOpponents(int)}. */
+	private static final OpponentHand[] OPPONENTS = new OpponentHand[MAX_PLAYERS];
+	
+	/** The number of opponent hands laid out in the window. */
+	private static int laidOut = 0;
 	
 	/** 
 	 * The player ID for each opponent.
 	 * The index of the array is the client ID. 
 	 * The value at that index is the player ID for that client.
 	 */
-	private static final int[] OPPONENT_IDS = {-1, -1, -1, -1, -1};
+	private static final int[] OPPONENT_IDS = new int[MAX_PLAYERS];
+	
+	/**
+	 * The number of cards in each client's hand, as last told by the server.
+	 * The index of the array is the client ID.
+	 * Unlike the hand displays, these are updated as soon as a request is received.
+	 */
+	private static final int[] HAND_SIZES = new int[MAX_PLAYERS];
 	
 	/** The center card group in the game. */
 	private static final Group CENTER_CARD = new Group();
@@ -113,15 +129,39 @@ public class RaUnoClient extends Application {
 	/** The ID of the client whose turn it is. */
 	private static int clientTurn;
 	
-	/** The number of opponents the client has in this game. */
+	/** The number of players in this game. */
+	private static int numPlayers;
+	
+	/** The number of opponents the client has in this game. Every player is an opponent to a spectator. */
 	private static int numOpponents;
 	
+	/** Whether this game is played with the jump-in house rule, as announced by the server. */
+	private static boolean jumpInRule;
+	
 	/** Whether the client is currently using a card. */
 	private static boolean acting;
 	
 	/** The index of the last card that was clicked. */
 	private static int lastCardClicked;
 	
+	/** The sequence number of the last card use sent to the server. */
+	private static byte playSequence;
+	
+	/** Whether a card use was predicted and is waiting for the server's reply. */
+	private static boolean playPending;
+	
+	/** The data of the card whose use is waiting for the server's reply. */
+	private static CardData pendingCard;
+	
+	/** The node of the card waiting for the server's reply. */
+	private static Card pendingNode;
+	
+	/** The center card data before the card waiting for the server's reply was used. */
+	private static CardData previousCenterData;
+	
+	/** The center card node before the card waiting for the server's reply was used. */
+	private static Node previousCenterNode;
+	
 	/** The box containing the color choices when a special card is used. */
 	private static final VBox COLOR_CHOICES = new VBox();
 	
@@ -134,8 +174,11 @@ public class RaUnoClient extends Application {
 	public static void main(String[] args) {
 		
 		// Initializes the server connection
-		if (args.length > 0) {
-			SERVER_IP = args[0];
+		for (String arg : args) {
+			if (arg.equals("--spectate"))
+				SPECTATING = true;
+			else
+				SERVER_IP = arg;
 		}
 		System.out.println("Server IP: " + SERVER_IP);
 		new Thread() {
@@ -149,279 +192,314 @@ public class RaUnoClient extends Application {
 	}
 	
 	/**
-	 * Connects to the RaUno server and establishes the I/O streams.
+	 * Connects to the RaUno server over TCP.
 	 */
 	private static void connectToServer() throws Exception {
 		
 		// Connects to the server
 		System.out.println("Connecting to the server...");
-		SERVER = new Socket(InetAddress.getByName(SERVER_IP), SERVER_PORT);
-		
-		// Sets up the I/O streams
-		System.out.println("Setting up the I/O streams...");
-		INPUT = SERVER.getInputStream();
-		OUTPUT = SERVER.getOutputStream();
+		SERVER = new SocketLink(new Socket(InetAddress.getByName(SERVER_IP), SPECTATING ? SPECTATOR_PORT : SERVER_PORT));
 		
 		System.out.println("Connection successful!");
 	}
 	
+	/**
+	 * Plays through the given link to a server instead of connecting over TCP,
+	 * such as a {@link net.LocalLink} to a session in the same process.
+	 * Must be called before the client is launched.
+	 * @param server The link to the server.
+	 */
+	public static void connect(Link server) {
+		SERVER = server;
+		listenToServer();
+	}
+	
 	/**
 	 * Listens perpetually for server requests.
 	 */
 	private static void listenToServer() {
-		
-		// Sets up the listening thread
-		new Thread() {
-			public void run() { try { while (!SERVER.isClosed()) {
-				
-				// Checks for a valid request
-				System.out.println("Listening for a request...");
-				final int requestID = INPUT.read();
-				if (requestID == -1)
-					continue;
+		SERVER.open(new Link.Receiver() {
+			public void received(ByteBuffer bytes) {
 				
-				// Processes the request
-				PROCESSING_REQUEST = true;
-				handleRequest(ServerRequest.values()[requestID]);
-				while (PROCESSING_REQUEST) Thread.sleep(250); // Allows for asynchronous tasks
-				System.out.println("Request processed!");
-					
-			}} catch (Exception e) {e.printStackTrace();} closeConnections(); }
-		}.start();
-		
+				// Decodes the requests and queues them for the JavaFX thread
+				for (ServerEvent event; (event = ServerEvent.decode(bytes)) != null;)
+					EVENTS.add(event);
+			}
+			
+			public void closed() {
+				closeConnections();
+			}
+		});
+	}
+	
+	/**
+	 * Handles every server request received since the last pulse, in order.
+	 * Must be called from the JavaFX application thread.
+	 */
+	private static void handleRequests() {
+		ServerEvent event;
+		while ((event = EVENTS.poll()) != null)
+			handleRequest(event);
 	}
 	
 	/**
 	 * Handles a server request.
-	 * @param request The server request to process.
+	 * Must be called from the JavaFX application thread.
+	 * @param event The decoded server request to process.
 	 */
-	private static void handleRequest(final ServerRequest request) {
-		System.out.println("Handling request: " + request + "...");
+	private static void handleRequest(final ServerEvent event) { try {
+		System.out.println("Handling request: " + event.request + "...");
 		
-		// Queues the request
-		Platform.runLater(new Runnable() {
-			public void run() { try {
-				
-				// Starts the game
-				if (request == ServerRequest.START_GAME) {
-					
-					// Reads the request values
-					final byte[] reqArray = new byte[2 + 2];
-					INPUT.read(reqArray);
-					
-					// Stores the ID of the client
-					clientID = reqArray[0];
-					clientTurn = 0;
-					
-					// Stores the opponent IDs
-					numOpponents = reqArray[1]-1;
-					int opponentID = 0;
-					for (int i = 0; i < numOpponents+1; i++) {
-						if (i == clientID) continue;
-						OPPONENTS[opponentID].setVisible(true);
-						OPPONENT_IDS[i] = opponentID++;
-					}
-					
-					// Indicates whether it is the client's turn
-					if (clientTurn == clientID)
-						TURN_TEXT.setText("YOUR TURN");
-					else
-						TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[clientTurn]+1) + "'S TURN");
-					
-					// Stores the initial position for the animations
-					final double x0 = DECK_CARD.getLayoutX();
-					final double y0 = DECK_CARD.getLayoutY();
-					
-					// Stores the initial/final position for the animation
-					final double x1 = CENTER_CARD.getLayoutX();
-					final double y1 = CENTER_CARD.getLayoutY();
-					
-					// Prepares the center card
-					final Card card = new Card(
-						CardColor.values()[reqArray[2]],
-						CardValue.values()[reqArray[3]]
-					);
-					
-					// Starts the animation
-					moveAnimation(x0, y0, x1, y1, 1, card, () -> {
-						PANE.getChildren().remove(card);
-						card.setLayoutX(0);
-						card.setLayoutY(0);
-						CENTER_CARD_DATA = card.data;
-						CENTER_CARD.getChildren().clear();
-						CENTER_CARD.getChildren().add(card);
-					});
-					PANE.getChildren().add(card);
-							
-				// Adds cards to the hand
-				} else if (request == ServerRequest.DRAW_FROM_DECK) {
-					
-					// Reads the request values
-					final byte[] reqArray = new byte[2*INPUT.read()];
-					INPUT.read(reqArray);
-					
-					// Stores the cards in the hand
-					final Card[] cards = new Card[reqArray.length/2];
-					for (int i = 0; i < cards.length; i++) {
-						cards[i] = new Card(CardColor.values()[reqArray[2*i]], CardValue.values()[reqArray[2*i+1]]);
-						HAND.add(cards[i]);
-					}
-					
-					// Animates the card placement into the hand
-					final double x0 = DECK_CARD.getLayoutX();
-					final double y0 = DECK_CARD.getLayoutY();
-					final double y1 = HAND.getLayoutY();
-					final int init = HAND.size()-cards.length;
-					for (int i = init; i < HAND.size(); i++) {
-						final int index = i;
-						
-						// Adds card to the scene & animates
-						final Card card = cards[i-init];
-						moveAnimation(x0, y0, HAND.cardParentX(i), y1, 1, card, () -> {
-							PANE.getChildren().remove(card);
-							HAND.show(index);
-						});
-						PANE.getChildren().add(card);
-					}
-					
-				} else if (request == ServerRequest.OPPONENT_DRAW_FROM_DECK) {
-					
-					// Reads the request values
-					final byte[] reqArray = new byte[2];
-					INPUT.read(reqArray);
-					
-					// Stores the initial/final positions for the animation
-					final OpponentHand hand = OPPONENTS[OPPONENT_IDS[reqArray[0]]];
-					final double x0 = DECK_CARD.getLayoutX();
-					final double y0 = DECK_CARD.getLayoutY();
-					final double x1 = hand.cardParentX();
-					final double y1 = hand.getLayoutY();
-					
-					// Animates each opponent drawing from the deck
-					final Card card = new Card();
-					moveAnimation(x0, y0, x1, y1, 1, card, () -> {
-						PANE.getChildren().remove(card);
-						hand.addCards(reqArray[1]);
-					});
-					PANE.getChildren().add(card);
-					
-				// Placed a new center card
-				} else if (request == ServerRequest.CENTER_CARD) {
-					
-					// Reads the request values
-					final byte[] reqArray = new byte[2];
-					INPUT.read(reqArray);
-					
-					// Sets the center card
-					CENTER_CARD_DATA = new CardData(
-						CardColor.values()[reqArray[0]],
-						CardValue.values()[reqArray[1]]
-					);
-					CENTER_CARD.getChildren().clear();
-					CENTER_CARD.getChildren().add(new Card(CENTER_CARD_DATA));
-					
-				// Ends the turn and moves into the next turn
-				} else if (request == ServerRequest.END_TURN) {
-					
-					// Stores the new client's turn
-					final byte[] reqArray = new byte[1];
-					INPUT.read(reqArray);
-					clientTurn = reqArray[0];
-					
-					acting = false; ////// UPDATE ACTING TO PREVENT CLICKS WHEN AN ANIMATION IS PLAYING
-					
-					// Indicates whether it is the client's turn
-					if (clientTurn == clientID)
-						TURN_TEXT.setText("YOUR TURN");
-					else
-						TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[clientTurn]+1) + "'S TURN");
-					
-				// Removes the last clicked card from the hand
-				} else if (request == ServerRequest.REMOVE_FROM_HAND) {
-					
-					// Stores the request's values
-					final byte[] reqArray = new byte[2 + 2];
-					INPUT.read(reqArray);
-					
-					// Creates the card node to be animated
-					final Card card = new Card(
-						CardColor.values()[reqArray[2]],
-						CardValue.values()[reqArray[3]]
-					);
-					
-					// Stores the ending position of the card animation
-					final double x1 = CENTER_CARD.getLayoutX();
-					final double y1 = CENTER_CARD.getLayoutY();
-					
-					// Checks if an opponent card use animation is needed
-					if (reqArray[0] != clientID) {
-						final OpponentHand hand = OPPONENTS[OPPONENT_IDS[reqArray[0]]];
-						final double x0 = hand.cardParentX();
-						final double y0 = hand.getLayoutY();
-						
-						// Animates the removal from the hand
-						moveAnimation(x0, y0, x1, y1, 1, card, () -> {
-							PANE.getChildren().remove(card);
-							card.setLayoutX(0);
-							card.setLayoutY(0);
-							CENTER_CARD_DATA = card.data;
-							CENTER_CARD.getChildren().clear();
-							CENTER_CARD.getChildren().add(card);
-						});
-						hand.decrement();
-					} else {
-					
-						// Stores the starting position of the card animation
-						final double x0 = HAND.cardParentX(lastCardClicked);
-						final double y0 = HAND.getLayoutY();
-						
-						// Removes the card from the hand
-						HAND.remove(lastCardClicked);
-						
-						// Animates the removal from the hand
-						moveAnimation(x0, y0, x1, y1, 1, card, () -> {
-							PANE.getChildren().remove(card);
-							card.setLayoutX(0);
-							card.setLayoutY(0);
-							CENTER_CARD_DATA = card.data;
-							CENTER_CARD.getChildren().clear();
-							CENTER_CARD.getChildren().add(card);
-						});
-					}
-					PANE.getChildren().add(card);
+		// Starts the game
+		if (event.request == ServerRequest.START_GAME) {
+			
+			// Stores the ID of the client
+			clientID = event.get(0);
+			clientTurn = 0;
+			jumpInRule = (event.get(4) & ServerRequest.JUMP_IN_RULE) != 0;
+			
+			// Stores the opponent IDs
+			numPlayers = event.get(1);
+			numOpponents = isSpectator() ? numPlayers : numPlayers-1;
+			layOutOpponents(numOpponents);
+			int opponentID = 0;
+			for (int i = 0; i < numPlayers; i++) {
+				HAND_SIZES[i] = 0;
+				if (i == clientID) continue;
+				OPPONENT_IDS[i] = opponentID++;
+			}
+			
+			// Indicates whether it is the client's turn
+			if (clientTurn == clientID)
+				TURN_TEXT.setText("YOUR TURN");
+			else
+				TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[clientTurn]+1) + "'S TURN");
+			
+			// Stores the initial position for the animations
+			final double x0 = DECK_CARD.getLayoutX();
+			final double y0 = DECK_CARD.getLayoutY();
+			
+			// Stores the initial/final position for the animation
+			final double x1 = CENTER_CARD.getLayoutX();
+			final double y1 = CENTER_CARD.getLayoutY();
+			
+			// Prepares the center card
+			final Card card = new Card(CardData.of(event.get(2), event.get(3)));
+			CENTER_CARD_DATA = card.data;
+			HAND.highlight(clientTurn == clientID ? CENTER_CARD_DATA : null);
+			
+			// Starts the animation
+			moveAnimation(x0, y0, x1, y1, 1, card, () -> {
+				PANE.getChildren().remove(card);
+				card.setLayoutX(0);
+				card.setLayoutY(0);
+				CENTER_CARD.getChildren().clear();
+				CENTER_CARD.getChildren().add(card);
+			});
+			PANE.getChildren().add(card);
 					
-				// The card used was invalid
-				} else if (request == ServerRequest.INVALID_CARD_USE) {
-					acting = false;
+		// Adds cards to the hand
+		} else if (event.request == ServerRequest.DRAW_FROM_DECK) {
+			
+			// Stores the cards in the hand, hidden until their animations end
+			final Card[] cards = new Card[event.get(0)];
+			for (int i = 0; i < cards.length; i++) {
+				cards[i] = new Card(CardData.of(event.get(1 + 2*i), event.get(1 + 2*i+1)));
+				HAND.add(cards[i]);
+			}
+			HAND_SIZES[clientID] = HAND.size();
+			
+			// Animates the card placement into the hand
+			final double x0 = DECK_CARD.getLayoutX();
+			final double y0 = DECK_CARD.getLayoutY();
+			final double y1 = HAND.getLayoutY();
+			for (final Card card : cards) {
 				
-				// A player won
-				} else if (request == ServerRequest.PLAYER_WON) {
-					
-					// Stores the request's values
-					final byte[] reqArray = new byte[1];
-					INPUT.read(reqArray);
-					
-					if (reqArray[0] == clientID)
-						TURN_TEXT.setText("YOU WON!!!");
-					else
-						TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[reqArray[0]]+1) + " WON!!!");
-					acting = true;
-					UNO_BUTTON.setVisible(false);
-					
-				// A player reached Uno
-				} else if (request == ServerRequest.UNO) {
-					
-					// Stores the request's values
-					final byte[] reqArray = new byte[1];
-					INPUT.read(reqArray);
-					showUnoButton(reqArray[0]);
-					
-				// Removes the Uno button
-				} else if (request == ServerRequest.REMOVE_UNO) {
-					UNO_BUTTON.setVisible(false);
-				}
-			} catch (Exception e) {e.printStackTrace(); } PROCESSING_REQUEST = false;}
-		});
+				// Adds card to the scene & animates to its sorted place in the hand
+				moveAnimation(x0, y0, HAND.cardParentX(HAND.hiddenIndex(card.data)), y1, 1, card, () -> {
+					PANE.getChildren().remove(card);
+					HAND.show(card.data);
+				});
+				PANE.getChildren().add(card);
+			}
+			
+		} else if (event.request == ServerRequest.OPPONENT_DRAW_FROM_DECK) {
+			
+			// Stores the initial/final positions for the animation
+			final int opponent = event.get(0);
+			final OpponentHand hand = OPPONENTS[OPPONENT_IDS[opponent]];
+			final double x0 = DECK_CARD.getLayoutX();
+			final double y0 = DECK_CARD.getLayoutY();
+			final double x1 = hand.cardParentX();
+			final double y1 = hand.getLayoutY();
+			HAND_SIZES[opponent] += event.get(1);
+			
+			// Animates each opponent drawing from the deck
+			final Card card = new Card();
+			moveAnimation(x0, y0, x1, y1, 1, card, () -> {
+				PANE.getChildren().remove(card);
+				hand.setCards(HAND_SIZES[opponent]);
+			});
+			PANE.getChildren().add(card);
+			
+		// Placed a new center card
+		} else if (event.request == ServerRequest.CENTER_CARD) {
+			
+			// Sets the center card
+			CENTER_CARD_DATA = CardData.of(event.get(0), event.get(1));
+			CENTER_CARD.getChildren().clear();
+			CENTER_CARD.getChildren().add(new Card(CENTER_CARD_DATA));
+			
+		// Ends the turn and moves into the next turn
+		} else if (event.request == ServerRequest.END_TURN) {
+			
+			// Stores the new client's turn
+			clientTurn = event.get(0);
+			
+			// Asks for the full game state if this client's view has diverged
+			final byte checksum = StateChecksum.compute(
+				clientTurn,
+				CENTER_CARD_DATA.getColor().ordinal(),
+				CENTER_CARD_DATA.getValue().ordinal(),
+				HAND_SIZES,
+				numPlayers
+			);
+			if (checksum != event.get(1) && !isSpectator()) // Spectators are skipped ahead by the server instead
+				SERVER.send(new byte[] {(byte) ClientRequest.REQUEST_SNAPSHOT.ordinal()});
+			
+			acting = false; ////// UPDATE ACTING TO PREVENT CLICKS WHEN AN ANIMATION IS PLAYING
+			
+			// Indicates whether it is the client's turn
+			if (clientTurn == clientID)
+				TURN_TEXT.setText("YOUR TURN");
+			else
+				TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[clientTurn]+1) + "'S TURN");
+			HAND.highlight(clientTurn == clientID ? CENTER_CARD_DATA : null);
+			
+		// Removes the last clicked card from the hand
+		} else if (event.request == ServerRequest.REMOVE_FROM_HAND) {
+			
+			// Confirms this client's predicted card use
+			if (event.get(0) == clientID) {
+				if (!playPending || event.get(1) != playSequence
+						|| pendingCard != CardData.of(event.get(2), event.get(3)))
+					SERVER.send(new byte[] {(byte) ClientRequest.REQUEST_SNAPSHOT.ordinal()});
+				playPending = false;
+				return;
+			}
+			
+			// Takes back this client's predicted card use, which lost the turn to this card
+			if (playPending)
+				rollBackPlay();
+			
+			// Creates the card node to be animated
+			final Card card = new Card(CardData.of(event.get(2), event.get(3)));
+			
+			// Stores the ending position of the card animation
+			final double x1 = CENTER_CARD.getLayoutX();
+			final double y1 = CENTER_CARD.getLayoutY();
+			CENTER_CARD_DATA = card.data;
+			HAND_SIZES[event.get(0)]--;
+			
+			// Animates the removal from the opponent's hand
+			final OpponentHand hand = OPPONENTS[OPPONENT_IDS[event.get(0)]];
+			final double x0 = hand.cardParentX();
+			final double y0 = hand.getLayoutY();
+			moveAnimation(x0, y0, x1, y1, 1, card, () -> {
+				PANE.getChildren().remove(card);
+				card.setLayoutX(0);
+				card.setLayoutY(0);
+				CENTER_CARD.getChildren().clear();
+				CENTER_CARD.getChildren().add(card);
+			});
+			hand.setCards(HAND_SIZES[event.get(0)]);
+			PANE.getChildren().add(card);
+			
+		// The card used was invalid
+		} else if (event.request == ServerRequest.INVALID_CARD_USE) {
+			if (playPending && event.get(0) == playSequence)
+				rollBackPlay();
+			acting = false;
+		
+		// A player won
+		} else if (event.request == ServerRequest.PLAYER_WON) {
+			
+			if (event.get(0) == clientID)
+				TURN_TEXT.setText("YOU WON!!!");
+			else
+				TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[event.get(0)]+1) + " WON!!!");
+			acting = true;
+			UNO_BUTTON.setVisible(false);
+			
+		// A player reached Uno
+		} else if (event.request == ServerRequest.UNO) {
+			
+			if (!isSpectator())
+				showUnoButton(event.get(0));
+			
+		// Removes the Uno button
+		} else if (event.request == ServerRequest.REMOVE_UNO) {
+			UNO_BUTTON.setVisible(false);
+			
+		// Shows the move suggested by the server
+		} else if (event.request == ServerRequest.HINT) {
+			if (clientTurn == clientID) {
+				if (event.get(0) == -1)
+					TURN_TEXT.setText("YOUR TURN (HINT: DRAW A CARD)");
+				else
+					TURN_TEXT.setText("YOUR TURN (HINT: " + CardData.of(event.get(0), event.get(1)).getValue().text
+							+ " " + CardColor.values()[event.get(0)] + ")");
+			}
+			
+		// Replaces the client's view of the game with the server's
+		} else if (event.request == ServerRequest.STATE_SNAPSHOT) {
+			
+			// Reads the public game state
+			clientID = event.get(0);
+			numPlayers = event.get(1);
+			numOpponents = isSpectator() ? numPlayers : numPlayers-1;
+			clientTurn = event.get(2);
+			jumpInRule = (event.get(5) & ServerRequest.JUMP_IN_RULE) != 0;
+			final int handStart = 6 + numPlayers;
+			
+			// Sets the center card
+			CENTER_CARD_DATA = CardData.of(event.get(3), event.get(4));
+			CENTER_CARD.getChildren().clear();
+			CENTER_CARD.getChildren().add(new Card(CENTER_CARD_DATA));
+			
+			// Sets the opponents' card counts
+			layOutOpponents(numOpponents);
+			int opponentID = 0;
+			for (int i = 0; i < numPlayers; i++) {
+				HAND_SIZES[i] = event.get(6 + i);
+				if (i == clientID) continue;
+				OPPONENTS[opponentID].setCards(HAND_SIZES[i]);
+				OPPONENT_IDS[i] = opponentID++;
+			}
+			
+			// Replaces the cards in the hand
+			playPending = false;
+			HAND.clear();
+			for (int i = 0; i < event.get(handStart); i++) {
+				HAND.show(HAND.add(CardData.of(event.get(handStart+1 + 2*i), event.get(handStart+1 + 2*i+1))));
+			}
+			
+			// Indicates whether it is the client's turn
+			acting = false;
+			COLOR_CHOICES.setVisible(false);
+			if (clientTurn == clientID)
+				TURN_TEXT.setText("YOUR TURN");
+			else
+				TURN_TEXT.setText("PLAYER " + (OPPONENT_IDS[clientTurn]+1) + "'S TURN");
+			HAND.highlight(clientTurn == clientID ? CENTER_CARD_DATA : null);
+		}
+	} catch (Exception e) {e.printStackTrace();}}
+	
+	/**
+	 * @return Whether the client is watching the game as a spectator, without a hand.
+	 */
+	private static boolean isSpectator() {
+		return clientID < 0;
 	}
 	
 	/**
@@ -435,8 +513,8 @@ public class RaUnoClient extends Application {
 		if (acting)
 			return;
 		
-		// Checks if it is this player's turn
-		if (clientID != clientTurn)
+		// Checks if it is this player's turn, or if the card may jump in out of turn
+		if (clientID != clientTurn && !(jumpInRule && card.canJumpIn(CENTER_CARD_DATA)))
 			return;
 		
 		// Checks if this is a valid card to play
@@ -452,56 +530,100 @@ public class RaUnoClient extends Application {
 			return;
 		}
 		
-		// Requests the server to use the card
-		try {
-			OUTPUT.write(new byte[] {
-				(byte) ClientRequest.USE_CARD.ordinal(),
-				(byte) lastCardClicked,
-				(byte) card.getColor().ordinal(),
-				(byte) card.getValue().ordinal()
-			});
-			acting = true;
-			lastCardClicked = index;
-		} catch (Exception e) {e.printStackTrace();}
+		acting = true;
+		lastCardClicked = index;
+		play(card, index);
 	}
 	
 	/**
-	 * Closes the connections and I/O streams with the RaUno server.
+	 * Requests the server to use the given card, and plays it right away
+	 * assuming the server will accept it. The play is reconciled or rolled
+	 * back once the server replies.
+	 * 
+	 * @param card The card data of the card being used, with its chosen color.
+	 * @param index The index (in the hand) of the card being used.
 	 */
-	private static void closeConnections() { try {
-		INPUT.close();
-		OUTPUT.close();
-		SERVER.close();
+	private static void play(CardData card, int index) { try {
+		
+		// Requests the server to use the card
+		playSequence++;
+		SERVER.send(new byte[] {
+			(byte) ClientRequest.USE_CARD.ordinal(),
+			playSequence,
+			(byte) card.getColor().ordinal(),
+			(byte) card.getValue().ordinal()
+		});
+		
+		// Remembers the state to roll back to
+		playPending = true;
+		pendingCard = card;
+		previousCenterData = CENTER_CARD_DATA;
+		previousCenterNode = CENTER_CARD.getChildren().isEmpty() ? null : CENTER_CARD.getChildren().get(0);
+		
+		// Removes the card from the hand
+		final double x0 = HAND.cardParentX(index);
+		final double y0 = HAND.getLayoutY();
+		HAND.remove(index);
+		HAND_SIZES[clientID]--;
+		CENTER_CARD_DATA = card;
+		HAND.highlight(null);
+		
+		// Animates the card to the center
+		final Card node = new Card(card);
+		pendingNode = node;
+		moveAnimation(x0, y0, CENTER_CARD.getLayoutX(), CENTER_CARD.getLayoutY(), 1, node, () -> {
+			PANE.getChildren().remove(node);
+			node.setLayoutX(0);
+			node.setLayoutY(0);
+			CENTER_CARD.getChildren().clear();
+			CENTER_CARD.getChildren().add(node);
+		});
+		PANE.getChildren().add(node);
 	} catch (Exception e) {e.printStackTrace();}}
 	
-	private static void moveAnimation(double x0, double y0, double x1, double y1, double duration, Node node, PostAnimation post) {
+	/**
+	 * Undoes the card use waiting for the server's reply, putting the
+	 * card back in the hand and restoring the previous center card.
+	 */
+	private static void rollBackPlay() {
+		playPending = false;
 		
-		// Sets up initial position
-		node.setLayoutX(x0);
-		node.setLayoutY(y0);
+		// Stops the card's animation
+		Animator.cancel(pendingNode);
+		PANE.getChildren().remove(pendingNode);
 		
-		// Animates the motion
-		final long sTime = System.nanoTime();
-		new AnimationTimer() {
-			public void handle(long now) {
-				final double dt = (now-sTime)*1E-9 / duration;
-				
-				// Ends the animation
-				if (dt >= 1) {
-					node.setLayoutX(x1);
-					node.setLayoutY(y1);
-					post.run();
-					stop();
-					return;
-				}
-				
-				// Updates the card's new position
-				final double x = x0 + (x1-x0) * dt;
-				final double y = y0 + (y1-y0) * dt;
-				node.setLayoutX(x);
-				node.setLayoutY(y);
-			}
-		}.start();
+		// Restores the center card
+		CENTER_CARD_DATA = previousCenterData;
+		CENTER_CARD.getChildren().clear();
+		if (previousCenterNode != null)
+			CENTER_CARD.getChildren().add(previousCenterNode);
+		
+		// Puts the card back in its sorted place in the hand
+		HAND.show(HAND.add(pendingCard.withColor(CardColor.BLACK)));
+		HAND.highlight(CENTER_CARD_DATA);
+		HAND_SIZES[clientID]++;
+	}
+	
+	/**
+	 * Closes the link with the RaUno server.
+	 */
+	private static void closeConnections() {
+		SERVER.close();
+	}
+	
+	/**
+	 * Moves the given node from one position to another through the shared {@link Animator}.
+	 * 
+	 * @param x0 The starting x-coordinate of the node.
+	 * @param y0 The starting y-coordinate of the node.
+	 * @param x1 The ending x-coordinate of the node.
+	 * @param y1 The ending y-coordinate of the node.
+	 * @param duration The duration of the motion (in seconds).
+	 * @param node The node to move.
+	 * @param post The action to run once the motion ends.
+	 */
+	private static void moveAnimation(double x0, double y0, double x1, double y1, double duration, Node node, PostAnimation post) {
+		Animator.move(node, x0, y0, x1, y1, duration).then(post);
 	}
 	
 	private static void showUnoButton(final byte clientID) {
@@ -516,7 +638,7 @@ public class RaUnoClient extends Application {
 		// Sets up the uno call
 		UNO_BUTTON.setOnMouseClicked(m -> { try {
 			final long time = System.currentTimeMillis();
-			OUTPUT.write(new byte[] {
+			SERVER.send(new byte[] {
 				(byte) ClientRequest.CALLED_UNO.ordinal(),
 				clientID,
 				(byte) time,
@@ -526,18 +648,99 @@ public class RaUnoClient extends Application {
 			UNO_BUTTON.setVisible(false);
 		} catch (Exception e) {e.printStackTrace();}});
 	}
+	
+	/**
+	 * Lays out the given number of opponent hands, replacing the hands laid out before.
+	 * Up to 4 hands are shown full size in two columns on either side of the center card.
+	 * More hands are shrunk to fit, and spread in turn order along an arc around the center card,
+	 * from the bottom left, over the top, to the bottom right.
+	 * @param count The number of opponents.
+	 */
+	private static void layOutOpponents(int count) {
+		if (count == laidOut)
+			return;
+		for (int i = 0; i < laidOut; i++)
+			PANE.getChildren().remove(OPPONENTS[i]);
+		laidOut = count;
+		
+		// Keeps the hands under the Uno button
+		final int index = PANE.getChildren().indexOf(UNO_BUTTON);
+		final double scale = count <= 4 ? 1 : Math.min(0.6, 1300.0 / (count * (OpponentHand.WIDTH + 20)));
+		for (int i = 0; i < count; i++) {
+			double x;
+			double y;
+			if (count <= 4) {
+				x = i < 2 ? 50 : WIDTH - OpponentHand.WIDTH - 50;
+				y = 50 + (i%2) * (Card.HEIGHT + 50);
+			} else {
+				
+				// Finds the hand's center along the arc, then its top left corner
+				final double angle = Math.toRadians(200 - 220.0 * i / (count-1));
+				x = WIDTH/2 + 560 * Math.cos(angle) - scale * OpponentHand.WIDTH/2;
+				y = 260 - 230 * Math.sin(angle) - scale * Card.HEIGHT/2;
+			}
+			OPPONENTS[i] = new OpponentHand(0, i+1, x + scale * OpponentHand.WIDTH/2 < WIDTH/2);
+			OPPONENTS[i].setScale(scale);
+			OPPONENTS[i].setLayoutX(x);
+			OPPONENTS[i].setLayoutY(y);
+			PANE.getChildren().add(index, OPPONENTS[i]);
+		}
+	}
 
+	/**
+	 * Computes the pixels of the background, loading them from the disk instead
+	 * if they were already computed for the same noise seed and scene size.
+	 * @return The background's ARGB pixels, stored row by row.
+	 */
+	private static int[] background() {
+		final int[] pixels = new int[WIDTH*HEIGHT];
+		final File cache = new File(
+			System.getProperty("java.io.tmpdir"),
+			"rauno-background-" + Noise.SEED + "-" + WIDTH + "x" + HEIGHT + ".bin"
+		);
+		
+		// Loads the cached background
+		if (cache.length() == 4L*pixels.length) {
+			try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.READ)) {
+				channel.map(MapMode.READ_ONLY, 0, cache.length()).asIntBuffer().get(pixels);
+				return pixels;
+			} catch (Exception e) {e.printStackTrace();}
+		}
+		
+		// Computes the background
+		Noise.fill(pixels, WIDTH, HEIGHT, 40, WIDTH, noise -> {
+			final int shade = (int) (15*noise);
+			final int red = Math.max(0, Math.min(255, 16+shade));
+			final int green = Math.max(0, Math.min(255, 20+shade));
+			final int blue = Math.max(0, Math.min(255, 30+shade));
+			return 0xFF000000 | red << 16 | green << 8 | blue;
+		});
+		
+		// Caches the background
+		try (FileChannel channel = FileChannel.open(cache.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(4*pixels.length);
+			buffer.asIntBuffer().put(pixels);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} catch (Exception e) {e.printStackTrace();}
+		
+		return pixels;
+	}
+	
 	public void start(Stage stage) throws Exception {
 		
+		// Renders the card faces
+		CardAtlas.render();
+		
+		// Handles the server requests once per pulse
+		Animator.addPulseListener(RaUnoClient::handleRequests);
+		
 		// Sets up the background
 		final Canvas back = new Canvas(WIDTH, HEIGHT);
-		final PixelWriter pixels = back.getGraphicsContext2D().getPixelWriter();
-		for (int x = 0; x < WIDTH; x++) {
-			for (int y = 0; y < HEIGHT; y++) {
-				int noise = (int) (15*Noise.noise(new Vector2D(x/40.0, y/40.0), WIDTH));
-				pixels.setColor(x, y, Color.rgb(16+noise, 20+noise, 30+noise));
-			}
-		}
+		back.getGraphicsContext2D().getPixelWriter().setPixels(
+			0, 0, WIDTH, HEIGHT, PixelFormat.getIntArgbInstance(), background(), 0, WIDTH
+		);
 		PANE.getChildren().add(back);
 		
 		// Displays the center card
@@ -560,7 +763,7 @@ public class RaUnoClient extends Application {
 				return;
 			
 			// Requests to draw a card from the deck
-			OUTPUT.write(ClientRequest.DRAW_CARD.ordinal());
+			SERVER.send(new byte[] {(byte) ClientRequest.DRAW_CARD.ordinal()});
 			acting = true;
 			
 		} catch (Exception e) {e.printStackTrace();}});
@@ -569,7 +772,6 @@ public class RaUnoClient extends Application {
 		PANE.getChildren().add(DECK_CARD);
 		
 		// Displays the hand
-		HAND.setLayoutX(WIDTH/2);
 		HAND.setLayoutY(450);
 		PANE.getChildren().add(HAND);
 		
@@ -585,16 +787,18 @@ public class RaUnoClient extends Application {
 			colorSquare.setOnMouseEntered(m -> colorSquare.setCursor(Cursor.HAND));
 			colorSquare.setOnMouseExited(m -> colorSquare.setCursor(Cursor.DEFAULT));
 			
-			// Requests the server to use the special card with the given color
-			colorSquare.setOnMouseClicked(m -> { try {
-				OUTPUT.write(new byte[] {
-					(byte) ClientRequest.USE_CARD.ordinal(),
-					(byte) lastCardClicked,
-					(byte) color.ordinal(),
-					(byte) specialCardUsed.getValue().ordinal()
-				});
+			// Requests the server to use the special card with the given color, finding it again
+			// in the hand, as cards may have been added or removed while the color was chosen
+			colorSquare.setOnMouseClicked(m -> {
 				COLOR_CHOICES.setVisible(false);
-			} catch (Exception e) {e.printStackTrace();} });
+				final int index = HAND.shownIndex(specialCardUsed);
+				if (index == -1) {
+					acting = false;
+					return;
+				}
+				lastCardClicked = index;
+				play(specialCardUsed.withColor(color), index);
+			});
 			COLOR_CHOICES.getChildren().add(colorSquare);
 		}
 		COLOR_CHOICES.setVisible(false);
@@ -608,21 +812,8 @@ public class RaUnoClient extends Application {
 		TURN_TEXT.setTextAlignment(TextAlignment.CENTER);
 		TURN_TEXT.setFont(new Font("System Bold", 24));
 		PANE.getChildren().add(TURN_TEXT);
-
-		// Sets up the opponent hands
-		OPPONENTS[0].setLayoutX(50);
-		OPPONENTS[0].setLayoutY(50);
-		OPPONENTS[1].setLayoutX(50);
-		OPPONENTS[1].setLayoutY(50 + Card.HEIGHT + 50);
-		OPPONENTS[2].setLayoutX(WIDTH - OpponentHand.WIDTH - 50);
-		OPPONENTS[2].setLayoutY(50);
-		OPPONENTS[3].setLayoutX(WIDTH - OpponentHand.WIDTH - 50);
-		OPPONENTS[3].setLayoutY(50 + Card.HEIGHT + 50);
-		for (OpponentHand hand : OPPONENTS) {
-			hand.setVisible(false);
-			PANE.getChildren().add(hand);
-		}
 		
+
 		// Sets up the Uno button
 		final Rectangle buttonBack = new Rectangle(40, 40, Color.gray(0.3));
 		UNO_BUTTON.getChildren().add(buttonBack);
@@ -644,8 +835,15 @@ public class RaUnoClient extends Application {
 //		final LooseBox box = new LooseBox(Card.WIDTH, Card.HEIGHT, card);
 //		PANE.getChildren().add(box);
 		
+		// Asks the server for a hint when H is pressed on the client's turn
+		final Scene scene = new Scene(PANE);
+		scene.setOnKeyPressed(k -> { try {
+			if (k.getCode() == KeyCode.H && clientTurn == clientID && !acting)
+				SERVER.send(new byte[] {(byte) ClientRequest.REQUEST_HINT.ordinal()});
+		} catch (Exception e) {e.printStackTrace();}});
+		
 		// Finalizes the stage setup
-		stage.setScene(new Scene(PANE));
+		stage.setScene(scene);
 		stage.setOnCloseRequest(e -> System.exit(0));
 		stage.setTitle("RaUno Client");
 		stage.show();
@@ -0,0 +1,122 @@
+package client;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import requests.ServerRequest;
+
+/**
+ * An immutable, fully decoded server request.
+ * Decoding happens on the client's listening thread, so that the JavaFX
+ * application thread never blocks on the server connection.
+ * @author Raul Hernandez, 01/25/2024
+ * 
+ */
+public class ServerEvent {
+	
+	/** The type of the server request. */
+	public final ServerRequest request;
+	
+	/** The bytes following the request ID. */
+	private final byte[] payload;
+	
+	/**
+	 * Creates a decoded server request.
+	 * @param request The type of the server request.
+	 * @param payload The bytes following the request ID.
+	 */
+	private ServerEvent(ServerRequest request, byte[] payload) {
+		this.request = request;
+		this.payload = payload;
+	}
+	
+	/**
+	 * @param index The index of the byte, following the request ID.
+	 * @return The byte of the request at the given index.
+	 */
+	public byte get(int index) {
+		return payload[index];
+	}
+	
+	/**
+	 * @return The number of bytes following the request ID.
+	 */
+	public int size() {
+		return payload.length;
+	}
+	
+	/**
+	 * Reads the next server request in full, blocking until all of its bytes arrive.
+	 * @param input The stream from which to read.
+	 * @return The decoded server request.
+	 */
+	public static ServerEvent read(DataInputStream input) throws IOException {
+		final ServerRequest request = ServerRequest.values()[input.readUnsignedByte()];
+		
+		// Reads the requests of known size
+		if (request.size != -1) {
+			final byte[] payload = new byte[request.size];
+			input.readFully(payload);
+			return new ServerEvent(request, payload);
+		}
+		
+		// Reads a list of cards
+		if (request == ServerRequest.DRAW_FROM_DECK) {
+			final int cards = input.readUnsignedByte();
+			final byte[] payload = new byte[1 + 2*cards];
+			payload[0] = (byte) cards;
+			input.readFully(payload, 1, 2*cards);
+			return new ServerEvent(request, payload);
+		}
+		
+		// Reads the game state, followed by a list of cards
+		final byte[] header = new byte[6];
+		input.readFully(header);
+		final byte[] handSizes = new byte[header[1]];
+		input.readFully(handSizes);
+		final int cards = input.readUnsignedByte();
+		final byte[] payload = new byte[header.length + handSizes.length + 1 + 2*cards];
+		System.arraycopy(header, 0, payload, 0, header.length);
+		System.arraycopy(handSizes, 0, payload, header.length, handSizes.length);
+		payload[header.length + handSizes.length] = (byte) cards;
+		input.readFully(payload, header.length + handSizes.length + 1, 2*cards);
+		return new ServerEvent(request, payload);
+	}
+	
+	/**
+	 * Decodes the next server request from the given bytes, if all of its bytes were received.
+	 * @param bytes The bytes received, starting with a request ID.
+	 * @return The decoded server request. {@code null} if more bytes are needed, leaving the bytes unread.
+	 */
+	public static ServerEvent decode(ByteBuffer bytes) {
+		if (!bytes.hasRemaining())
+			return null;
+		final int start = bytes.position();
+		final ServerRequest request = ServerRequest.values()[bytes.get(start) & 0xFF];
+		
+		// Finds the size of the request's payload
+		int size = request.size;
+		if (request == ServerRequest.DRAW_FROM_DECK) {
+			if (bytes.remaining() < 2)
+				return null;
+			size = 1 + 2*(bytes.get(start+1) & 0xFF);
+		} else if (size == -1) {
+			if (bytes.remaining() < 3 || bytes.remaining() < 8 + bytes.get(start+2))
+				return null;
+			size = 7 + bytes.get(start+2) + 2*(bytes.get(start + 7 + bytes.get(start+2)) & 0xFF);
+		}
+		if (bytes.remaining() < 1 + size)
+			return null;
+		
+		// Copies the payload
+		final byte[] payload = new byte[size];
+		bytes.position(start+1);
+		bytes.get(payload);
+		return new ServerEvent(request, payload);
+	}
+	
+	public String toString() {
+		return "ServerEvent(" + request + ", " + payload.length + " bytes)";
+	}
+}
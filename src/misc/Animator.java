@@ -0,0 +1,232 @@
+package misc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+
+/**
+ * Handles every node motion of the client with a single animation timer.
+ * All active tweens are updated in one pass per pulse, and finished tweens
+ * are pooled to be reused by later motions.
+ * Must only be used from the JavaFX application thread.
+ * @author Raul Hernandez, 01/23/2024
+ * 
+ */
+public class Animator {
+	
+	/** The weight of the latest frame in the average frame times. */
+	private static final double AVERAGE_WEIGHT = 0.05;
+	
+	/** The tweens currently playing. */
+	private static final ArrayList<Tween> ACTIVE = new ArrayList<Tween>();
+	
+	/** The tweens available for reuse. */
+	private static final ArrayDeque<Tween> POOL = new ArrayDeque<Tween>();
+	
+	/** The actions run at the start of every pulse. */
+	private static final ArrayList<Runnable> PULSE_LISTENERS = new ArrayList<Runnable>();
+	
+	/** The time of the last pulse (in nanoseconds). 0 if none yet. */
+	private static long lastPulse;
+	
+	/** The average time between pulses (in nanoseconds). */
+	private static double averageFrameTime;
+	
+	/** The longest time between pulses (in nanoseconds). */
+	private static long maxFrameTime;
+	
+	/** The average time spent updating the tweens each pulse (in nanoseconds). */
+	private static double averageUpdateTime;
+	
+	/** The timer updating the tweens every pulse. */
+	private static final AnimationTimer TIMER = new AnimationTimer() {
+		public void handle(long now) {
+			pulse(now);
+		}
+	};
+	
+	/** Whether the timer is running. */
+	private static boolean running;
+	
+	/**
+	 * Prepares a tween moving the given node, without playing it.
+	 * 
+	 * @param node The node to move.
+	 * @param x0 The starting x-coordinate of the node.
+	 * @param y0 The starting y-coordinate of the node.
+	 * @param x1 The ending x-coordinate of the node.
+	 * @param y1 The ending y-coordinate of the node.
+	 * @param duration The duration of the motion (in seconds).
+	 * @return The prepared tween.
+	 */
+	public static Tween tween(Node node, double x0, double y0, double x1, double y1, double duration) {
+		final Tween tween = POOL.isEmpty() ? new Tween() : POOL.pop();
+		tween.node = node;
+		tween.x0 = x0;
+		tween.y0 = y0;
+		tween.x1 = x1;
+		tween.y1 = y1;
+		tween.duration = Math.max(1, (long) (duration*1E9));
+		tween.delay = 0;
+		tween.easing = Easing.LINEAR;
+		tween.post = null;
+		tween.next = null;
+		tween.cancelled = false;
+		return tween;
+	}
+	
+	/**
+	 * Moves the given node from one position to another, starting now.
+	 * 
+	 * @param node The node to move.
+	 * @param x0 The starting x-coordinate of the node.
+	 * @param y0 The starting y-coordinate of the node.
+	 * @param x1 The ending x-coordinate of the node.
+	 * @param y1 The ending y-coordinate of the node.
+	 * @param duration The duration of the motion (in seconds).
+	 * @return The playing tween, which can still be given an easing and a post animation.
+	 */
+	public static Tween move(Node node, double x0, double y0, double x1, double y1, double duration) {
+		final Tween tween = tween(node, x0, y0, x1, y1, duration);
+		play(tween);
+		return tween;
+	}
+	
+	/**
+	 * Plays the given tweens one after another, starting now.
+	 * @param tweens The tweens to play, in order.
+	 */
+	public static void play(Tween...tweens) {
+		for (int i = 0; i < tweens.length-1; i++)
+			tweens[i].next = tweens[i+1];
+		start(tweens[0], System.nanoTime());
+	}
+	
+	/**
+	 * Runs the given action at the start of every pulse, before the tweens are updated.
+	 * The animation timer keeps running for as long as there are pulse listeners.
+	 * @param listener The action to run every pulse.
+	 */
+	public static void addPulseListener(Runnable listener) {
+		PULSE_LISTENERS.add(listener);
+		startTimer();
+	}
+	
+	/**
+	 * Cancels every tween moving the given node, leaving the node where it is.
+	 * The cancelled tweens' post animations are not run.
+	 * @param node The node whose motions will be cancelled.
+	 */
+	public static void cancel(Node node) {
+		for (Tween tween : ACTIVE)
+			if (tween.node == node)
+				tween.cancelled = true;
+	}
+	
+	/**
+	 * Starts playing the given tween.
+	 * @param tween The tween to play.
+	 * @param now The current time (in nanoseconds).
+	 */
+	private static void start(Tween tween, long now) {
+		tween.start = now + tween.delay;
+		tween.node.setLayoutX(tween.x0);
+		tween.node.setLayoutY(tween.y0);
+		ACTIVE.add(tween);
+		startTimer();
+	}
+	
+	/**
+	 * Starts the animation timer if it is idle.
+	 */
+	private static void startTimer() {
+		if (!running) {
+			running = true;
+			lastPulse = 0;
+			TIMER.start();
+		}
+	}
+	
+	/**
+	 * Updates every active tween.
+	 * @param now The time of the pulse (in nanoseconds).
+	 */
+	private static void pulse(long now) {
+		final long updateStart = System.nanoTime();
+		
+		// Updates the frame time stats
+		if (lastPulse != 0) {
+			final long frameTime = now - lastPulse;
+			averageFrameTime += AVERAGE_WEIGHT * (frameTime - averageFrameTime);
+			maxFrameTime = Math.max(maxFrameTime, frameTime);
+		}
+		lastPulse = now;
+		
+		// Runs the pulse listeners
+		for (int i = 0; i < PULSE_LISTENERS.size(); i++)
+			PULSE_LISTENERS.get(i).run();
+		
+		// Updates the tweens, including the ones started during this pulse
+		for (int i = 0; i < ACTIVE.size();) {
+			final Tween tween = ACTIVE.get(i);
+			if (!tween.cancelled && !tween.update(now)) {
+				i++;
+				continue;
+			}
+			
+			// Removes the finished tween
+			ACTIVE.set(i, ACTIVE.get(ACTIVE.size()-1));
+			ACTIVE.remove(ACTIVE.size()-1);
+			
+			// Runs the finished tween's post animation and plays the next tween
+			if (!tween.cancelled) {
+				if (tween.post != null)
+					tween.post.run();
+				if (tween.next != null)
+					start(tween.next, now);
+			}
+			tween.node = null;
+			tween.post = null;
+			tween.next = null;
+			POOL.push(tween);
+		}
+		
+		// Stops the timer when idle
+		if (ACTIVE.isEmpty() && PULSE_LISTENERS.isEmpty()) {
+			running = false;
+			TIMER.stop();
+		}
+		
+		averageUpdateTime += AVERAGE_WEIGHT * (System.nanoTime() - updateStart - averageUpdateTime);
+	}
+	
+	/**
+	 * @return The number of tweens currently playing.
+	 */
+	public static int getActive() {
+		return ACTIVE.size();
+	}
+	
+	/**
+	 * @return The average time between pulses while animating (in milliseconds).
+	 */
+	public static double getAverageFrameTime() {
+		return averageFrameTime * 1E-6;
+	}
+	
+	/**
+	 * @return The longest time between pulses while animating (in milliseconds).
+	 */
+	public static double getMaxFrameTime() {
+		return maxFrameTime * 1E-6;
+	}
+	
+	/**
+	 * @return The average time spent updating the tweens each pulse (in milliseconds).
+	 */
+	public static double getAverageUpdateTime() {
+		return averageUpdateTime * 1E-6;
+	}
+}
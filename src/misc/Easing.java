@@ -0,0 +1,27 @@
+package misc;
+
+/**
+ * Maps the linear progress of an animation to its eased progress.
+ * @author Raul Hernandez, 01/23/2024
+ * 
+ */
+public interface Easing {
+	
+	/** Moves at a constant speed. */
+	public static final Easing LINEAR = t -> t;
+	
+	/** Starts slowly and speeds up. */
+	public static final Easing EASE_IN = t -> t*t*t;
+	
+	/** Starts quickly and slows down. */
+	public static final Easing EASE_OUT = t -> 1 - (1-t)*(1-t)*(1-t);
+	
+	/** Starts and ends slowly. */
+	public static final Easing EASE_IN_OUT = t -> t*t*(3 - 2*t);
+	
+	/**
+	 * @param t The linear progress of the animation in [0,1].
+	 * @return The eased progress of the animation.
+	 */
+	public double ease(double t);
+}
@@ -1,14 +1,33 @@
 package misc;
 
+import java.util.Random;
+import java.util.function.DoubleToIntFunction;
+import java.util.stream.IntStream;
+
 public class Noise {
 	
-	/** Stores the gradients. */
-	private static final Vector2D[] GRADS = new Vector2D[10000];
+	/** The seed from which the gradients are generated. */
+	public static final long SEED = 29175;
+	
+	/** The number of gradients. */
+	private static final int GRADS = 10000;
+	
+	/** Stores the x coordinates of the gradients. */
+	private static final double[] GRAD_X = new double[GRADS];
+	
+	/** Stores the y coordinates of the gradients. */
+	private static final double[] GRAD_Y = new double[GRADS];
+	
+	/** The number of rows of pixels filled by each parallel task. */
+	private static final int TILE_ROWS = 32;
 	
 	static {
 		// Initializes the gradients
-		for (int i = 0; i < GRADS.length; i++)
-			GRADS[i] = new Vector2D(2*Math.random()-1, 2*Math.random()-1);
+		final Random random = new Random(SEED);
+		for (int i = 0; i < GRADS; i++) {
+			GRAD_X[i] = 2*random.nextDouble()-1;
+			GRAD_Y[i] = 2*random.nextDouble()-1;
+		}
 	}
 	
 	/**
@@ -16,10 +35,10 @@ public class Noise {
 	 * @param y The y coordinate of the gradient.
 	 * @param maxX The maximum number of gradients along the x direction.
 	 * 
-	 * @return The gradient at the given position.
+	 * @return The index of the gradient at the given position.
 	 */
-	private static Vector2D getGrad(int x, int y, int maxX) {
-		return GRADS[(y*maxX + x)%GRADS.length];
+	private static int getGrad(int x, int y, int maxX) {
+		return (y*maxX + x)%GRADS;
 	}
 	
 	/**
@@ -31,32 +50,43 @@ public class Noise {
 	 * @return The noise at the given point.
 	 */
 	public static double noise(Vector2D pos, int maxX) {
+		return noise(pos.x, pos.y, maxX);
+	}
+	
+	/**
+	 * Computes the noise at the given 2D point without allocating.
+	 * 
+	 * @param x The x coordinate at which the interpolation will happen.
+	 * @param y The y coordinate at which the interpolation will happen.
+	 * @param maxX The maximum number of gradients along the x direction.
+	 * 
+	 * @return The noise at the given point.
+	 */
+	public static double noise(double x, double y, int maxX) {
 		
 		// Calculates the integer coordinates
-		final int xInt = (int)pos.x;
-		final int yInt = (int)pos.y;
+		final int xInt = (int)x;
+		final int yInt = (int)y;
 		
 		// Calculates the corner gradients
-		/*  
+		/*
 		 * g1 | g2
 		 * -------
-		 * g3 | g4  
+		 * g3 | g4
 		 */
-		final Vector2D g1 = getGrad(xInt, yInt, maxX);
-		final Vector2D g2 = getGrad(xInt+1, yInt, maxX);
-		final Vector2D g3 = getGrad(xInt, yInt+1, maxX);
-		final Vector2D g4 = getGrad(xInt+1, yInt+1, maxX);
+		final int g1 = getGrad(xInt, yInt, maxX);
+		final int g2 = getGrad(xInt+1, yInt, maxX);
+		final int g3 = getGrad(xInt, yInt+1, maxX);
+		final int g4 = getGrad(xInt+1, yInt+1, maxX);
 		
-		// Stores the other relevant vectors
-		final Vector2D g1ToPos = new Vector2D(pos.x-(xInt), pos.y-(yInt));
-		final Vector2D g2ToPos = new Vector2D(pos.x-(xInt+1), pos.y-(yInt));
-		final Vector2D g3ToPos = new Vector2D(pos.x-(xInt), pos.y-(yInt+1));
-		final Vector2D g4ToPos = new Vector2D(pos.x-(xInt+1), pos.y-(yInt+1));
+		// Stores the offsets from the top-left corner
+		final double dx = x-xInt;
+		final double dy = y-yInt;
 		
 		// Interpolates
-		final double lerp1 = lerp(g1.dot(g1ToPos), g2.dot(g2ToPos), g1ToPos.x);
-		final double lerp2 = lerp(g3.dot(g3ToPos), g4.dot(g4ToPos), g1ToPos.x);
-		return lerp(lerp1, lerp2, g1ToPos.y);
+		final double lerp1 = lerp(GRAD_X[g1]*dx + GRAD_Y[g1]*dy, GRAD_X[g2]*(dx-1) + GRAD_Y[g2]*dy, dx);
+		final double lerp2 = lerp(GRAD_X[g3]*dx + GRAD_Y[g3]*(dy-1), GRAD_X[g4]*(dx-1) + GRAD_Y[g4]*(dy-1), dx);
+		return lerp(lerp1, lerp2, dy);
 	}
 	
 	/**
@@ -70,11 +100,55 @@ public class Noise {
 		
 		// Calculates the boundary gradients
 		final int xInt = (int)x;
-		final Vector2D g1 = getGrad(xInt, 0, 0);
-		final Vector2D g2 = getGrad(xInt+1, 0, 0);
+		final double g1 = GRAD_X[getGrad(xInt, 0, 0)];
+		final double g2 = GRAD_X[getGrad(xInt+1, 0, 0)];
 		x -= xInt;
 		
-		return lerp(g1.x*x, g2.x*(1-x), x);
+		return lerp(g1*x, g2*(1-x), x);
+	}
+	
+	/**
+	 * Fills the given pixels with noise, splitting the rows into tiles computed in parallel.
+	 * The pixel at (x, y) is stored at index {@code y*width + x}, and is computed from
+	 * the noise at ({@code x/scale}, {@code y/scale}).
+	 * 
+	 * @param pixels The pixels to fill. Must hold at least {@code width*height} pixels.
+	 * @param width The width of the pixel region.
+	 * @param height The height of the pixel region.
+	 * @param scale The number of pixels between gradients.
+	 * @param maxX The maximum number of gradients along the x direction.
+	 * @param color Converts the noise at a pixel into that pixel's color.
+	 */
+	public static void fill(int[] pixels, int width, int height, double scale, int maxX, DoubleToIntFunction color) {
+		final int tiles = (height + TILE_ROWS-1) / TILE_ROWS;
+		IntStream.range(0, tiles).parallel().forEach(tile -> {
+			final int y0 = tile*TILE_ROWS;
+			fill(pixels, width, 0, y0, width, Math.min(TILE_ROWS, height-y0), scale, maxX, color);
+		});
+	}
+	
+	/**
+	 * Fills the given region of pixels with noise.
+	 * The pixel at (x, y) is stored at index {@code y*stride + x}, and is computed from
+	 * the noise at ({@code x/scale}, {@code y/scale}).
+	 * 
+	 * @param pixels The pixels to fill.
+	 * @param stride The number of pixels in each row of the pixel array.
+	 * @param x0 The x coordinate of the region's top-left corner.
+	 * @param y0 The y coordinate of the region's top-left corner.
+	 * @param width The width of the region.
+	 * @param height The height of the region.
+	 * @param scale The number of pixels between gradients.
+	 * @param maxX The maximum number of gradients along the x direction.
+	 * @param color Converts the noise at a pixel into that pixel's color.
+	 */
+	public static void fill(int[] pixels, int stride, int x0, int y0, int width, int height,
+							double scale, int maxX, DoubleToIntFunction color) {
+		for (int y = y0; y < y0+height; y++) {
+			final int row = y*stride;
+			for (int x = x0; x < x0+width; x++)
+				pixels[row + x] = color.applyAsInt(noise(x/scale, y/scale, maxX));
+		}
 	}
 	
 	/**
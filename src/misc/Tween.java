@@ -0,0 +1,108 @@
+package misc;
+
+import javafx.scene.Node;
+
+/**
+ * Handles the motion of a node from one position to another.
+ * Tweens are pooled and reused by the {@link Animator}, so a tween must not
+ * be kept around once it has been played.
+ * @author Raul Hernandez, 01/23/2024
+ * 
+ */
+public class Tween {
+	
+	/** The node being moved. */
+	Node node;
+	
+	/** The starting x-coordinate of the node. */
+	double x0;
+	
+	/** The starting y-coordinate of the node. */
+	double y0;
+	
+	/** The ending x-coordinate of the node. */
+	double x1;
+	
+	/** The ending y-coordinate of the node. */
+	double y1;
+	
+	/** The duration of the motion (in nanoseconds). */
+	long duration;
+	
+	/** The time at which the motion starts (in nanoseconds). */
+	long start;
+	
+	/** The delay before the motion starts once played (in nanoseconds). */
+	long delay;
+	
+	/** The easing applied to the motion. */
+	Easing easing;
+	
+	/** The action to run once the motion ends. {@code null} if none. */
+	PostAnimation post;
+	
+	/** The tween to play once this tween ends. {@code null} if none. */
+	Tween next;
+	
+	/** Whether this tween was cancelled. */
+	boolean cancelled;
+	
+	/**
+	 * Creates an empty tween, to be set up by the {@link Animator}.
+	 */
+	Tween() {}
+	
+	/**
+	 * Sets the easing applied to the motion.
+	 * @param easing The easing to apply.
+	 * @return This tween.
+	 */
+	public Tween ease(Easing easing) {
+		this.easing = easing;
+		return this;
+	}
+	
+	/**
+	 * Delays the start of the motion once the tween is played.
+	 * @param seconds The delay (in seconds).
+	 * @return This tween.
+	 */
+	public Tween delay(double seconds) {
+		delay = (long) (seconds*1E9);
+		return this;
+	}
+	
+	/**
+	 * Sets the action to run once the motion ends.
+	 * @param post The action to run.
+	 * @return This tween.
+	 */
+	public Tween then(PostAnimation post) {
+		this.post = post;
+		return this;
+	}
+	
+	/**
+	 * Places the node at the position at the given time.
+	 * @param now The current time (in nanoseconds).
+	 * @return Whether the motion has ended.
+	 */
+	boolean update(long now) {
+		if (now < start)
+			return false;
+		
+		// Ends the motion
+		final double dt = (double) (now-start) / duration;
+		if (dt >= 1) {
+			node.setLayoutX(x1);
+			node.setLayoutY(y1);
+			return true;
+		}
+		
+		// Updates the node's new position
+		final double t = easing.ease(dt);
+		node.setLayoutX(x0 + (x1-x0) * t);
+		node.setLayoutY(y0 + (y1-y0) * t);
+		return false;
+	}
+}
@@ -0,0 +1,58 @@
+package net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Handles one end of a message link between a session and a player, whichever transport carries it:
+ * a TCP socket ({@link SocketLink}), memory shared with a player in the same process ({@link LocalLink}),
+ * or a simulated network. Each end hands the bytes it receives to its receiver, on whichever thread delivers them.
+ * @author Raul Hernandez, 02/09/2024
+ *
+ */
+public interface Link {
+
+	/** The threads reused to receive for the ends of links, shared by the server and the clients. */
+	public static final ExecutorService READERS = Executors.newCachedThreadPool(task -> {
+		final Thread thread = new Thread(task, "RaUno Link");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Handles the bytes received by an end of a link.
+	 */
+	public static interface Receiver {
+
+		/**
+		 * Called once bytes are received. Bytes left in the buffer are passed again with the next bytes received.
+		 * @param bytes The bytes received and not handled yet, ready to be read.
+		 */
+		public void received(ByteBuffer bytes) throws Exception;
+
+		/**
+		 * Called once the other end of the link closed.
+		 */
+		public void closed();
+	}
+
+	/**
+	 * Starts handing the bytes received to the given receiver.
+	 * @param receiver Handles the bytes received.
+	 */
+	public void open(Receiver receiver);
+
+	/**
+	 * Sends the given request to the other end, without waiting for it to arrive.
+	 * @param request The request to send. Must not be modified afterwards.
+	 * @return Whether the request was sent. {@code false} if the link is closed, or if the other end is too far
+	 * behind to take it, in which case the request is dropped.
+	 */
+	public boolean send(byte[] request);
+
+	/**
+	 * Closes the link. The other end is told once the requests already sent arrive.
+	 */
+	public void close();
+}
@@ -0,0 +1,154 @@
+package net;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Handles one end of an in-memory link, for players in the same process as their session (such as bots).
+ * Each end receives through its own single-producer single-consumer ring of requests, so a request
+ * is handed over as the same array that was sent, without copies, sockets or locks.
+ * Requests to an end must be sent by one thread at a time, and are handed to the end's
+ * receiver by a worker thread, which waits for them according to the link's wait strategy.
+ * Senders never wait: a request sent to an end too far behind is dropped, like a request to a congested connection.
+ * @author Raul Hernandez, 02/10/2024
+ * 
+ */
+public class LocalLink implements Link {
+	
+	/** The number of requests each end can hold. Requests sent to a full end are dropped. */
+	private static final int CAPACITY = 1024;
+	
+	/** Masks a sequence number into the index of its slot. */
+	private static final int MASK = CAPACITY - 1;
+	
+	/** The requests sent to this end, indexed by sequence number. */
+	private final byte[][] slots = new byte[CAPACITY][];
+	
+	/** The next sequence number to be sent to this end. */
+	private final AtomicLong sent = new AtomicLong();
+	
+	/** The next sequence number to be received by this end. */
+	private final AtomicLong received = new AtomicLong();
+	
+	/** Decides how this end waits for requests. */
+	private final WaitStrategy strategy;
+	
+	/** The other end of the link. */
+	private LocalLink peer;
+	
+	/** The thread receiving for this end, if parked waiting for a request. */
+	private volatile Thread parked = null;
+	
+	/** Whether this end was closed. */
+	private volatile boolean closed = false;
+	
+	/** Whether the other end was closed, after which this end stops once every request sent arrived. */
+	private volatile boolean ended = false;
+	
+	/**
+	 * Creates an end of a link.
+	 * @param strategy Decides how the end waits for requests.
+	 */
+	private LocalLink(WaitStrategy strategy) {
+		this.strategy = strategy;
+	}
+	
+	/**
+	 * Creates an in-memory link, whose ends wait by the rauno.waitStrategy system property (see {@link WaitStrategy#fromProperty()}).
+	 * @return Both ends of the link.
+	 */
+	public static Link[] pair() {
+		return pair(WaitStrategy.fromProperty());
+	}
+	
+	/**
+	 * Creates an in-memory link.
+	 * @param strategy Decides how the ends wait for requests. {@link WaitStrategy#BUSY_SPIN} for the lowest latency.
+	 * @return Both ends of the link.
+	 */
+	public static Link[] pair(WaitStrategy strategy) {
+		final LocalLink first = new LocalLink(strategy);
+		final LocalLink second = new LocalLink(strategy);
+		first.peer = second;
+		second.peer = first;
+		return new Link[] {first, second};
+	}
+	
+	@Override
+	public void open(Receiver receiver) {
+		READERS.execute(() -> { try {
+			ByteBuffer left = null;
+			while (true) {
+				final long sequence = received.get();
+				
+				// Waits for the next request
+				for (int tries = 0; sent.get() == sequence; ) {
+					if (closed || ended && sent.get() == sequence) {
+						if (!closed)
+							receiver.closed();
+						return;
+					}
+					if (strategy == WaitStrategy.BLOCKING && tries >= WaitStrategy.SPIN_TRIES) {
+						parked = Thread.currentThread();
+						if (sent.get() == sequence && !closed && !ended)
+							tries = strategy.idle(tries);
+						parked = null;
+					} else {
+						tries = strategy.idle(tries);
+					}
+				}
+				
+				// Stops as soon as this end is closed, dropping the requests not received yet
+				if (closed)
+					return;
+				
+				// Takes the request, then frees its slot
+				final int slot = (int) sequence & MASK;
+				final byte[] request = slots[slot];
+				slots[slot] = null;
+				received.lazySet(sequence + 1);
+				
+				// Hands the request to the receiver, with any bytes it left unread
+				ByteBuffer bytes = ByteBuffer.wrap(request);
+				if (left != null) {
+					bytes = ByteBuffer.allocate(left.remaining() + request.length);
+					bytes.put(left).put(request).flip();
+				}
+				receiver.received(bytes);
+				left = bytes.hasRemaining() ? bytes : null;
+			}
+		} catch (Exception e) {if (!closed) e.printStackTrace();} close(); });
+	}
+	
+	@Override
+	public boolean send(byte[] request) {
+		final LocalLink peer = this.peer;
+		final long sequence = peer.sent.get();
+		
+		// Drops the request if the link is closed, or if the other end has no free slot
+		if (closed || peer.closed || sequence - peer.received.get() >= CAPACITY)
+			return false;
+		
+		// Publishes the request, then wakes up the other end
+		peer.slots[(int) sequence & MASK] = request;
+		peer.sent.lazySet(sequence + 1);
+		final Thread receiver = peer.parked;
+		if (receiver != null)
+			LockSupport.unpark(receiver);
+		return true;
+	}
+	
+	@Override
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		peer.ended = true;
+		for (LocalLink end : new LocalLink[] {this, peer}) {
+			final Thread receiver = end.parked;
+			if (receiver != null)
+				LockSupport.unpark(receiver);
+		}
+	}
+}
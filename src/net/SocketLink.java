@@ -0,0 +1,108 @@
+package net;
+
+import java.io.Closeable;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Handles one end of a link over a stream socket: a TCP socket for players connected over the network,
+ * or a Unix domain socket for gateways on the same machine (see {@link UnixSockets}).
+ * The bytes received are read by a worker thread and handed to the link's receiver,
+ * and each request sent is written straight to the socket by the sending thread.
+ * @author Raul Hernandez, 02/10/2024
+ * 
+ */
+public class SocketLink implements Link {
+	
+	/** The number of bytes read from the socket at once. */
+	private static final int READ_BUFFER_SIZE = 512;
+	
+	/** The socket or channel for the link. */
+	private final Closeable socket;
+	
+	/** Reads the bytes received from the socket. */
+	private final ReadableByteChannel input;
+	
+	/** Writes the bytes sent to the socket. */
+	private final WritableByteChannel output;
+	
+	/** Whether the link is closed. */
+	private volatile boolean closed = false;
+	
+	/**
+	 * Creates a link over the given socket.
+	 * @param socket The connected socket.
+	 */
+	public SocketLink(Socket socket) throws Exception {
+		this.socket = socket;
+		socket.setTcpNoDelay(true);
+		input = Channels.newChannel(socket.getInputStream());
+		output = Channels.newChannel(socket.getOutputStream());
+	}
+	
+	/**
+	 * Creates a link over the given blocking channel, such as a Unix domain socket.
+	 * The channel is read from and written to at once, which socket channels allow.
+	 * @param channel The connected channel.
+	 */
+	public SocketLink(SocketChannel channel) {
+		socket = channel;
+		input = channel;
+		output = channel;
+	}
+	
+	@Override
+	public void open(Receiver receiver) {
+		READERS.execute(() -> { try {
+			
+			// Hands the bytes read to the receiver, keeping the bytes it left for the next read
+			ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			while (!closed) {
+				if (!bytes.hasRemaining()) {
+					final ByteBuffer larger = ByteBuffer.allocate(2*bytes.capacity());
+					bytes.flip();
+					larger.put(bytes);
+					bytes = larger;
+				}
+				if (input.read(bytes) == -1 || closed) // Stops as soon as this end is closed
+					break;
+				bytes.flip();
+				receiver.received(bytes);
+				bytes.compact();
+			}
+		} catch (Exception e) {if (!closed) e.printStackTrace();}
+		
+		// Tells the receiver unless this end was closed
+		if (!closed) {
+			close();
+			receiver.closed();
+		}});
+	}
+	
+	@Override
+	public boolean send(byte[] request) {
+		if (closed)
+			return false;
+		try {
+			synchronized (output) {
+				final ByteBuffer bytes = ByteBuffer.wrap(request);
+				while (bytes.hasRemaining())
+					output.write(bytes);
+			}
+			return true;
+		} catch (Exception e) {
+			close();
+			return false;
+		}
+	}
+	
+	@Override
+	public void close() { try {
+		closed = true;
+		socket.close();
+	} catch (Exception e) {e.printStackTrace();}}
+}
@@ -0,0 +1,73 @@
+package net;
+
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Opens Unix domain sockets, which skip the TCP stack for processes on the same machine (such as a gateway
+ * in front of the server). Unix domain sockets need Java 16 or later, so they are opened by reflection,
+ * letting the rest of the server still run on Java 1.8.
+ * @author Raul Hernandez, 02/11/2024
+ * 
+ */
+public class UnixSockets {
+	
+	/**
+	 * @return Whether this Java version supports Unix domain sockets.
+	 */
+	public static boolean supported() {
+		try {
+			Class.forName("java.net.UnixDomainSocketAddress");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Listens on the Unix domain socket at the given path, replacing any file left there by a previous server.
+	 * @param path The path of the socket file.
+	 * @return The blocking server channel.
+	 */
+	public static ServerSocketChannel listen(String path) throws Exception {
+		Files.deleteIfExists(Paths.get(path));
+		final ServerSocketChannel server = (ServerSocketChannel) ServerSocketChannel.class
+				.getMethod("open", ProtocolFamily.class).invoke(null, unix());
+		server.bind(address(path), 100);
+		return server;
+	}
+	
+	/**
+	 * Connects to the Unix domain socket at the given path.
+	 * @param path The path of the socket file.
+	 * @return The blocking channel.
+	 */
+	public static SocketChannel connect(String path) throws Exception {
+		final SocketChannel channel = (SocketChannel) SocketChannel.class
+				.getMethod("open", ProtocolFamily.class).invoke(null, unix());
+		channel.connect(address(path));
+		return channel;
+	}
+	
+	/**
+	 * @return The Unix protocol family.
+	 */
+	private static ProtocolFamily unix() {
+		if (!supported())
+			throw new UnsupportedOperationException("Unix domain sockets need Java 16 or later.");
+		return StandardProtocolFamily.valueOf("UNIX");
+	}
+	
+	/**
+	 * @param path The path of the socket file.
+	 * @return The address of the Unix domain socket at the given path.
+	 */
+	private static SocketAddress address(String path) throws Exception {
+		return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null, path);
+	}
+}
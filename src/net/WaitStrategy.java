@@ -0,0 +1,60 @@
+package net;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stores how a thread waits for requests (such as those of a request ring or an in-memory link),
+ * trading latency for CPU usage.
+ * @author Raul Hernandez, 02/03/2024
+ * 
+ */
+public enum WaitStrategy {
+	
+	/** Spins without ever giving up the core. Lowest latency, uses a full core per waiting thread. */
+	BUSY_SPIN,
+	
+	/** Spins for a while, then yields the core to other threads. */
+	YIELDING,
+	
+	/** Spins, then yields, then sleeps for short periods. */
+	SLEEPING,
+	
+	/** Parks until woken up by a publishing thread. Lowest CPU usage. */
+	BLOCKING;
+	
+	/** The number of tries spent spinning before backing off. */
+	public static final int SPIN_TRIES = 100;
+	
+	/** The number of tries spent yielding before sleeping. */
+	private static final int YIELD_TRIES = 200;
+	
+	/** The time (in nanoseconds) slept by a waiting thread. */
+	private static final long SLEEP_TIME = 100_000;
+	
+	/** The longest time (in nanoseconds) a blocked thread stays parked without being woken up. */
+	private static final long PARK_TIME = 1_000_000;
+	
+	/**
+	 * Waits once for the awaited event.
+	 * @param tries The number of times the thread already waited for the same event.
+	 * @return The number of times the thread waited for the event, including this time.
+	 */
+	public int idle(int tries) {
+		if (this == BUSY_SPIN || tries < SPIN_TRIES)
+			return tries + 1;
+		if (this == YIELDING || (this == SLEEPING && tries < YIELD_TRIES))
+			Thread.yield();
+		else if (this == SLEEPING)
+			LockSupport.parkNanos(SLEEP_TIME);
+		else
+			LockSupport.parkNanos(PARK_TIME);
+		return tries + 1;
+	}
+	
+	/**
+	 * @return The wait strategy set by the rauno.waitStrategy system property. {@link #BLOCKING} by default.
+	 */
+	public static WaitStrategy fromProperty() {
+		return valueOf(System.getProperty("rauno.waitStrategy", BLOCKING.name()).toUpperCase());
+	}
+}
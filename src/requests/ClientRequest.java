@@ -9,12 +9,14 @@ public enum ClientRequest {
 
 	/**
 	 * A request from the client indicating it wants to use the given card.
+	 * The sequence number is echoed back by the server's reply, letting the
+	 * client reconcile the card use it already predicted.
 	 * 
 	 * The byte array structure of this request is as follows:<br>
 	 * 
-	 * [CARD HAND INDEX, CARD COLOR, CARD VALUE]
+	 * [SEQUENCE NUMBER, CARD COLOR, CARD VALUE]
 	 */
-	USE_CARD(),
+	USE_CARD(3, 10),
 
 	/**
 	 * A request from the client indicating it wants to draw a card from the deck.
@@ -23,7 +25,7 @@ public enum ClientRequest {
 	 * 
 	 * []
 	 */
-	DRAW_CARD(),
+	DRAW_CARD(0, 5),
 
 	/**
 	 * A request from the client indicating it called Uno for the given client at
@@ -33,11 +35,41 @@ public enum ClientRequest {
 	 * 
 	 * [CLIENT ID, 8 LSB OF TIME, 8 NEXT LSB BITS OF TIME, 8 NEXT LSB BITS OF TIME]
 	 */
-	CALLED_UNO();
+	CALLED_UNO(4, 5),
+
+	/**
+	 * A request from the client indicating its view of the game has diverged
+	 * from the server's, and that it wants the full game state.
+	 * 
+	 * The byte array structure of this request is as follows:<br>
+	 * 
+	 * []
+	 */
+	REQUEST_SNAPSHOT(0, 2),
+
+	/**
+	 * A request from the client asking the server to suggest its best move,
+	 * answered by {@link ServerRequest#HINT} if it is the client's turn. Ignored in games played with more than one deck.
+	 * 
+	 * The byte array structure of this request is as follows:<br>
+	 * 
+	 * []
+	 */
+	REQUEST_HINT(0, 1);
+	
+	/** The number of bytes following the request ID. */
+	public final int size;
+	
+	/** The number of these requests a client can send per second before being rate limited. */
+	public final int rate;
 	
 	/**
 	 * Creates a client request.
-	 * @param ID The ID of the client request.
+	 * @param size The number of bytes following the request ID.
+	 * @param rate The number of these requests a client can send per second.
 	 */
-	private ClientRequest() {}
+	private ClientRequest(int size, int rate) {
+		this.size = size;
+		this.rate = rate;
+	}
 }
@@ -15,17 +15,18 @@ public enum ServerRequest {
 	 * 
 	 * [NUMBER OF CARDS, CARD #1 COLOR, CARD #1 VALUE, ...]
 	 */
-	DRAW_FROM_DECK(),
+	DRAW_FROM_DECK(-1),
 
 	/**
 	 * A request from the server with the client's ID, signaling
-	 * a game start.
+	 * a game start. Spectators are sent a client ID of -1.
+	 * The house rules are flags, such as {@link #JUMP_IN_RULE}.
 	 * 
 	 * The byte array structure of this request is as follows:<br>
 	 * 
-	 * [CLIENT ID, NUMBER OF PLAYERS, CENTER CARD COLOR, CENTER CARD VALUE]
+	 * [CLIENT ID, NUMBER OF PLAYERS, CENTER CARD COLOR, CENTER CARD VALUE, HOUSE RULES]
 	 */
-	START_GAME(),
+	START_GAME(5),
 
 	/**
 	 * A request from the server indicating that the card trying to be used
@@ -33,9 +34,9 @@ public enum ServerRequest {
 	 * 
 	 * The byte array structure of this request is as follows:<br>
 	 * 
-	 * []
+	 * [SEQUENCE NUMBER OF THE CARD USE]
 	 */
-	INVALID_CARD_USE(),
+	INVALID_CARD_USE(1),
 
 	/**
 	 * A request from the server indicating that the given card was
@@ -45,36 +46,38 @@ public enum ServerRequest {
 	 * 
 	 * [CARD COLOR, CARD VALUE]
 	 */
-	CENTER_CARD(),
+	CENTER_CARD(2),
 
 	/**
 	 * A request from the server indicating that the turn is over.
+	 * The checksum is computed over the public game state by {@link StateChecksum}.
 	 * 
 	 * The byte array structure of this request is as follows:<br>
 	 * 
-	 * [NEXT CLIENT ID]
+	 * [NEXT CLIENT ID, STATE CHECKSUM]
 	 */
-	END_TURN(),
+	END_TURN(2),
 
 	/**
-	 * A request from the server indicating for the client to remove the
-	 * card at the given index from the given client's hand.
+	 * A request from the server indicating that the given client used the
+	 * given card, removing it from their hand.
 	 * 
 	 * The byte array structure of this request is as follows:<br>
 	 * 
-	 * [CLIENT ID, CARD HAND INDEX, CARD COLOR, CARD VALUE]
+	 * [CLIENT ID, SEQUENCE NUMBER OF THE CARD USE, CARD COLOR, CARD VALUE]
 	 */
-	REMOVE_FROM_HAND(),
+	REMOVE_FROM_HAND(4),
 
 	/**
 	 * A request from the server indicating that the specified opponent
-	 * drew the given number of cards.
+	 * drew the given number of cards. Cosmetic, as the opponent's card count
+	 * is repaired by the next {@link #END_TURN} checksum if it is dropped.
 	 * 
 	 * The byte array structure of this request is as follows:<br>
 	 * 
 	 * [OPPONENT CLIENT ID, NUMBER OF CARDS]
 	 */
-	OPPONENT_DRAW_FROM_DECK(),
+	OPPONENT_DRAW_FROM_DECK(2, true),
 
 	/**
 	 * A request from the server indicating that the specified player
@@ -84,7 +87,7 @@ public enum ServerRequest {
 	 * 
 	 * [CLIENT ID]
 	 */
-	PLAYER_WON(),
+	PLAYER_WON(1),
 
 	/**
 	 * A request from the server indicating that the specified player
@@ -94,7 +97,7 @@ public enum ServerRequest {
 	 * 
 	 * [CLIENT ID]
 	 */
-	UNO(),
+	UNO(1),
 
 	/**
 	 * A request from the server requesting the client to remove the
@@ -104,11 +107,67 @@ public enum ServerRequest {
 	 * 
 	 * []
 	 */
-	REMOVE_UNO();
+	REMOVE_UNO(0),
+
+	/**
+	 * A request from the server with the full state of the game as seen by
+	 * the client, replacing whatever state the client had before.
+	 * Spectators are sent a client ID of -1 and no hand cards.
+	 * The house rules are flags, as in {@link #START_GAME}.
+	 * 
+	 * The byte array structure of this request is as follows:<br>
+	 * 
+	 * [CLIENT ID, NUMBER OF PLAYERS, CLIENT TURN, CENTER CARD COLOR, CENTER CARD VALUE, HOUSE RULES,
+	 *  CLIENT #0 CARD COUNT, ..., NUMBER OF CARDS, CARD #1 COLOR, CARD #1 VALUE, ...]
+	 */
+	STATE_SNAPSHOT(-1),
+
+	/**
+	 * A request from the server suggesting the client's best move, as asked for
+	 * by {@link ClientRequest#REQUEST_HINT}. Special cards are given their suggested color.
+	 * 
+	 * The byte array structure of this request is as follows:<br>
+	 * 
+	 * [CARD COLOR, CARD VALUE] (both -1 to suggest drawing a card)
+	 */
+	HINT(2);
+
+	/** The most players in a game, which the server hosts and the clients lay out. */
+	public static final int MAX_PLAYERS = 20;
+
+	/**
+	 * The house rule flag letting players use a card identical to the center card out of turn,
+	 * after which the turn goes on from them (the jump-in house rule).
+	 */
+	public static final byte JUMP_IN_RULE = 1;
+
+	/** 
+	 * The number of bytes following the request ID.
+	 * -1 if the number of bytes depends on the request's contents.
+	 */
+	public final int size;
+	
+	/**
+	 * Whether the request can be dropped for a congested client
+	 * without the client's game state diverging for good.
+	 */
+	public final boolean cosmetic;
 
 	/**
 	 * Creates a server request.
-	 * @param ID The ID of the server request.
+	 * @param size The number of bytes following the request ID. -1 if variable.
+	 * @param cosmetic Whether the request can be dropped for a congested client.
+	 */
+	private ServerRequest(int size, boolean cosmetic) {
+		this.size = size;
+		this.cosmetic = cosmetic;
+	}
+
+	/**
+	 * Creates a server request which cannot be dropped.
+	 * @param size The number of bytes following the request ID. -1 if variable.
 	 */
-	private ServerRequest() {}
+	private ServerRequest(int size) {
+		this(size, false);
+	}
 }
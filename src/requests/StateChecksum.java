@@ -0,0 +1,33 @@
+package requests;
+
+/**
+ * Computes the checksum of the public game state sent alongside
+ * {@link ServerRequest#END_TURN}, letting clients detect when their view
+ * of the game has diverged from the server's.
+ * @author Raul Hernandez, 01/16/2024
+ * 
+ */
+public class StateChecksum {
+	
+	/**
+	 * Computes the checksum of the given public game state.
+	 * 
+	 * @param clientTurn The ID of the client whose turn it is.
+	 * @param centerColor The ordinal of the center card's color.
+	 * @param centerValue The ordinal of the center card's value.
+	 * @param handSizes The number of cards in each client's hand, indexed by client ID.
+	 * @param players The number of players in the game.
+	 * @return The checksum of the game state.
+	 */
+	public static byte compute(int clientTurn, int centerColor, int centerValue, int[] handSizes, int players) {
+		int hash = 17;
+		hash = 31*hash + clientTurn;
+		hash = 31*hash + centerColor;
+		hash = 31*hash + centerValue;
+		for (int i = 0; i < players; i++)
+			hash = 31*hash + handSizes[i];
+		
+		// Folds the hash into a single byte
+		return (byte) (hash ^ (hash >>> 8) ^ (hash >>> 16) ^ (hash >>> 24));
+	}
+}
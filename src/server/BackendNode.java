@@ -0,0 +1,149 @@
+package server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Handles the router's view of a backend node hosting RaUno game sessions.
+ * @author Raul Hernandez, 01/27/2024
+ * 
+ */
+public class BackendNode {
+	
+	/** The time (in milliseconds) the node has to answer a control request. */
+	private static final int CONTROL_TIMEOUT = 500;
+	
+	/** The host name of the node. */
+	public final String host;
+	
+	/** The port on which the node accepts players from the router. */
+	public final int port;
+	
+	/** The port on which the node answers control requests. */
+	public final int controlPort;
+	
+	/** The number of health checks the node failed in a row. */
+	private int failures = 0;
+	
+	/** Whether the node is in the hash ring. */
+	private boolean healthy = false;
+	
+	/** The number of sessions the node reported hosting at its last health check. */
+	private volatile int sessions = 0;
+	
+	/**
+	 * Creates a backend node.
+	 * @param host The host name of the node.
+	 * @param port The port on which the node accepts players from the router.
+	 * @param controlPort The port on which the node answers control requests.
+	 */
+	public BackendNode(String host, int port, int controlPort) {
+		this.host = host;
+		this.port = port;
+		this.controlPort = controlPort;
+	}
+	
+	/**
+	 * Asks the node for its number of sessions, as a health check.
+	 * @return The number of sessions the node hosts.
+	 */
+	public int ping() throws Exception {
+		try (Socket socket = control()) {
+			new DataOutputStream(socket.getOutputStream()).writeUTF("PING");
+			return Integer.parseInt(new DataInputStream(socket.getInputStream()).readUTF().split(" ")[1]);
+		}
+	}
+	
+	/**
+	 * Freezes the given session on the node, to be resumed on another node.
+	 * @param sessionID The ID of the session.
+	 * @return The frozen state of the session. {@code null} if the node does not host it.
+	 */
+	public byte[] freeze(int sessionID) throws Exception {
+		try (Socket socket = control()) {
+			new DataOutputStream(socket.getOutputStream()).writeUTF("FREEZE " + sessionID);
+			final DataInputStream input = new DataInputStream(socket.getInputStream());
+			final int length = input.readInt();
+			if (length == -1)
+				return null;
+			final byte[] state = new byte[length];
+			input.readFully(state);
+			return state;
+		}
+	}
+	
+	/**
+	 * Has the node resume the given session once all of its seats are connected.
+	 * @param sessionID The ID of the session.
+	 * @param state The frozen state of the session.
+	 */
+	public void resume(int sessionID, byte[] state) throws Exception {
+		try (Socket socket = control()) {
+			final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+			output.writeUTF("RESUME " + sessionID);
+			output.writeInt(state.length);
+			output.write(state);
+			output.flush();
+			new DataInputStream(socket.getInputStream()).readUTF();
+		}
+	}
+	
+	/**
+	 * @return A new connection to the node's control port.
+	 */
+	private Socket control() throws Exception {
+		final Socket socket = new Socket();
+		socket.connect(new InetSocketAddress(host, controlPort), CONTROL_TIMEOUT);
+		socket.setSoTimeout(CONTROL_TIMEOUT);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+	
+	/**
+	 * Counts a failed health check.
+	 * @return The number of health checks the node failed in a row.
+	 */
+	public int fail() {
+		return ++failures;
+	}
+	
+	/**
+	 * Counts a passed health check.
+	 * @param sessions The number of sessions the node reported hosting.
+	 */
+	public void pass(int sessions) {
+		failures = 0;
+		this.sessions = sessions;
+	}
+	
+	/**
+	 * @return Whether the node is in the hash ring.
+	 */
+	public boolean isHealthy() {
+		return healthy;
+	}
+	
+	/**
+	 * @param healthy Whether the node is in the hash ring.
+	 */
+	public void setHealthy(boolean healthy) {
+		this.healthy = healthy;
+	}
+	
+	/**
+	 * @return The number of sessions the node reported hosting at its last health check.
+	 */
+	public int getSessions() {
+		return sessions;
+	}
+	
+	/**
+	 * @return The name of the node, unique within the cluster.
+	 */
+	@Override
+	public String toString() {
+		return host + ":" + port;
+	}
+}
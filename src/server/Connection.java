@@ -0,0 +1,426 @@
+package server;
+
+import java.io.Closeable;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+
+import net.Link;
+import requests.ServerRequest;
+
+/**
+ * Handles the outbound side of a player's connection.
+ * Requests are queued without blocking and sent by the connection's own thread,
+ * so a player with a full TCP window never stalls the rest of the table.
+ * Once the queue grows past its high watermark, cosmetic requests are dropped
+ * until it drains below its low watermark, and a player who stays behind
+ * for too long is disconnected, even if no more requests are queued for it.
+ * <br><br>
+ * Connections either have their own thread sending the queued requests, or are
+ * owned by an {@link EventLoop}, sending the queued requests as the socket accepts them.
+ * Connections over a {@link Link} hand every request straight to the link, which never blocks.
+ * A link whose other end is too far behind to take a request only drops it if cosmetic,
+ * and is otherwise dropped itself, like a connection whose queue overflowed.
+ * @author Raul Hernandez, 01/24/2024
+ * 
+ */
+public class Connection {
+	
+	/** The number of queued bytes past which the connection is congested. */
+	private static final int HIGH_WATERMARK = Integer.getInteger("rauno.highWatermark", 16*1024);
+	
+	/** The number of queued bytes below which a congested connection recovers. */
+	private static final int LOW_WATERMARK = Integer.getInteger("rauno.lowWatermark", 4*1024);
+	
+	/** The largest number of bytes that can be queued before the connection is dropped. */
+	private static final int MAX_QUEUED = Integer.getInteger("rauno.maxQueued", 64*1024);
+	
+	/** Whether cosmetic requests are dropped while the connection is congested. */
+	private static final boolean DROP_COSMETIC = !Boolean.getBoolean("rauno.keepCosmetic");
+	
+	/** The time (in milliseconds) a connection can stay congested before it is dropped. 0 to never drop. */
+	private static final int EVICT_AFTER = Integer.getInteger("rauno.evictAfter", 5_000);
+	
+	/** The server requests, indexed by request ID. */
+	private static final ServerRequest[] REQUESTS = ServerRequest.values();
+	
+	/** The name of the connection, used in logs. */
+	private final String name;
+	
+	/** The socket or channel for the connection. {@code null} if over a link. */
+	private final Closeable socket;
+	
+	/** The link for the connection. {@code null} if over a socket. */
+	private final Link link;
+	
+	/** The requests waiting to be sent. */
+	private final ArrayDeque<byte[]> queue = new ArrayDeque<byte[]>();
+	
+	/** The time (in milliseconds) each waiting request was queued, in queue order. */
+	private final ArrayDeque<Long> queueTimes = new ArrayDeque<Long>();
+	
+	/** The selection key of the socket's channel. {@code null} if not owned by an event loop. */
+	private final SelectionKey key;
+	
+	/** Schedules the checks dropping the connection once it stayed congested for too long, and the task run once dropped. */
+	private final Scheduler scheduler;
+	
+	/** The request being sent by the event loop, if it was only partly sent. */
+	private ByteBuffer head;
+	
+	/** Whether the event loop waits for the socket to accept more bytes. */
+	private boolean writing = false;
+	
+	/** The number of bytes waiting to be sent. */
+	private int queued = 0;
+	
+	/** Whether the connection is past its high watermark and has not drained yet. */
+	private boolean congested = false;
+	
+	/** The time (in milliseconds) at which the connection last became congested. */
+	private long congestedSince;
+	
+	/** Whether the connection is closed. */
+	private volatile boolean closed = false;
+	
+	/** Runs once the connection was dropped for falling too far behind. {@code null} to do nothing. */
+	private volatile Runnable onDrop = null;
+	
+	/** Whether the connection closes once every queued request is sent. */
+	private boolean finishing = false;
+	
+	/** The largest number of bytes that were waiting to be sent at once. */
+	private int maxQueued = 0;
+	
+	/** The number of cosmetic requests dropped while congested. */
+	private int dropped = 0;
+	
+	/** The number of bytes sent. */
+	private long sent = 0;
+	
+	/** The largest time (in milliseconds) a request waited before being sent. */
+	private long maxLag = 0;
+	
+	/**
+	 * Creates a connection and starts sending it its queued requests.
+	 * @param socket The socket for the connection.
+	 * @param name The name of the connection, used in logs.
+	 */
+	public Connection(Socket socket, String name) throws Exception {
+		this(socket, Channels.newChannel(socket.getOutputStream()), name);
+	}
+	
+	/**
+	 * Creates a connection over a blocking channel (such as a Unix domain socket), and starts sending it its queued requests.
+	 * @param socket The socket or channel for the connection, closed with the connection.
+	 * @param output The channel to which the queued requests are written.
+	 * @param name The name of the connection, used in logs.
+	 */
+	public Connection(Closeable socket, WritableByteChannel output, String name) {
+		this.socket = socket;
+		this.name = name;
+		key = null;
+		link = null;
+		scheduler = Scheduler.THREADS;
+		
+		// Sends the queued requests on a worker thread
+		Pool.WORKERS.execute(() -> { try { while (true) {
+			
+			// Waits for a request to send
+			final byte[] request;
+			final long queueTime;
+			synchronized (queue) {
+				while (queue.isEmpty() && !closed && !finishing)
+					queue.wait();
+				if (closed || queue.isEmpty())
+					break;
+				request = queue.peek();
+				queueTime = queueTimes.peek();
+			}
+			
+			final ByteBuffer bytes = ByteBuffer.wrap(request);
+			while (bytes.hasRemaining())
+				output.write(bytes);
+			
+			// Updates the queue once the request is sent
+			synchronized (queue) {
+				if (closed)
+					break;
+				queueTimes.poll();
+				sent(queue.poll(), queueTime);
+			}
+		}} catch (Exception e) {} close(); });
+	}
+	
+	/**
+	 * Creates a connection owned by an event loop.
+	 * Must only be used from the event loop's thread.
+	 * 
+	 * @param key The selection key of the connection's channel, registered with the event loop.
+	 * @param loop The event loop owning the connection.
+	 * @param name The name of the connection, used in logs.
+	 */
+	public Connection(SelectionKey key, EventLoop loop, String name) {
+		this.key = key;
+		this.socket = key.channel();
+		this.name = name;
+		link = null;
+		scheduler = loop;
+	}
+	
+	/**
+	 * Creates a connection over a link.
+	 * @param link The link to the player.
+	 * @param scheduler Runs the task set by {@link #onDrop(Runnable)} once the connection is dropped.
+	 * @param name The name of the connection, used in logs.
+	 */
+	public Connection(Link link, Scheduler scheduler, String name) {
+		this.link = link;
+		this.scheduler = scheduler;
+		this.name = name;
+		socket = null;
+		key = null;
+	}
+	
+	/**
+	 * Sends as many queued requests as the socket accepts, without blocking.
+	 * Only used by connections owned by an event loop.
+	 */
+	public void flush() { try {
+		synchronized (queue) {
+			final SocketChannel channel = (SocketChannel) key.channel();
+			while (!queue.isEmpty() && !closed) {
+				if (head == null)
+					head = ByteBuffer.wrap(queue.peek());
+				channel.write(head);
+				
+				// Waits for the socket to accept more bytes
+				if (head.hasRemaining()) {
+					if (!writing)
+						key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					writing = true;
+					return;
+				}
+				head = null;
+				sent(queue.poll(), queueTimes.poll());
+			}
+			
+			// Stops waiting once every request is sent
+			if (writing && !closed)
+				key.interestOps(SelectionKey.OP_READ);
+			writing = false;
+		}
+		if (finishing)
+			close();
+	} catch (Exception e) {close();}}
+	
+	/**
+	 * Updates the metrics once the given request is sent. Must hold the queue's lock.
+	 * @param request The request sent.
+	 * @param queueTime The time (in milliseconds) at which the request was queued.
+	 */
+	private void sent(byte[] request, long queueTime) {
+		queued -= request.length;
+		sent += request.length;
+		maxLag = Math.max(maxLag, System.currentTimeMillis()-queueTime);
+		if (congested && queued <= LOW_WATERMARK)
+			congested = false;
+	}
+	
+	/**
+	 * Queues the given request to be sent, without blocking.
+	 * Cosmetic requests are dropped while the connection is congested, and the
+	 * connection is closed if it has stayed congested for too long.
+	 * 
+	 * @param request The request to send. Must not be modified afterwards.
+	 * @return Whether the request was queued.
+	 */
+	public boolean send(byte[] request) {
+		synchronized (queue) {
+			if (closed || finishing)
+				return false;
+			
+			// Hands the request straight to the link, dropping the link if it cannot take a request which matters
+			if (link != null) {
+				if (link.send(request)) {
+					sent += request.length;
+					return true;
+				}
+				if (DROP_COSMETIC && REQUESTS[request[0]].cosmetic) {
+					dropped++;
+					return false;
+				}
+				System.out.println("Dropping " + name + ", too far behind: " + stats());
+				close();
+				if (onDrop != null)
+					scheduler.schedule(onDrop, 0); // Runs without holding the queue's lock
+				return false;
+			}
+			
+			// Drops connections which fell too far behind
+			final long now = System.currentTimeMillis();
+			if (queued + request.length > MAX_QUEUED
+				|| congested && EVICT_AFTER > 0 && now-congestedSince > EVICT_AFTER) {
+				System.out.println("Dropping " + name + ", too far behind: " + stats());
+				close();
+				if (onDrop != null)
+					scheduler.schedule(onDrop, 0); // Runs without holding the queue's lock
+				return false;
+			}
+			
+			// Drops cosmetic requests while congested
+			if (congested && DROP_COSMETIC && REQUESTS[request[0]].cosmetic) {
+				dropped++;
+				return false;
+			}
+			
+			// Queues the request
+			queue.add(request);
+			queueTimes.add(now);
+			queued += request.length;
+			maxQueued = Math.max(maxQueued, queued);
+			if (!congested && queued > HIGH_WATERMARK) {
+				congested = true;
+				congestedSince = now;
+				if (EVICT_AFTER > 0)
+					scheduler.schedule(() -> evict(now), EVICT_AFTER + 1);
+			}
+			queue.notify();
+		}
+		if (key != null)
+			flush();
+		return true;
+	}
+	
+	/**
+	 * Drops the connection if it is still congested since the given time, so that a player
+	 * who stopped reading is dropped even when no more requests are queued for it.
+	 * @param since The time (in milliseconds) at which the connection became congested.
+	 */
+	private void evict(long since) {
+		synchronized (queue) {
+			if (closed || !congested || congestedSince != since)
+				return;
+			System.out.println("Dropping " + name + ", too far behind: " + stats());
+		}
+		close();
+		if (onDrop != null)
+			onDrop.run();
+	}
+	
+	/**
+	 * Sets the task run once the connection was dropped for falling too far behind,
+	 * on the connection's scheduler (such as its event loop).
+	 * @param task The task to run.
+	 */
+	public void onDrop(Runnable task) {
+		onDrop = task;
+	}
+	
+	/**
+	 * @return The time (in milliseconds) the oldest waiting request has been queued for.
+	 */
+	public long getLag() {
+		synchronized (queue) {
+			return queueTimes.isEmpty() ? 0 : System.currentTimeMillis()-queueTimes.peek();
+		}
+	}
+	
+	/**
+	 * @return The largest time (in milliseconds) a request waited before being sent.
+	 */
+	public long getMaxLag() {
+		return maxLag;
+	}
+	
+	/**
+	 * @return The number of bytes waiting to be sent.
+	 */
+	public int getQueued() {
+		return queued;
+	}
+	
+	/**
+	 * @return The largest number of bytes that were waiting to be sent at once.
+	 */
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+	
+	/**
+	 * @return The number of cosmetic requests dropped while congested.
+	 */
+	public int getDropped() {
+		return dropped;
+	}
+	
+	/**
+	 * @return The number of bytes sent.
+	 */
+	public long getSent() {
+		return sent;
+	}
+	
+	/**
+	 * @return Whether the connection is past its high watermark and has not drained yet.
+	 */
+	public boolean isCongested() {
+		return congested;
+	}
+	
+	/**
+	 * @return A summary of the connection's lag metrics.
+	 */
+	public String stats() {
+		synchronized (queue) {
+			return "queued " + queued + "B (max " + maxQueued + "B), lag " + getLag()
+				+ "ms (max " + maxLag + "ms), sent " + sent + "B, dropped " + dropped;
+		}
+	}
+	
+	/**
+	 * @return Whether the connection is closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Closes the connection once every request already queued is sent.
+	 */
+	public void finish() {
+		if (link != null) {
+			close();
+			return;
+		}
+		synchronized (queue) {
+			finishing = true;
+			queue.notify();
+		}
+		if (key != null)
+			flush();
+	}
+	
+	/**
+	 * Closes the connection, dropping every request not sent yet.
+	 */
+	public void close() { try {
+		synchronized (queue) {
+			closed = true;
+			queue.clear();
+			queueTimes.clear();
+			queued = 0;
+			queue.notify();
+		}
+		if (key != null)
+			key.cancel();
+		if (link != null)
+			link.close();
+		else
+			socket.close();
+	} catch (Exception e) {e.printStackTrace();}}
+}
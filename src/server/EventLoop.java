@@ -0,0 +1,172 @@
+package server;
+
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Handles an event loop thread owning a fixed share of the server's sessions.
+ * Every read, game rule and write of a session happens on its event loop's thread,
+ * so a table's state never moves between threads once the session is started.
+ * Other threads only hand the event loop new work through {@link #execute(Runnable)}.
+ * @author Raul Hernandez, 02/01/2024
+ * 
+ */
+public class EventLoop extends Thread implements Scheduler {
+	
+	/**
+	 * Handles the events of a channel registered with an event loop.
+	 */
+	public static interface Handler {
+		
+		/**
+		 * Called once the channel has bytes to read.
+		 */
+		public void readable() throws Exception;
+		
+		/**
+		 * Called once the channel accepts more bytes to write.
+		 */
+		public void writable() throws Exception;
+	}
+	
+	/**
+	 * Stores a task scheduled to run on the event loop.
+	 */
+	private static class Timer implements Comparable<Timer> {
+		
+		/** The time (in nanoseconds) at which the task runs. */
+		private final long time;
+		
+		/** The task to run. */
+		private final Runnable task;
+		
+		/**
+		 * Creates a scheduled task.
+		 * @param time The time (in nanoseconds) at which the task runs.
+		 * @param task The task to run.
+		 */
+		private Timer(long time, Runnable task) {
+			this.time = time;
+			this.task = task;
+		}
+		
+		@Override
+		public int compareTo(Timer timer) {
+			return Long.compare(time - timer.time, 0);
+		}
+	}
+	
+	/** The selector waiting on the event loop's channels. */
+	private final Selector selector;
+	
+	/** The tasks handed to the event loop by other threads. */
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	
+	/** The tasks scheduled to run on the event loop, soonest first. */
+	private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+	
+	/** The number of events handled. */
+	private volatile long events = 0;
+	
+	/**
+	 * Creates an event loop. It starts handling events once started.
+	 * @param name The name of the event loop's thread.
+	 */
+	public EventLoop(String name) throws Exception {
+		super(name);
+		setDaemon(true);
+		selector = Selector.open();
+	}
+	
+	@Override
+	public void run() { try { while (true) {
+		
+		// Runs the tasks handed over by other threads
+		for (Runnable task; (task = tasks.poll()) != null;)
+			run(task);
+		
+		// Waits for the next event, or until the next scheduled task
+		final Timer next = timers.peek();
+		if (next == null) {
+			selector.select();
+		} else {
+			final long wait = next.time - System.nanoTime();
+			if (wait <= 0)
+				selector.selectNow();
+			else
+				selector.select(Math.max(1, wait / 1_000_000));
+		}
+		
+		// Handles the channels' events
+		final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+		while (keys.hasNext()) {
+			final SelectionKey key = keys.next();
+			keys.remove();
+			final Handler handler = (Handler) key.attachment();
+			try {
+				if (key.isValid() && key.isReadable())
+					handler.readable();
+				if (key.isValid() && key.isWritable())
+					handler.writable();
+			} catch (Exception e) {e.printStackTrace();}
+			events++;
+		}
+		
+		// Runs the scheduled tasks which are due
+		while (!timers.isEmpty() && timers.peek().time - System.nanoTime() <= 0)
+			run(timers.poll().task);
+	
+	}} catch (Exception e) {e.printStackTrace();}}
+	
+	/**
+	 * Runs the given task, reporting any exception without stopping the event loop.
+	 * @param task The task to run.
+	 */
+	private void run(Runnable task) { try {
+		task.run();
+	} catch (Exception e) {e.printStackTrace();}}
+	
+	/**
+	 * Hands the given task to the event loop, to be run on its thread.
+	 * @param task The task to run.
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+	
+	/**
+	 * Runs the given task on the event loop once the given delay has passed.
+	 * @param task The task to run.
+	 * @param delay The delay (in milliseconds) before running the task.
+	 */
+	@Override
+	public void schedule(Runnable task, long delay) {
+		final Timer timer = new Timer(System.nanoTime() + delay*1_000_000, task);
+		if (Thread.currentThread() == this)
+			timers.add(timer);
+		else
+			execute(() -> timers.add(timer));
+	}
+	
+	/**
+	 * Registers the given channel with the event loop. Must be called from the event loop's thread.
+	 * @param channel The channel to register, in non-blocking mode.
+	 * @param handler Handles the channel's events.
+	 * @return The selection key of the channel.
+	 */
+	public SelectionKey register(SocketChannel channel, Handler handler) throws Exception {
+		return channel.register(selector, SelectionKey.OP_READ, handler);
+	}
+	
+	/**
+	 * @return The number of events handled.
+	 */
+	public long getEvents() {
+		return events;
+	}
+}
@@ -0,0 +1,95 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+/**
+ * Handles a consistent hash ring mapping session IDs to backend nodes.
+ * Each node is placed at several points on the ring, so that adding or
+ * removing a node only moves the sessions hashed next to its points.
+ * @author Raul Hernandez, 01/27/2024
+ * 
+ */
+public class HashRing {
+	
+	/** The number of points at which each node is placed on the ring. */
+	private static final int REPLICAS = 64;
+	
+	/** The nodes on the ring, keyed by their points. */
+	private final TreeMap<Integer, BackendNode> ring = new TreeMap<Integer, BackendNode>();
+	
+	/** The number of nodes on the ring. */
+	private int size = 0;
+	
+	/**
+	 * Adds the given node to the ring.
+	 * @param node The node to add.
+	 */
+	public synchronized void add(BackendNode node) {
+		for (int i = 0; i < REPLICAS; i++)
+			ring.put(point(node, i), node);
+		size++;
+	}
+	
+	/**
+	 * Removes the given node from the ring.
+	 * @param node The node to remove.
+	 */
+	public synchronized void remove(BackendNode node) {
+		for (int i = 0; i < REPLICAS; i++)
+			ring.remove(point(node, i), node);
+		size--;
+	}
+	
+	/**
+	 * Lists the distinct nodes on the ring in the order they are met going
+	 * clockwise from the given session's point. The first node hosts the
+	 * session, and the following ones take over if it cannot.
+	 * 
+	 * @param sessionID The ID of the session.
+	 * @return The nodes in the order they should host the session.
+	 */
+	public synchronized ArrayList<BackendNode> nodes(int sessionID) {
+		final ArrayList<BackendNode> nodes = new ArrayList<BackendNode>(size);
+		final int point = mix(sessionID);
+		
+		// Walks from the session's point to the end of the ring, then wraps around
+		for (BackendNode node : ring.tailMap(point).values())
+			if (nodes.size() < size && !nodes.contains(node))
+				nodes.add(node);
+		for (BackendNode node : ring.headMap(point).values())
+			if (nodes.size() < size && !nodes.contains(node))
+				nodes.add(node);
+		return nodes;
+	}
+	
+	/**
+	 * @return The number of nodes on the ring.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * @param node The node being placed.
+	 * @param replica The index of the node's point.
+	 * @return The given point of the node on the ring.
+	 */
+	private static int point(BackendNode node, int replica) {
+		return mix(31*node.toString().hashCode() + replica);
+	}
+	
+	/**
+	 * Scrambles the bits of the given value, spreading close values across the ring.
+	 * @param value The value to scramble.
+	 * @return The scrambled value.
+	 */
+	private static int mix(int value) {
+		value ^= value >>> 16;
+		value *= 0x85EBCA6B;
+		value ^= value >>> 13;
+		value *= 0xC2B2AE35;
+		value ^= value >>> 16;
+		return value;
+	}
+}
@@ -0,0 +1,272 @@
+package server;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import client.ServerEvent;
+import net.Link;
+import net.LocalLink;
+import net.SocketLink;
+import net.UnixSockets;
+import net.WaitStrategy;
+import requests.ClientRequest;
+import requests.ServerRequest;
+
+/**
+ * Benchmarks the round trip latency and throughput of the transports between sessions and players:
+ * TCP sockets on the loopback interface, Unix domain sockets (see {@link UnixSockets}, on Java 16 or later),
+ * and in-memory links (see {@link LocalLink}) with each wait strategy.
+ * First, a single link echoes requests back, timing the transport alone. Then, every seat of many tables asks
+ * its session for a snapshot of the game over and over, timing each snapshot requested until it arrives.
+ * <br><br>
+ * Arguments: [TABLES (default: 16)] [WAIT STRATEGIES (default: BLOCKING YIELDING)]
+ * @author Raul Hernandez, 02/10/2024
+ * 
+ */
+public class LinkBenchmark {
+	
+	/** The port on which the sessions over TCP are hosted. */
+	private static final int PORT = 29300;
+	
+	/** The path of the Unix domain socket on which the sessions are hosted. */
+	private static final String UNIX_PATH = System.getProperty("java.io.tmpdir") + "/rauno-benchmark.sock";
+	
+	/** The number of seats at each table. */
+	private static final int SEATS = 2;
+	
+	/** The time (in milliseconds) the players run before round trips are timed. */
+	private static final int WARMUP = 2_000;
+	
+	/** The time (in milliseconds) during which round trips are timed. */
+	private static final int MEASURE = 5_000;
+	
+	/** The most round trips timed by each player. */
+	private static final int MAX_SAMPLES = 1 << 20;
+	
+	/** Whether the players keep sending requests. */
+	private static volatile boolean running;
+	
+	/** Whether the players time their round trips. */
+	private static volatile boolean measuring;
+	
+	/**
+	 * Handles a player sending one request at a time, sending the next once the answer arrives.
+	 */
+	private static class Player implements Link.Receiver {
+		
+		/** The link to the session, or to the echoing end. */
+		private final Link link;
+		
+		/** The request sent over and over. */
+		private final byte[] request;
+		
+		/** Whether the player decodes server requests, answering snapshots. {@code false} to answer every request echoed. */
+		private final boolean decoding;
+		
+		/** The round trip times (in nanoseconds) measured. */
+		private final long[] samples = new long[MAX_SAMPLES];
+		
+		/** The number of round trips measured. */
+		private int count = 0;
+		
+		/** The time (in nanoseconds) at which the last request was sent. */
+		private long sentAt;
+		
+		/**
+		 * Creates a player and starts listening to its link.
+		 * @param link The link to the session, or to the echoing end.
+		 * @param request The request sent over and over.
+		 * @param decoding Whether the player decodes server requests, answering snapshots.
+		 */
+		private Player(Link link, byte[] request, boolean decoding) {
+			this.link = link;
+			this.request = request;
+			this.decoding = decoding;
+			link.open(this);
+		}
+		
+		@Override
+		public void received(ByteBuffer bytes) {
+			if (!decoding) {
+				bytes.position(bytes.limit());
+				answered();
+				return;
+			}
+			for (ServerEvent event; (event = ServerEvent.decode(bytes)) != null;)
+				if (event.request == ServerRequest.STATE_SNAPSHOT)
+					answered();
+		}
+		
+		@Override
+		public void closed() {}
+		
+		/**
+		 * Sends the request.
+		 */
+		private void send() {
+			sentAt = System.nanoTime();
+			link.send(request);
+		}
+		
+		/**
+		 * Times the round trip once the answer arrived, then sends the request again.
+		 */
+		private void answered() {
+			if (measuring && count < MAX_SAMPLES)
+				samples[count++] = System.nanoTime() - sentAt;
+			if (running)
+				send();
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty("rauno.quiet", "true");
+		System.setProperty("rauno.noRateLimit", "true");
+		final int tables = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+		WaitStrategy[] strategies = {WaitStrategy.BLOCKING, WaitStrategy.YIELDING};
+		if (args.length > 1) {
+			strategies = new WaitStrategy[args.length - 1];
+			for (int i = 0; i < strategies.length; i++)
+				strategies[i] = WaitStrategy.valueOf(args[i+1].toUpperCase());
+		}
+		final ServerSocket server = new ServerSocket(PORT, 100, InetAddress.getLoopbackAddress());
+		final ServerSocketChannel unix = UnixSockets.supported() ? UnixSockets.listen(UNIX_PATH) : null;
+		
+		// Times the transports alone
+		System.out.println("Echoing requests over one link:");
+		final byte[] ping = {(byte) ClientRequest.REQUEST_SNAPSHOT.ordinal()};
+		final Socket socket = new Socket(InetAddress.getLoopbackAddress(), PORT);
+		report("TCP", run(new Player[] {echo(new Link[] {new SocketLink(socket), new SocketLink(server.accept())}, ping)}));
+		if (unix != null) {
+			final SocketChannel channel = UnixSockets.connect(UNIX_PATH);
+			report("Unix", run(new Player[] {echo(new Link[] {new SocketLink(channel), new SocketLink(unix.accept())}, ping)}));
+		}
+		for (WaitStrategy strategy : strategies)
+			report("Local (" + strategy + ")", run(new Player[] {echo(LocalLink.pair(strategy), ping)}));
+		
+		// Times the sessions' round trips
+		System.out.println("Asking " + tables + " tables of " + SEATS + " seats for snapshots:");
+		final Player[] players = new Player[tables * SEATS];
+		for (int table = 0; table < tables; table++) {
+			final Socket[] seats = new Socket[SEATS];
+			for (int seat = 0; seat < SEATS; seat++) {
+				final Socket player = new Socket(InetAddress.getLoopbackAddress(), PORT);
+				seats[seat] = server.accept();
+				players[table*SEATS + seat] = new Player(new SocketLink(player), ping, true);
+			}
+			RaUnoSession.host(seats).release();
+		}
+		report("TCP", run(players));
+		if (unix != null) {
+			for (int table = 0; table < tables; table++) {
+				final SocketChannel[] seats = new SocketChannel[SEATS];
+				for (int seat = 0; seat < SEATS; seat++) {
+					final SocketChannel player = UnixSockets.connect(UNIX_PATH);
+					seats[seat] = unix.accept();
+					players[table*SEATS + seat] = new Player(new SocketLink(player), ping, true);
+				}
+				RaUnoSession.host(seats).release();
+			}
+			report("Unix", run(players));
+		}
+		for (WaitStrategy strategy : strategies) {
+			for (int table = 0; table < tables; table++) {
+				final Link[] seats = new Link[SEATS];
+				for (int seat = 0; seat < SEATS; seat++) {
+					final Link[] link = LocalLink.pair(strategy);
+					seats[seat] = link[1];
+					players[table*SEATS + seat] = new Player(link[0], ping, true);
+				}
+				RaUnoSession.host(seats).release();
+			}
+			report("Local (" + strategy + ")", run(players));
+		}
+		server.close();
+		if (unix != null) {
+			unix.close();
+			Files.deleteIfExists(Paths.get(UNIX_PATH));
+		}
+	}
+	
+	/**
+	 * Creates a player whose requests are echoed back by the other end of its link.
+	 * @param link Both ends of the link.
+	 * @param request The request sent over and over.
+	 * @return The player.
+	 */
+	private static Player echo(Link[] link, byte[] request) {
+		link[1].open(new Link.Receiver() {
+			public void received(ByteBuffer bytes) {
+				while (bytes.hasRemaining()) {
+					bytes.get();
+					link[1].send(request);
+				}
+			}
+			
+			public void closed() {
+				link[1].close();
+			}
+		});
+		return new Player(link[0], request, false);
+	}
+	
+	/**
+	 * Lets the given players send their requests, timing their round trips, then closes their links.
+	 * @param players The players.
+	 * @return Every round trip time (in nanoseconds) measured, sorted, and the number of seconds measured, last.
+	 */
+	private static long[] run(Player[] players) throws Exception {
+		running = true;
+		measuring = false;
+		for (Player player : players)
+			player.send();
+		Thread.sleep(WARMUP);
+		measuring = true;
+		final long start = System.nanoTime();
+		Thread.sleep(MEASURE);
+		measuring = false;
+		final long time = System.nanoTime() - start;
+		running = false;
+		Thread.sleep(200);
+		
+		// Gathers the round trips
+		int count = 0;
+		for (Player player : players) {
+			count += player.count;
+			player.link.close();
+		}
+		final long[] samples = new long[count + 1];
+		count = 0;
+		for (Player player : players) {
+			System.arraycopy(player.samples, 0, samples, count, player.count);
+			count += player.count;
+			player.count = 0;
+		}
+		Arrays.sort(samples, 0, count);
+		samples[count] = time;
+		Thread.sleep(200);
+		return samples;
+	}
+	
+	/**
+	 * Prints the throughput and latency of the given round trips.
+	 * @param transport The name of the transport.
+	 * @param samples The round trip times (in nanoseconds), sorted, followed by the time (in nanoseconds) measured.
+	 */
+	private static void report(String transport, long[] samples) {
+		final int count = samples.length - 1;
+		if (count == 0) {
+			System.out.printf("    %-20s no round trips%n", transport);
+			return;
+		}
+		System.out.printf("    %-20s %9.0f round trips per second, median %8.1f us, 99th percentile %8.1f us%n",
+				transport, count / (samples[count] / 1e9), samples[count/2] / 1e3, samples[(int) (count * 0.99)] / 1e3);
+	}
+}
@@ -0,0 +1,172 @@
+package server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import cards.CardColor;
+import cards.CardData;
+import cards.HandData;
+import client.ServerEvent;
+import requests.ClientRequest;
+import requests.ServerRequest;
+
+/**
+ * Benchmarks the number of turns per second played by a server running
+ * on an increasing number of event loops (see {@link RaUnoServer#loops(int, int)}).
+ * Every seat of every session is played by a bot connected through a local socket,
+ * which plays the first card it can, or draws a card otherwise.
+ * <br><br>
+ * Arguments: [MAX EVENT LOOPS (default: number of cores)] [SESSIONS (default: 64)]
+ * @author Raul Hernandez, 02/01/2024
+ * 
+ */
+public class LoopBenchmark {
+	
+	/** The port on which the first benchmarked server is hosted. */
+	private static final int PORT = 29200;
+	
+	/** The time (in milliseconds) the bots play before turns are counted. */
+	private static final int WARMUP = 3_000;
+	
+	/** The time (in milliseconds) during which turns are counted. */
+	private static final int MEASURE = 5_000;
+	
+	/** The number of turns each seat plays before leaving, so that the deck never runs out. */
+	private static final int MAX_TURNS = 60 / RaUnoServer.PLAYERS;
+	
+	/** The number of turns played. */
+	private static final LongAdder TURNS = new LongAdder();
+	
+	/** The sockets of the bots currently playing. */
+	private static final ConcurrentHashMap<Socket, Boolean> SOCKETS = new ConcurrentHashMap<Socket, Boolean>();
+	
+	/** Whether the bots keep playing. */
+	private static volatile boolean running;
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty("rauno.quiet", "true");
+		System.setProperty("rauno.noRateLimit", "true");
+		final int maxLoops = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		final int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		
+		double baseline = 0;
+		for (int loops = 1; loops <= maxLoops; loops = loops == maxLoops ? loops+1 : Math.min(2*loops, maxLoops)) {
+			final int port = PORT + loops;
+			RaUnoServer.loops(port, loops);
+			
+			// Starts the bots
+			running = true;
+			final ArrayList<Thread> bots = new ArrayList<Thread>();
+			for (int i = 0; i < sessions*RaUnoServer.PLAYERS; i++) {
+				final Thread bot = new Thread() {
+					public void run() {
+						while (running)
+							play(port);
+					}
+				};
+				bot.start();
+				bots.add(bot);
+			}
+			
+			// Counts the turns played
+			Thread.sleep(WARMUP);
+			TURNS.reset();
+			Thread.sleep(MEASURE);
+			final double turns = TURNS.sum() * 1000.0 / MEASURE;
+			if (loops == 1)
+				baseline = turns;
+			System.out.printf("%2d event loops: %10.0f turns/s (%.2fx)%n", loops, turns, turns/baseline);
+			System.out.println("                " + RaUnoSession.getPool().stats());
+			
+			// Stops the bots
+			running = false;
+			for (Socket socket : SOCKETS.keySet())
+				socket.close();
+			for (Thread bot : bots)
+				bot.join();
+		}
+		System.exit(0);
+	}
+	
+	/**
+	 * Plays a seat of a session until the game ends or the seat played {@link #MAX_TURNS} turns.
+	 * @param port The port on which the server is hosted.
+	 */
+	private static void play(int port) {
+		try (Socket socket = new Socket("localhost", port)) {
+			SOCKETS.put(socket, true);
+			socket.setTcpNoDelay(true);
+			final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			final OutputStream output = socket.getOutputStream();
+			
+			final HandData hand = new HandData();
+			CardData center = null;
+			int clientID = -1;
+			int turns = 0;
+			byte sequence = 0;
+			boolean first = true;
+			while (running) {
+				final ServerEvent event = ServerEvent.read(input);
+				boolean act = false;
+				
+				// Follows the game
+				if (event.request == ServerRequest.START_GAME) {
+					clientID = event.get(0);
+					center = card(event.get(2), event.get(3));
+				} else if (event.request == ServerRequest.DRAW_FROM_DECK) {
+					for (int i = 0; i < event.get(0); i++)
+						hand.add(card(event.get(1 + 2*i), event.get(2 + 2*i)));
+					act = first && clientID == 0; // The first player starts once dealt
+					first = false;
+				} else if (event.request == ServerRequest.REMOVE_FROM_HAND) {
+					center = card(event.get(2), event.get(3));
+					if (event.get(0) == clientID)
+						hand.remove(center);
+				} else if (event.request == ServerRequest.END_TURN) {
+					if (clientID == 0)
+						TURNS.increment();
+					act = event.get(0) == clientID;
+				} else if (event.request == ServerRequest.INVALID_CARD_USE) {
+					output.write(ClientRequest.DRAW_CARD.ordinal());
+				} else if (event.request == ServerRequest.PLAYER_WON) {
+					break;
+				}
+				if (!act)
+					continue;
+				
+				// Plays the first card it can, or draws a card
+				if (++turns > MAX_TURNS)
+					break;
+				final long playable = hand.playable(center);
+				if (playable == 0) {
+					output.write(ClientRequest.DRAW_CARD.ordinal());
+				} else {
+					final CardData play = CardData.lowest(playable);
+					output.write(new byte[] {
+						(byte) ClientRequest.USE_CARD.ordinal(),
+						sequence++,
+						(byte) (play.getColor() == CardColor.BLACK ? CardColor.RED : play.getColor()).ordinal(),
+						(byte) play.getValue().ordinal()
+					});
+				}
+			}
+		} catch (Exception e) {
+		} finally {
+			SOCKETS.keySet().removeIf(Socket::isClosed);
+		}
+	}
+	
+	/**
+	 * @param color The ordinal of the card's color.
+	 * @param value The ordinal of the card's value.
+	 * @return The card with the given color and value.
+	 */
+	private static CardData card(int color, int value) {
+		return CardData.of(color, value);
+	}
+}
@@ -0,0 +1,131 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Handles a pool of objects reused between games, so that a server
+ * churning through games does not keep allocating the same objects.
+ * Objects must be reset by their owner before being used again.
+ * @author Raul Hernandez, 02/04/2024
+ * 
+ */
+public class Pool<T> {
+	
+	/** The threads reused between games to read from, handle and write to players. */
+	public static final ExecutorService WORKERS = Executors.newCachedThreadPool(task -> {
+		final Thread thread = new Thread(task, "RaUno Worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/** The name of the pool, used in logs. */
+	private final String name;
+	
+	/** Creates new objects when the pool is empty. */
+	private final Supplier<T> factory;
+	
+	/** The largest number of idle objects kept. */
+	private final int capacity;
+	
+	/** The idle objects. */
+	private final ArrayDeque<T> idle = new ArrayDeque<T>();
+	
+	/** The number of objects taken from the idle objects. */
+	private long hits = 0;
+	
+	/** The number of objects created because the pool was empty. */
+	private long misses = 0;
+	
+	/** The number of objects given back while the pool was full. */
+	private long discarded = 0;
+	
+	/**
+	 * Creates an empty pool.
+	 * @param name The name of the pool, used in logs.
+	 * @param factory Creates new objects when the pool is empty.
+	 * @param capacity The largest number of idle objects kept.
+	 */
+	public Pool(String name, Supplier<T> factory, int capacity) {
+		this.name = name;
+		this.factory = factory;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * Takes an idle object, or creates one if there is none.
+	 * @return The object, which must be reset before being used.
+	 */
+	public T take() {
+		synchronized (idle) {
+			final T object = idle.poll();
+			if (object != null) {
+				hits++;
+				return object;
+			}
+			misses++;
+		}
+		return factory.get();
+	}
+	
+	/**
+	 * Gives back an object which is no longer used, to be taken again.
+	 * @param object The object, which must not be used again by the caller.
+	 */
+	public void give(T object) {
+		synchronized (idle) {
+			if (idle.size() < capacity)
+				idle.push(object);
+			else
+				discarded++;
+		}
+	}
+	
+	/**
+	 * @return The ratio of objects taken from the idle objects rather than created.
+	 */
+	public double getHitRate() {
+		synchronized (idle) {
+			return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+		}
+	}
+	
+	/**
+	 * @return The number of objects taken from the idle objects.
+	 */
+	public long getHits() {
+		synchronized (idle) {
+			return hits;
+		}
+	}
+	
+	/**
+	 * @return The number of objects created because the pool was empty.
+	 */
+	public long getMisses() {
+		synchronized (idle) {
+			return misses;
+		}
+	}
+	
+	/**
+	 * @return The number of idle objects.
+	 */
+	public int getIdle() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+	
+	/**
+	 * @return A summary of the pool's metrics, for logging.
+	 */
+	public String stats() {
+		synchronized (idle) {
+			return String.format("%s: %d idle, %d hits, %d misses, %d discarded (%.1f%% hit rate)",
+					name, idle.size(), hits, misses, discarded, 100*getHitRate());
+		}
+	}
+}
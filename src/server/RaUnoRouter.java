@@ -0,0 +1,291 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Handles the front router of a RaUno cluster.
+ * Players connect to the router as they would to a single server. Once enough
+ * players are waiting, the router gives them a session ID, hashes it onto a
+ * backend node, and pipes each player's bytes to and from that node.
+ * <br><br>
+ * Backend nodes (see {@link RaUnoServer}) join and leave through the router's
+ * control port, and are health checked every second. Nodes failing their checks
+ * are taken out of the hash ring until they pass again, so new sessions are
+ * only hashed onto healthy nodes.
+ * <br><br>
+ * Sessions can be moved to another node while being played. The players' bytes
+ * are held back while the session is frozen on its node and resumed on the other,
+ * and draining a node moves all of its sessions in parallel.
+ * <br><br>
+ * The control requests are lines of text:<br>
+ * JOIN [HOST] [PORT] [CONTROL PORT]<br>
+ * LEAVE [HOST] [PORT]<br>
+ * DRAIN [HOST] [PORT]: Removes the node, moving its sessions to the remaining nodes.<br>
+ * MIGRATE [SESSION ID]: Moves the session to the next node in the hash ring.
+ * @author Raul Hernandez, 01/27/2024
+ * 
+ */
+public class RaUnoRouter {
+	
+	/** The port on which backend nodes join and leave the cluster. */
+	public static final int CONTROL_PORT = 29177;
+	
+	/** The time (in milliseconds) between health checks. */
+	private static final int HEALTH_INTERVAL = 1_000;
+	
+	/** The number of health checks a node can fail in a row before leaving the hash ring. */
+	private static final int MAX_FAILURES = 3;
+	
+	/** The hash ring of healthy nodes. */
+	private static final HashRing RING = new HashRing();
+	
+	/** The nodes in the cluster, keyed by name. */
+	private static final HashMap<String, BackendNode> NODES = new HashMap<String, BackendNode>();
+	
+	/** The routes of the sessions being played, keyed by session ID. */
+	private static final HashMap<Integer, Route> ROUTES = new HashMap<Integer, Route>();
+	
+	/** The ID of the next session. */
+	private static int nextSessionID = 0;
+	
+	/** The server socket for players. */
+	private static ServerSocket SERVER;
+	
+	/** The server socket for control requests. */
+	private static ServerSocket CONTROL_SERVER;
+	
+	/**
+	 * Runs the router.
+	 * @param args The backend nodes to start with, each as HOST:PORT:CONTROL PORT.
+	 */
+	public static void main(String[] args) throws Exception {
+		
+		// Initializes the router
+		System.out.println("Setting up the router...");
+		SERVER = new ServerSocket(RaUnoServer.PORT, 100);
+		CONTROL_SERVER = new ServerSocket(CONTROL_PORT, 100);
+		for (String arg : args) {
+			final String[] address = arg.split(":");
+			join(address[0], Integer.parseInt(address[1]), Integer.parseInt(address[2]));
+		}
+		
+		// Groups players into sessions
+		new Thread() {
+			public void run() { try { while (true) {
+				System.out.println("Waiting for players to connect...");
+				final Socket[] players = new Socket[RaUnoServer.PLAYERS];
+				for (int i = 0; i < RaUnoServer.PLAYERS; i++)
+					players[i] = SERVER.accept();
+				route(nextSessionID++, players);
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+		
+		// Handles control requests
+		new Thread() {
+			public void run() { try { while (true) {
+				try (Socket socket = CONTROL_SERVER.accept()) {
+					final String[] request = new BufferedReader(
+						new InputStreamReader(socket.getInputStream())
+					).readLine().split(" ");
+					if (request[0].equals("JOIN"))
+						RaUnoRouter.join(request[1], Integer.parseInt(request[2]), Integer.parseInt(request[3]));
+					else if (request[0].equals("LEAVE"))
+						RaUnoRouter.leave(request[1], Integer.parseInt(request[2]));
+					else if (request[0].equals("DRAIN"))
+						drain(request[1], Integer.parseInt(request[2]));
+					else if (request[0].equals("MIGRATE"))
+						migrate(Integer.parseInt(request[1]));
+				} catch (Exception e) {e.printStackTrace();}
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+		
+		// Health checks the nodes
+		new Thread() {
+			public void run() { try { while (true) {
+				Thread.sleep(HEALTH_INTERVAL);
+				for (BackendNode node : nodes())
+					check(node);
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+	}
+	
+	/**
+	 * Hosts a session with the given players on the first node in the hash ring
+	 * able to take it, piping the players' bytes to and from that node.
+	 * 
+	 * @param sessionID The ID of the session.
+	 * @param players The sockets for the players.
+	 */
+	private static void route(int sessionID, Socket[] players) {
+		final Route route = new Route(sessionID, players);
+		for (BackendNode node : RING.nodes(sessionID)) {
+			try {
+				route.connect(node);
+				route.start();
+				synchronized (ROUTES) {
+					ROUTES.values().removeIf(Route::isClosed);
+					ROUTES.put(sessionID, route);
+				}
+				System.out.println("Routed session #" + sessionID + " to " + node + ".");
+				return;
+			} catch (Exception e) {
+				System.out.println("Could not route session #" + sessionID + " to " + node + ": " + e);
+			}
+		}
+		
+		System.out.println("No node could host session #" + sessionID + ".");
+		route.close();
+	}
+	
+	/**
+	 * Moves the given session to the next node in the hash ring.
+	 * @param sessionID The ID of the session.
+	 */
+	private static void migrate(int sessionID) {
+		final Route route;
+		synchronized (ROUTES) {
+			route = ROUTES.get(sessionID);
+		}
+		if (route == null)
+			return;
+		for (BackendNode node : RING.nodes(sessionID)) {
+			if (node != route.getNode()) {
+				migrate(route, node);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Moves the given session to the given node.
+	 * @param route The route of the session.
+	 * @param target The node to which the session will be moved.
+	 */
+	private static void migrate(Route route, BackendNode target) { try {
+		final BackendNode source = route.getNode();
+		final long pause = route.move(target);
+		System.out.println("Moved session #" + route.sessionID + " from " + source + " to "
+							+ target + " (paused for " + pause/1_000_000.0 + "ms).");
+	} catch (Exception e) {
+		System.out.println("Could not move session #" + route.sessionID + " to " + target + ": " + e);
+	}}
+	
+	/**
+	 * Removes a node from the cluster, moving each of its sessions
+	 * in parallel to the node now first in the hash ring for it.
+	 * 
+	 * @param host The host name of the node.
+	 * @param port The port on which the node accepts players.
+	 */
+	private static void drain(String host, int port) {
+		leave(host, port);
+		final ArrayList<Route> routes = new ArrayList<Route>();
+		synchronized (ROUTES) {
+			for (Route route : ROUTES.values())
+				if (!route.isClosed() && route.getNode().toString().equals(host + ":" + port))
+					routes.add(route);
+		}
+		
+		System.out.println("Draining " + routes.size() + " sessions from " + host + ":" + port + "...");
+		for (Route route : routes) {
+			final ArrayList<BackendNode> nodes = RING.nodes(route.sessionID);
+			if (nodes.isEmpty())
+				break;
+			new Thread() {
+				public void run() {
+					migrate(route, nodes.get(0));
+				}
+			}.start();
+		}
+	}
+	
+	/**
+	 * Adds a node to the cluster. It joins the hash ring once it passes a health check.
+	 * @param host The host name of the node.
+	 * @param port The port on which the node accepts players.
+	 * @param controlPort The port on which the node answers control requests.
+	 */
+	private static void join(String host, int port, int controlPort) {
+		final BackendNode node = new BackendNode(host, port, controlPort);
+		synchronized (NODES) {
+			if (NODES.containsKey(node.toString()))
+				return;
+			NODES.put(node.toString(), node);
+		}
+		System.out.println(node + " joined the cluster.");
+		check(node);
+	}
+	
+	/**
+	 * Removes a node from the cluster. Sessions it already hosts are kept.
+	 * @param host The host name of the node.
+	 * @param port The port on which the node accepts players.
+	 */
+	private static void leave(String host, int port) {
+		final BackendNode node;
+		synchronized (NODES) {
+			node = NODES.remove(host + ":" + port);
+		}
+		if (node == null)
+			return;
+		synchronized (node) {
+			if (node.isHealthy()) {
+				RING.remove(node);
+				node.setHealthy(false);
+			}
+		}
+		System.out.println(node + " left the cluster.");
+	}
+	
+	/**
+	 * Health checks the given node, moving it in or out of the hash ring.
+	 * @param node The node to check.
+	 */
+	private static void check(BackendNode node) {
+		synchronized (node) {
+			try {
+				node.pass(node.ping());
+				
+				// Adds nodes passing their checks to the ring
+				if (!node.isHealthy() && isMember(node)) {
+					RING.add(node);
+					node.setHealthy(true);
+					System.out.println(node + " is healthy.");
+				}
+			
+			} catch (Exception e) {
+				
+				// Removes nodes failing too many checks from the ring
+				if (node.fail() >= MAX_FAILURES && node.isHealthy()) {
+					RING.remove(node);
+					node.setHealthy(false);
+					System.out.println(node + " is unhealthy: " + e);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @param node The node to look for.
+	 * @return Whether the node is still in the cluster.
+	 */
+	private static boolean isMember(BackendNode node) {
+		synchronized (NODES) {
+			return NODES.get(node.toString()) == node;
+		}
+	}
+	
+	/**
+	 * @return The nodes in the cluster.
+	 */
+	private static ArrayList<BackendNode> nodes() {
+		synchronized (NODES) {
+			return new ArrayList<BackendNode>(NODES.values());
+		}
+	}
+}
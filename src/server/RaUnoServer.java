@@ -1,28 +1,99 @@
 package server;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+
+import net.UnixSockets;
 
 /**
  * Handles a server for the RaUno game.
+ * <br><br>
+ * Run with {@code --unix PATH} to also host sessions for players connecting through the
+ * Unix domain socket at PATH (such as a gateway on the same machine), on Java 16 or later.
+ * These sessions queue their requests for each player like sessions over TCP, and can be
+ * watched by spectators in the same way, without going through the TCP stack.
+ * <br><br>
+ * Spectators (such as clients run with {@code --spectate}) connect on {@link #SPECTATOR_PORT} to watch the session being played by players
+ * who connected over TCP or the Unix domain socket, whichever started last. Sessions hosted
+ * on event loops or as a backend node cannot be watched.
+ * <br><br>
+ * Run with {@code --loops N} to host many sessions at once on N event loop threads
+ * (usually one per core) instead. Each session is owned by one event loop from start
+ * to end, which reads, handles and answers all of its players' requests.
+ * <br><br>
+ * Run with {@code --backend PORT CONTROL_PORT [ROUTER_HOST]} to host sessions
+ * as a node of a {@link RaUnoRouter} cluster instead. Each connection from the router
+ * starts with a header of [SESSION ID (4 BYTES), SEAT, NUMBER OF SEATS], and a session
+ * starts once all of its seats are connected. The node joins the router's cluster on
+ * start, advertising the local address from which it reached the router (or the host given
+ * with -Drauno.advertiseHost, such as behind NAT), and answers the router's requests
+ * on its control port, each written as a UTF string:<br>
+ * PING: Replies "PONG [NUMBER OF SESSIONS]".<br>
+ * STATS [SESSION ID]: Replies with the lag metrics of each player's connection in the session,
+ * one line per player, or an empty string if the session is not hosted here.<br>
+ * FREEZE [SESSION ID]: Freezes the session, replying with its state's length (4 BYTES)
+ * and state, or a length of -1 if the session is not hosted here.<br>
+ * RESUME [SESSION ID], followed by the state's length (4 BYTES) and state: Resumes the
+ * session once all of its seats are connected, replying "OK".
  * @author Raul Hernandez, 12/25/2023
  */
 public class RaUnoServer {
 	
 	/** The port on which the server is hosted. */
-	private static final int PORT = 29175;
+	static final int PORT = 29175;
+	
+	/** The port on which spectators connect to watch the current game. */
+	private static final int SPECTATOR_PORT = 29176;
 	
 	/** The number of players to include in a game. */
-	private static final int PLAYERS = 1;
+	static final int PLAYERS = 1;
 	
 	/** The server socket. */
 	private static ServerSocket SERVER;
 	
+	/** The server socket for spectators. */
+	private static ServerSocket SPECTATOR_SERVER;
+	
+	/** The game session currently being played. {@code null} if none. Only cleared with the class's lock held, before the session is released. */
+	private static volatile RaUnoSession SESSION;
+	
+	/** The sessions hosted as a backend node, keyed by session ID. Each session is released once removed. */
+	private static final HashMap<Integer, RaUnoSession> SESSIONS = new HashMap<Integer, RaUnoSession>();
+	
+	/** The seats of the sessions waiting for players as a backend node, keyed by session ID. */
+	private static final HashMap<Integer, Socket[]> PENDING = new HashMap<Integer, Socket[]>();
+	
+	/** The frozen states of the sessions waiting to be resumed as a backend node, keyed by session ID. */
+	private static final HashMap<Integer, byte[]> RESUMING = new HashMap<Integer, byte[]>();
+	
 	public static void main(String[] args) throws Exception {
+		if (args.length >= 3 && args[0].equals("--backend")) {
+			backend(Integer.parseInt(args[1]), Integer.parseInt(args[2]), args.length > 3 ? args[3] : null);
+			return;
+		}
+		if (args.length >= 2 && args[0].equals("--loops")) {
+			System.out.println("Setting up the event loops...");
+			loops(PORT, Integer.parseInt(args[1]));
+			return;
+		}
 
+		// Also hosts players connecting through a Unix domain socket
+		if (args.length >= 2 && args[0].equals("--unix")) {
+			System.out.println("Listening on " + args[1] + "...");
+			unix(args[1]);
+		}
+		
 		// Initializes the server
 		System.out.println("Setting up the server...");
 		SERVER = new ServerSocket(PORT, 100);
+		SPECTATOR_SERVER = new ServerSocket(SPECTATOR_PORT, 100);
 		
 		new Thread() {
 			public void run() { try { while (true) {
@@ -30,9 +101,260 @@ public class RaUnoServer {
 				final Socket[] players = new Socket[PLAYERS];
 				for (int i = 0; i < PLAYERS; i++)
 					players[i] = SERVER.accept();
-				final RaUnoSession session = new RaUnoSession(players);
-				while (!session.isClosed()) Thread.sleep(5_000);
+				play(RaUnoSession.host(players));
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+		
+		// Lets spectators watch the current game
+		new Thread() {
+			public void run() { try { while (true) {
+				watch(SPECTATOR_SERVER.accept());
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+	}
+	
+	/**
+	 * Hosts sessions for the players connecting through the Unix domain socket at the given path.
+	 * @param path The path of the socket file.
+	 * @return The server channel.
+	 */
+	static ServerSocketChannel unix(String path) throws Exception {
+		final ServerSocketChannel server = UnixSockets.listen(path);
+		new Thread() {
+			public void run() { try { while (true) {
+				final SocketChannel[] players = new SocketChannel[PLAYERS];
+				for (int i = 0; i < PLAYERS; i++)
+					players[i] = server.accept();
+				play(RaUnoSession.host(players));
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+		return server;
+	}
+	
+	/**
+	 * Lets spectators watch the given session until it ends, then releases it.
+	 * @param session The session being played.
+	 */
+	private static void play(RaUnoSession session) throws Exception {
+		SESSION = session;
+		while (!session.isClosed()) Thread.sleep(5_000);
+		synchronized (RaUnoServer.class) { // Waits for spectators joining the session
+			if (SESSION == session)
+				SESSION = null;
+		}
+		session.release();
+	}
+	
+	/**
+	 * Lets the given spectator watch the session currently being played, or closes its socket if there is none.
+	 * @param spectator The socket for the spectator.
+	 */
+	private static synchronized void watch(Socket spectator) throws Exception {
+		final RaUnoSession session = SESSION;
+		if (session == null || session.isClosed())
+			spectator.close();
+		else
+			session.addSpectator(spectator);
+	}
+	
+	/**
+	 * Hosts sessions on the given number of event loops, handing each new
+	 * session to the next event loop in turn.
+	 * 
+	 * @param port The port on which players connect.
+	 * @param count The number of event loops.
+	 * @return The event loops.
+	 */
+	static EventLoop[] loops(int port, int count) throws Exception {
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port), 100);
+		
+		// Starts the event loops
+		final EventLoop[] loops = new EventLoop[count];
+		for (int i = 0; i < count; i++) {
+			loops[i] = new EventLoop("RaUno Event Loop #" + i);
+			loops[i].start();
+		}
+		
+		// Groups players into sessions
+		new Thread() {
+			public void run() { try { for (int sessions = 0;; sessions++) {
+				final SocketChannel[] players = new SocketChannel[PLAYERS];
+				for (int i = 0; i < PLAYERS; i++) {
+					players[i] = server.accept();
+					players[i].configureBlocking(false);
+					players[i].socket().setTcpNoDelay(true);
+				}
+				
+				// Hands the session to its event loop for good
+				final EventLoop loop = loops[sessions % count];
+				loop.execute(() -> { try {
+					RaUnoSession.host(loop, players).release(); // Never tracked, so recycled as soon as its game ends
+				} catch (Exception e) {e.printStackTrace();}});
 			}} catch (Exception e) {e.printStackTrace();}}
 		}.start();
+		
+		return loops;
 	}
+	
+	/**
+	 * Hosts sessions as a backend node of a {@link RaUnoRouter} cluster.
+	 * @param port The port on which the router connects players.
+	 * @param controlPort The port on which control requests are answered.
+	 * @param router The host name of the router to join. {@code null} to wait to be added.
+	 */
+	private static void backend(int port, int controlPort, String router) throws Exception {
+		
+		// Initializes the node
+		System.out.println("Setting up the backend node...");
+		final ServerSocket server = new ServerSocket(port, 100);
+		final ServerSocket control = new ServerSocket(controlPort, 100);
+		
+		// Seats the players connected by the router
+		new Thread() {
+			public void run() { try { while (true) {
+				final Socket player = server.accept();
+				player.setTcpNoDelay(true);
+				new Thread() {
+					public void run() { try {
+						final DataInputStream header = new DataInputStream(player.getInputStream());
+						final int sessionID = header.readInt();
+						final int seat = header.readByte();
+						final int seats = header.readByte();
+						seat(sessionID, seat, seats, player);
+					} catch (Exception e) {e.printStackTrace();}}
+				}.start();
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+		
+		// Answers control requests, several at once so that sessions can be frozen in parallel
+		new Thread() {
+			public void run() { try { while (true) {
+				final Socket socket = control.accept();
+				socket.setTcpNoDelay(true);
+				new Thread() {
+					public void run() { try {
+						control(socket);
+					} catch (Exception e) {e.printStackTrace();} close(socket); }
+				}.start();
+			}} catch (Exception e) {e.printStackTrace();}}
+		}.start();
+		
+		// Joins the router's cluster, by the address the router reaches this node at
+		if (router != null) {
+			try (Socket socket = new Socket(router, RaUnoRouter.CONTROL_PORT)) {
+				final String host = System.getProperty("rauno.advertiseHost", socket.getLocalAddress().getHostAddress());
+				new PrintWriter(socket.getOutputStream(), true).println("JOIN " + host + " " + port + " " + controlPort);
+			}
+		}
+	}
+	
+	/**
+	 * Seats the given player in the given session, starting the session once all of its seats are taken.
+	 * @param sessionID The ID of the session.
+	 * @param seat The seat of the player in the session.
+	 * @param seats The number of seats in the session.
+	 * @param player The socket for the player.
+	 */
+	private static void seat(int sessionID, int seat, int seats, Socket player) throws Exception {
+		final Socket[] players;
+		synchronized (PENDING) {
+			Socket[] pending = PENDING.get(sessionID);
+			if (pending == null) {
+				pending = new Socket[seats];
+				PENDING.put(sessionID, pending);
+			}
+			pending[seat] = player;
+			
+			// Waits for the remaining seats
+			for (Socket socket : pending)
+				if (socket == null)
+					return;
+			players = PENDING.remove(sessionID);
+		}
+		
+		// Resumes the session if it was moved here, or starts it otherwise
+		final byte[] state;
+		synchronized (RESUMING) {
+			state = RESUMING.remove(sessionID);
+		}
+		System.out.println((state == null ? "Starting" : "Resuming") + " session #" + sessionID + "...");
+		final RaUnoSession session = state == null ? RaUnoSession.host(players) : RaUnoSession.resume(state, players);
+		final RaUnoSession replaced;
+		synchronized (SESSIONS) {
+			replaced = SESSIONS.put(sessionID, session);
+		}
+		if (replaced != null)
+			replaced.release();
+	}
+	
+	/**
+	 * Answers a control request as a backend node.
+	 * @param socket The socket on which the request was sent.
+	 */
+	private static void control(Socket socket) throws Exception {
+		final DataInputStream input = new DataInputStream(socket.getInputStream());
+		final DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+		final String[] request = input.readUTF().split(" ");
+		
+		// Reports the node's load
+		if (request[0].equals("PING")) {
+			output.writeUTF("PONG " + sessions());
+		
+		// Reports the lag of a session's players
+		} else if (request[0].equals("STATS")) {
+			final String stats;
+			synchronized (SESSIONS) { // Keeps the session from being released meanwhile
+				final RaUnoSession session = SESSIONS.get(Integer.parseInt(request[1]));
+				stats = session == null ? "" : session.stats();
+			}
+			output.writeUTF(stats);
+		
+		// Freezes a session to be moved to another node
+		} else if (request[0].equals("FREEZE")) {
+			final RaUnoSession session;
+			synchronized (SESSIONS) {
+				session = SESSIONS.remove(Integer.parseInt(request[1]));
+			}
+			final byte[] state = session == null ? null : session.freeze();
+			if (session != null)
+				session.release();
+			output.writeInt(state == null ? -1 : state.length);
+			if (state != null)
+				output.write(state);
+		
+		// Prepares to resume a session moved from another node
+		} else if (request[0].equals("RESUME")) {
+			final byte[] state = new byte[input.readInt()];
+			input.readFully(state);
+			synchronized (RESUMING) {
+				RESUMING.put(Integer.parseInt(request[1]), state);
+			}
+			output.writeUTF("OK");
+		}
+		output.flush();
+	}
+	
+	/**
+	 * @return The number of sessions being played as a backend node.
+	 */
+	private static int sessions() {
+		synchronized (SESSIONS) {
+			SESSIONS.values().removeIf(session -> {
+				if (!session.isClosed())
+					return false;
+				session.release();
+				return true;
+			});
+			return SESSIONS.size();
+		}
+	}
+	
+	/**
+	 * Closes the given socket.
+	 * @param socket The socket to close.
+	 */
+	private static void close(Socket socket) { try {
+		socket.close();
+	} catch (Exception e) {e.printStackTrace();}}
 }
@@ -1,38 +1,101 @@
 package server;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Closeable;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import cards.CardColor;
+import ai.HintService;
 import cards.CardData;
 import cards.CardValue;
 import cards.Deck;
 import cards.HandData;
+import net.Link;
+import net.LocalLink;
+import net.SocketLink;
+import net.UnixSockets;
+import net.WaitStrategy;
 import requests.ClientRequest;
 import requests.ServerRequest;
+import requests.StateChecksum;
 
 /**
  * Handles RaUno game sessions.
+ * Sessions either have a thread listening to each player, are owned
+ * by an {@link EventLoop} handling all of their players' requests, or
+ * handle their players' requests as their {@link Link}s deliver them.
+ * <br><br>
+ * Sessions are recycled between games. Each session is returned to whoever hosted it
+ * (by {@link #host(Socket...)} or any other host or resume method) still held for them, and is only
+ * recycled once they {@link #release()} it, so it never hosts another game while they keep track of it.
+ * Threads reaching a session on their own (such as link receivers and dropped connections) check that
+ * it still hosts the game they were started for, and hold it while they use it.
  * @author Raul Hernandez, 12/26/2023
  *
  */
 public class RaUnoSession {
 	
 	/** The maximum number of players allowed in a session. */
-	private static final int MAX_SESSION_SIZE = 5;
+	private static final int MAX_SESSION_SIZE = ServerRequest.MAX_PLAYERS;
+	
+	/** The number of seats dealt from each full deck, unless the number of decks is set. */
+	private static final int SEATS_PER_DECK = 5;
+	
+	/**
+	 * The number of full decks shuffled together for every game. 0 to use one per {@link #SEATS_PER_DECK} seats.
+	 * Raised for tables too large to be dealt from this many decks.
+	 */
+	private static final int DECKS = Integer.getInteger("rauno.decks", 0);
+	
+	/** The number of cards in one full deck. */
+	private static final int DECK_SIZE = new Deck().cardsLeft();
+	
+	/** The number of special cards in one full deck, which are never the first center card. */
+	private static final int SPECIAL_CARDS = (int) Arrays.stream(new Deck().getCards()).filter(card -> card.getValue().special).count();
+	
+	/** The client ID sent to spectators in place of their own client ID. */
+	public static final byte SPECTATOR_ID = -1;
+	
+	/** Whether every handled request is logged. */
+	private static final boolean VERBOSE = !Boolean.getBoolean("rauno.quiet");
+	
+	/** The number of bytes read at once from a player by an event loop. */
+	private static final int READ_BUFFER_SIZE = 512;
+	
+	/** The number of requests a session's ring can hold before its players' threads wait. */
+	private static final int RING_SIZE = 64;
+	
+	/** The sessions which ended, kept to host later games. */
+	private static final Pool<RaUnoSession> POOL = new Pool<RaUnoSession>("Sessions", RaUnoSession::new, 256);
 	
 	/** The socket for the players. */
-	private final Socket[] players;
+	private final Closeable[] players;
 
-	/** The input streams for the players. */
+	/** The input streams for the players. {@code null} if owned by an event loop. */
 	private final InputStream[] inputs;
+	
+	/** Decodes and validates the requests from the players. */
+	private final RequestDecoder[] decoders;
 
-	/** The output stream for players. */
-	private final OutputStream[] outputs;
+	/** The outbound connections for the players. */
+	private final Connection[] connections;
+	
+	/** The requests waiting to be handled by the session's game thread. Unused if owned by an event loop. */
+	private final RequestRing ring = new RequestRing(RING_SIZE, WaitStrategy.fromProperty());
 	
-	/** Whether a request is being handled by the players. */
-	private final boolean[] handlingRequest;
+	/** Decides which player's action ends each turn, as soon as the actions are received. */
+	private final TurnArbiter arbiter = new TurnArbiter();
 	
 	/** The call time (in milliseconds) for Uno for the players. */
 	private final int[] unoCallTime;
@@ -40,12 +103,30 @@ public class RaUnoSession {
 	/** The hands of each player. */
 	private final HandData[] hands;
 	
+	/** The number of cards in each player's hand, reused every turn to compute the state's checksum. */
+	private final int[] handSizes;
+	
 	/** The number of players in the session. */
-	private final int sessionSize;
+	private int sessionSize;
 	
 	/** The deck for this game session. */
 	private final Deck deck = new Deck();
 	
+	/** Schedules the session's delayed tasks. */
+	private Scheduler scheduler;
+	
+	/** The event loop owning this session. {@code null} if it has its own threads. */
+	private EventLoop loop;
+	
+	/** The number of games hosted by this session, so that tasks left over from a previous game are ignored. */
+	private volatile int game = 0;
+	
+	/** The number of threads (or event loops, or hosts) still using this session. It is recycled once there are none. */
+	private final AtomicInteger users = new AtomicInteger();
+	
+	/** Whether the session has threads of its own listening to the players. */
+	private boolean threaded = false;
+	
 	/** The card currently at the center. */
 	private CardData centerCard;
 	
@@ -56,55 +137,451 @@ public class RaUnoSession {
 	private int turnDirection = 1;
 	
 	/** Whether this session is closed. */
-	private boolean closed = false;
+	private volatile boolean closed = false;
+	
+	/** Whether this session was frozen to be resumed elsewhere. */
+	private boolean frozen = false;
 	
 	/** The client ID of the client on whom Uno is currently active. -1 if none. */
 	private byte unoActive = -1;
 	
+	/** The spectators watching this session. */
+	private final ArrayList<Spectator> spectators = new ArrayList<Spectator>();
+	
 	/**
-	 * Creates a RaUno game session with the players.
+	 * Starts a RaUno game session with the players.
 	 * @param players The sockets for the players.
+	 * @return The session.
 	 */
-	public RaUnoSession(Socket...players) throws Exception {
+	public static RaUnoSession host(Socket...players) throws Exception {
+		final RaUnoSession session = POOL.take();
+		session.reset(Scheduler.THREADS, null, players.length);
+		session.open(players);
+		session.start();
+		session.listen();
+		return session;
+	}
+	
+	/**
+	 * Starts a RaUno game session with the players, owned by the given event loop.
+	 * Must be called from the event loop's thread.
+	 * 
+	 * @param loop The event loop handling the session.
+	 * @param players The channels for the players, in non-blocking mode.
+	 * @return The session.
+	 */
+	public static RaUnoSession host(EventLoop loop, SocketChannel...players) throws Exception {
+		final RaUnoSession session = POOL.take();
+		session.reset(loop, loop, players.length);
+		session.register(loop, players);
+		session.start();
+		return session;
+	}
 	
+	/**
+	 * Starts a RaUno game session with the players connected through the given blocking channels
+	 * (such as Unix domain sockets, see {@link UnixSockets}). Like players connected through sockets,
+	 * each player's requests are queued on a connection sent by its own thread, so a stalled channel
+	 * never holds up the rest of the table, and each player's requests are decoded on its own thread.
+	 * 
+	 * @param players The channels for the players, in blocking mode.
+	 * @return The session.
+	 */
+	public static RaUnoSession host(SocketChannel...players) throws Exception {
+		final RaUnoSession session = POOL.take();
+		session.reset(Scheduler.THREADS, null, players.length);
+		final Link[] links = new Link[players.length];
+		for (int clientID = 0; clientID < players.length; clientID++) {
+			final Link link = new SocketLink(players[clientID]);
+			links[clientID] = link;
+			session.players[clientID] = link::close; // Closed through the link, which then stops reading quietly
+			session.connections[clientID] = new Connection(link::close, players[clientID], "Client #" + clientID);
+			session.connections[clientID].onDrop(session.guard(session::closeConnections));
+		}
+		synchronized (session) { // Players may already send requests back over their links
+			session.connect(links);
+			session.start();
+		}
+		return session;
+	}
+	
+	/**
+	 * Starts a RaUno game session with the players connected through the given links
+	 * (such as {@link LocalLink}s to bots in the same process), in real time.
+	 * The session handles each request on the thread its link delivers it on.
+	 * 
+	 * @param players The links to the players.
+	 * @return The session.
+	 */
+	public static RaUnoSession host(Link...players) throws Exception {
+		return host(Scheduler.THREADS, ThreadLocalRandom.current(), players);
+	}
+	
+	/**
+	 * Starts a RaUno game session with the players connected through the given links.
+	 * The session handles each request on the thread its link delivers it on, and
+	 * the deck is shuffled by the given source of randomness, so that a single-threaded
+	 * scheduler and links (such as a simulated network) always play out the same game.
+	 * 
+	 * @param scheduler Schedules the session's delayed tasks, and tells the time for its rate limits.
+	 * @param random The source of randomness of the deck.
+	 * @param players The links to the players.
+	 * @return The session.
+	 */
+	public static RaUnoSession host(Scheduler scheduler, Random random, Link...players) throws Exception {
+		final RaUnoSession session = POOL.take();
+		session.reset(scheduler, null, players.length);
+		session.deck.reset(random, decks(players.length));
+		synchronized (session) { // Players may already send requests back over their links
+			session.connect(players);
+			session.start();
+		}
+		return session;
+	}
+	
+	/**
+	 * Creates an empty session, which can host games of up to {@link #MAX_SESSION_SIZE} players.
+	 */
+	private RaUnoSession() {
+		players = new Closeable[MAX_SESSION_SIZE];
+		inputs = new InputStream[MAX_SESSION_SIZE];
+		decoders = new RequestDecoder[MAX_SESSION_SIZE];
+		connections = new Connection[MAX_SESSION_SIZE];
+		unoCallTime = new int[MAX_SESSION_SIZE];
+		hands = new HandData[MAX_SESSION_SIZE];
+		handSizes = new int[MAX_SESSION_SIZE];
+		for (int clientID = 0; clientID < MAX_SESSION_SIZE; clientID++)
+			hands[clientID] = new HandData();
+	}
+	
+	/**
+	 * Clears the session for a new game, without connecting it to its players.
+	 * The deck is refilled and shuffled.
+	 * 
+	 * @param scheduler Schedules the session's delayed tasks.
+	 * @param loop The event loop owning the session. {@code null} if it has its own threads.
+	 * @param sessionSize The number of players in the session.
+	 */
+	private void reset(Scheduler scheduler, EventLoop loop, int sessionSize) {
+		
 		// Checks for valid session size
-		sessionSize = players.length;
-		if (sessionSize > MAX_SESSION_SIZE)
+		if (sessionSize > MAX_SESSION_SIZE) {
+			POOL.give(this);
 			throw new RuntimeException("Cannot host a game session with " + sessionSize
 										+ " players (max: " + MAX_SESSION_SIZE + ").");
+		}
+		this.sessionSize = sessionSize;
+		this.scheduler = scheduler;
+		this.loop = loop;
 		
-		// Initializes the player arrays
-		this.players = new Socket[sessionSize];
-		inputs = new InputStream[sessionSize];
-		outputs = new OutputStream[sessionSize];
-		handlingRequest = new boolean[sessionSize];
-		unoCallTime = new int[sessionSize];
-		hands = new HandData[sessionSize];
-		
-		// Stores the players' sockets and I/O streams
+		// Clears the previous game
+		game++;
+		deck.reset(ThreadLocalRandom.current(), decks(sessionSize));
+		ring.reset();
+		arbiter.reset();
+		for (int clientID = 0; clientID < MAX_SESSION_SIZE; clientID++) {
+			players[clientID] = null;
+			inputs[clientID] = null;
+			decoders[clientID] = null;
+			connections[clientID] = null;
+			hands[clientID].clear();
+			unoCallTime[clientID] = Integer.MAX_VALUE;
+		}
+		centerCard = null;
+		clientTurn = 0;
+		turnDirection = 1;
+		unoActive = -1;
+		frozen = false;
+		closed = false;
+		threaded = false;
+		users.set(2); // Released once closed (unless handed to the session's own threads), and by the host
+	}
+	
+	/**
+	 * @param sessionSize The number of players in a session.
+	 * @return The number of full decks shuffled together for the session's games (see the rauno.decks system property),
+	 * at least enough to deal every hand and still draw a regular card to start on.
+	 */
+	public static int decks(int sessionSize) {
+		int decks = DECKS > 0 ? DECKS : (sessionSize + SEATS_PER_DECK-1) / SEATS_PER_DECK;
+		while (decks*DECK_SIZE - sessionSize*HandData.START_SIZE <= decks*SPECIAL_CARDS)
+			decks++;
+		return decks;
+	}
+	
+	/**
+	 * Stops using this session. The session is recycled once every thread using it stopped.
+	 * Must be called once by whoever hosted the session, once they stop keeping track of it,
+	 * after which they must not use it anymore.
+	 */
+	public void release() {
+		if (users.decrementAndGet() == 0)
+			POOL.give(this);
+	}
+	
+	/**
+	 * Starts using this session, unless it stopped hosting the given game and may have been recycled.
+	 * @param game The game for which the session is used.
+	 * @return Whether the session still hosts the given game. It must then be released once no longer used.
+	 */
+	private boolean enter(int game) {
+		for (int count; (count = users.get()) > 0; ) {
+			if (users.compareAndSet(count, count+1)) {
+				if (this.game == game)
+					return true;
+				release();
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @param task A task using this session, run by a thread reaching the session on its own.
+	 * @return The task, skipped if run once the session stopped hosting its current game.
+	 */
+	private Runnable guard(Runnable task) {
+		final int game = this.game;
+		return () -> {
+			if (!enter(game))
+				return;
+			try {
+				task.run();
+			} finally {
+				release();
+			}
+		};
+	}
+	
+	/**
+	 * @return The pool of sessions kept to host later games.
+	 */
+	public static Pool<RaUnoSession> getPool() {
+		return POOL;
+	}
+	
+	/**
+	 * Stores the players' sockets and I/O streams.
+	 * @param players The sockets for the players.
+	 */
+	private void open(Socket...players) throws Exception {
 		System.out.println("Setting up the players' I/O streams...");
 		for (int clientID = 0; clientID < sessionSize; clientID++) {
 			this.players[clientID] = players[clientID];
 			inputs[clientID] = players[clientID].getInputStream();
-			outputs[clientID] = players[clientID].getOutputStream();
-			hands[clientID] = new HandData();
-			unoCallTime[clientID] = Integer.MAX_VALUE;
+			decoders[clientID] = new RequestDecoder(inputs[clientID], "Client #" + clientID);
+			connections[clientID] = new Connection(players[clientID], "Client #" + clientID);
+			connections[clientID].onDrop(guard(this::closeConnections));
+		}
+	}
+	
+	/**
+	 * Registers the players' channels with the given event loop, which will
+	 * decode and handle their requests on its own thread.
+	 * 
+	 * @param loop The event loop handling the session.
+	 * @param players The channels for the players, in non-blocking mode.
+	 */
+	private void register(EventLoop loop, SocketChannel...players) throws Exception {
+		for (int i = 0; i < sessionSize; i++) {
+			final int clientID = i;
+			final SocketChannel channel = players[clientID];
+			final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+			this.players[clientID] = channel.socket();
+			decoders[clientID] = new RequestDecoder("Client #" + clientID);
+			
+			// Handles the player's requests as they are received
+			final SelectionKey key = loop.register(channel, new EventLoop.Handler() {
+				public void readable() { try {
+					if (channel.read(buffer) == -1) {
+						closeConnections();
+						return;
+					}
+					buffer.flip();
+					for (ClientRequest request; (request = decoders[clientID].decode(buffer)) != null;)
+						if (admit(request, decoders[clientID].payload(), clientID))
+							handleRequest(request, decoders[clientID].payload(), clientID);
+					buffer.compact();
+				} catch (Exception e) {closeConnections();}}
+				
+				public void writable() {
+					connections[clientID].flush();
+				}
+			});
+			connections[clientID] = new Connection(key, loop, "Client #" + clientID);
+			connections[clientID].onDrop(guard(this::closeConnections));
 		}
+	}
+	
+	/**
+	 * Connects the session to the players' links, handling their requests as they are delivered.
+	 * Players without a connection yet are sent their requests straight through their links.
+	 * @param players The links to the players.
+	 */
+	private void connect(Link...players) {
+		final int game = this.game;
+		final Runnable close = guard(this::closeConnections);
+		for (int i = 0; i < sessionSize; i++) {
+			final int clientID = i;
+			decoders[clientID] = new RequestDecoder("Client #" + clientID, scheduler);
+			if (connections[clientID] == null) {
+				connections[clientID] = new Connection(players[clientID], scheduler, "Client #" + clientID);
+				connections[clientID].onDrop(close);
+			}
+			
+			// Handles the player's requests as they are received, while the session still hosts this game
+			players[clientID].open(new Link.Receiver() {
+				public void received(ByteBuffer bytes) {
+					if (!enter(game)) {
+						bytes.position(bytes.limit()); // Drops the requests sent to a previous game
+						return;
+					}
+					try {
+						for (ClientRequest request; !closed && (request = decoders[clientID].decode(bytes)) != null;)
+							if (admit(request, decoders[clientID].payload(), clientID))
+								handleRequest(request, decoders[clientID].payload(), clientID);
+					} finally {
+						release();
+					}
+				}
+				
+				public void closed() {
+					close.run();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Resumes a session frozen by {@link #freeze()} with the players, sending
+	 * each of them the full game state.
+	 * 
+	 * @param state The frozen state of the session.
+	 * @param players The sockets for the players, in the same order as when the session was frozen.
+	 * @return The resumed session.
+	 */
+	public static RaUnoSession resume(byte[] state, Socket...players) throws Exception {
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(state));
+		
+		// Restores the deck
+		final CardData[] cards = new CardData[input.readShort()];
+		for (int i = 0; i < cards.length; i++)
+			cards[i] = readCard(input);
+		final RaUnoSession session = POOL.take();
+		session.reset(Scheduler.THREADS, null, players.length);
+		session.deck.reset(cards);
+		session.open(players);
+		
+		// Restores the turn state
+		session.centerCard = readCard(input);
+		session.clientTurn = input.readByte();
+		session.turnDirection = input.readByte();
+		session.unoActive = input.readByte();
+		
+		// Restores the players' hands and Uno calls
+		for (int clientID = 0; clientID < session.sessionSize; clientID++) {
+			session.unoCallTime[clientID] = input.readInt();
+			final int handSize = input.readShort();
+			for (int i = 0; i < handSize; i++)
+				session.hands[clientID].add(readCard(input));
+		}
+		
+		// Brings the players up to date
+		session.arbiter.open(session.clientTurn, session.centerCard);
+		for (int clientID = 0; clientID < session.sessionSize; clientID++)
+			session.connections[clientID].send(session.snapshot(clientID));
+		if (session.unoActive != -1)
+			session.checkUno();
+		session.listen();
+		return session;
+	}
+	
+	/**
+	 * Stops this session and encodes its state, to be resumed by {@link #resume(byte[], Socket...)}.
+	 * The requests already queued for the players are still sent before their connections close.
+	 * 
+	 * @return The frozen state of the session.
+	 */
+	public synchronized byte[] freeze() throws Exception {
+		frozen = true;
+		closed = true;
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream output = new DataOutputStream(bytes);
+		
+		// Stores the deck
+		final CardData[] cards = deck.getCards();
+		output.writeShort(cards.length);
+		for (CardData card : cards)
+			writeCard(output, card);
+		
+		// Stores the turn state
+		writeCard(output, centerCard);
+		output.writeByte(clientTurn);
+		output.writeByte(turnDirection);
+		output.writeByte(unoActive);
+		
+		// Stores the players' hands and Uno calls
+		for (int clientID = 0; clientID < sessionSize; clientID++) {
+			output.writeInt(unoCallTime[clientID]);
+			final CardData[] hand = hands[clientID].getCards();
+			output.writeShort(hand.length);
+			for (CardData card : hand)
+				writeCard(output, card);
+		}
+		
+		// Lets the players' connections finish sending
+		synchronized (spectators) {
+			for (Spectator spectator : spectators)
+				spectator.close();
+			spectators.clear();
+		}
+		for (int clientID = 0; clientID < sessionSize; clientID++)
+			connections[clientID].finish();
+		ring.close();
+		
+		return bytes.toByteArray();
+	}
+	
+	/**
+	 * Writes the given card to the given stream.
+	 * @param output The stream to write to.
+	 * @param card The card to write.
+	 */
+	private static void writeCard(DataOutputStream output, CardData card) throws Exception {
+		output.writeByte(card.code());
+	}
+	
+	/**
+	 * Reads a card from the given stream.
+	 * @param input The stream to read from.
+	 * @return The card read.
+	 */
+	private static CardData readCard(DataInputStream input) throws Exception {
+		return CardData.fromCode(input.readByte());
+	}
+	
+	/**
+	 * Deals the players their starting hands and starts the game.
+	 */
+	private void start() throws Exception {
 		
 		// Sends the players the starting data
 		do
 			centerCard = deck.draw();
 		while (centerCard.getValue().special);
-		System.out.println("Sending the players their starting hands...");
+		arbiter.open(clientTurn, centerCard);
+		if (VERBOSE)
+			System.out.println("Sending the players their starting hands...");
 		for (int clientID = 0; clientID < sessionSize; clientID++) {
 			
 			// Sends the client's ID and signals the game has started
-			outputs[clientID].write(new byte[] {
+			connections[clientID].send(new byte[] {
 				(byte) ServerRequest.START_GAME.ordinal(),
 				(byte) clientID,
 				(byte) sessionSize,
 				(byte) centerCard.getColor().ordinal(),
 				(byte) centerCard.getValue().ordinal(),
+				houseRules(),
 			});
 		}
 		
@@ -124,169 +601,152 @@ public class RaUnoSession {
 				request[2 + 2*i+1] = (byte) card.getValue().ordinal();
 			}
 			
-			outputs[clientID].write(request);
+			connections[clientID].send(request);
 		}
 		
-		// Tells players that their opponents drew their initial cards
-		for (int clientID = 0; clientID < sessionSize; clientID++) {
-			for (byte opponentID = 0; opponentID < sessionSize; opponentID++) {
-				if (clientID == opponentID) continue; // Skips if the same client
-				
-				outputs[clientID].write(new byte[] {
-					(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
-					opponentID,
-					HandData.START_SIZE,
-				});
-			}
+		// Tells players that their opponents drew their initial cards, encoding each draw once
+		for (byte opponentID = 0; opponentID < sessionSize; opponentID++) {
+			final byte[] request = {
+				(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
+				opponentID,
+				HandData.START_SIZE,
+			};
+			for (int clientID = 0; clientID < sessionSize; clientID++)
+				if (clientID != opponentID) // Skips if the same client
+					connections[clientID].send(request);
 		}
 		
+	}
+	
+	/**
+	 * Starts listening for the players' requests. Each player's thread decodes its requests
+	 * into the session's ring, from which the session's game thread handles them in order.
+	 */
+	private void listen() {
+		threaded = true;
+		users.addAndGet(sessionSize); // The game thread takes over the use released once closed, with one more per player
+		
+		// Handles the requests in the order they were received
+		Pool.WORKERS.execute(() -> {
+			final RequestRing.Consumer consumer = this::handleRequest;
+			while (ring.consume(consumer));
+			release();
+		});
+		
 		// Set up client request listeners
-		System.out.println("Listening for client requests...");
+		if (VERBOSE)
+			System.out.println("Listening for client requests...");
 		for (int i = 0; i < sessionSize; i++) {
 			final int clientID = i;
-			new Thread() {
-				public void run() { try { while (true) {
-					
-					// Checks for a valid request
-					final int requestID = inputs[clientID].read();
-					if (requestID == -1)
-						continue;
+			final RequestDecoder decoder = decoders[clientID];
+			Pool.WORKERS.execute(() -> { try { while (true) {
+				
+				// Waits for a valid request, and hands it to the game thread unless it lost its turn
+				final ClientRequest request = decoder.next();
+				if (admit(request, decoder.payload(), clientID))
+					ring.publish(request, decoder.payload(), clientID);
 					
-					// Processes the request
-					handlingRequest[clientID] = true;
-					handleRequest(ClientRequest.values()[requestID], clientID);
-					while (handlingRequest[clientID]) Thread.sleep(250); // Allows for asynchronous tasks
-						
-				}} catch (Exception e) {e.printStackTrace();} closeConnections(); }
-			}.start();
+			}} catch (Exception e) {if (!closed) e.printStackTrace();} closeConnections(); release(); });
 		}
 		
 		System.out.println("Connection successful!");
 	}
 	
+	/**
+	 * Races the other players for the current turn if the given request would end it, as soon as it is received.
+	 * Card uses which lost the race or went beyond the client's rate limits are rejected right away,
+	 * and draws which lost it are dropped, as the turn they were meant for already ended.
+	 * @param request The request received from the client.
+	 * @param payload The bytes following the request ID.
+	 * @param clientID The ID of the client who sent the request.
+	 * @return Whether the request should be handled by the game thread.
+	 */
+	private boolean admit(ClientRequest request, byte[] payload, int clientID) {
+		if (request == ClientRequest.USE_CARD) {
+			if (!decoders[clientID].isLimited() && arbiter.claim(clientID, CardData.of(payload[1], payload[2])))
+				return true;
+			connections[clientID].send(new byte[] {
+				(byte) ServerRequest.INVALID_CARD_USE.ordinal(),
+				payload[0]
+			});
+			return false;
+		}
+		if (request == ClientRequest.DRAW_CARD)
+			return arbiter.claim(clientID, null);
+		return true;
+	}
+	
 	/**
 	 * Handles the given request from the given client.
 	 * @param request The request received from the client.
+	 * @param payload The bytes following the request ID.
 	 * @param clientID The ID of the client who sent the request.
 	 */
-	private void handleRequest(ClientRequest request, int clientID) { try {
-		System.out.println("Handling Client #" + clientID + " request: " + request);
+	private synchronized void handleRequest(ClientRequest request, byte[] payload, int clientID) { try {
+		if (VERBOSE)
+			System.out.println("Handling Client #" + clientID + " request: " + request);
+		
+		// Drops requests sent while the session was being frozen
+		if (frozen)
+			return;
 
 		// Client said they want to use a card
 		if (request == ClientRequest.USE_CARD) {
 			
 			// Stores the request's values
-			final byte[] reqArray = new byte[3];
-			inputs[clientID].read(reqArray);
+			final byte[] reqArray = payload;
 			
 			// Stores the card trying to be used
-			final CardData card = new CardData(
-				CardColor.values()[reqArray[1]],
-				CardValue.values()[reqArray[2]]
-			);
+			final CardData card = CardData.of(reqArray[1], reqArray[2]);
 
 			// Card validity checks
-			if (clientID != clientTurn // Checks if it is this client's turn
-				|| !card.canFollow(centerCard) // Checks if this card can be used
-				|| !hands[clientID].has(card)) { // Checks that this client has this card
+			if (clientID != clientTurn && !card.canJumpIn(centerCard) // Checks if it is this client's turn, or a jump-in
+				|| !hands[clientID].canPlay(card, centerCard)) { // Checks that this client has this card, and that it can be used
 				
-				outputs[clientID].write(ServerRequest.INVALID_CARD_USE.ordinal());
+				connections[clientID].send(new byte[] {
+					(byte) ServerRequest.INVALID_CARD_USE.ordinal(),
+					reqArray[0]
+				});
+				arbiter.release();
 			}
 			
 			// Registers the card as used
 			else {
 				
+				// Takes the turn if the client jumped in
+				clientTurn = clientID;
+				
 				// Updates the session card/client data
 				centerCard = card;
 				hands[clientID].remove(card);
 				
 				// Tells all clients the card was used
-				for (OutputStream out : outputs) {
-					out.write(new byte[] {
-						(byte) ServerRequest.REMOVE_FROM_HAND.ordinal(),
-						(byte) clientID,
-						reqArray[0],
-						(byte) card.getColor().ordinal(),
-						(byte) card.getValue().ordinal(),
-					});
-				}
+				broadcast(new byte[] {
+					(byte) ServerRequest.REMOVE_FROM_HAND.ordinal(),
+					(byte) clientID,
+					reqArray[0],
+					(byte) card.getColor().ordinal(),
+					(byte) card.getValue().ordinal(),
+				});
 				
 				// Checks if the player won the game
 				if (hands[clientID].size() == 0) {
-					for (OutputStream out : outputs) {
-						out.write(new byte[] {
-							(byte) ServerRequest.PLAYER_WON.ordinal(),
-							(byte) clientID
-						});
-					}
-					handlingRequest[clientID] = false;
+					broadcast(new byte[] {
+						(byte) ServerRequest.PLAYER_WON.ordinal(),
+						(byte) clientID
+					});
 					return;
 				}
 
 				// Checks if the player has uno
 				if (hands[clientID].size() == 1) {
-					for (OutputStream out : outputs) {
-						out.write(new byte[] {
-							(byte) ServerRequest.UNO.ordinal(),
-							(byte) clientID
-						});
-					}
+					broadcast(new byte[] {
+						(byte) ServerRequest.UNO.ordinal(),
+						(byte) clientID
+					});
 					unoActive = (byte) clientID;
 					
-					// Checks for an Uno call every 3 seconds
-					// Currently not synchronized to check Unos happening in quick succession
-					// Perhaps try making this thread into its own object to avoid starting multiple copies of it accidentally?
-					new Thread() {
-						public void run() { try { while (unoActive != -1) {
-							Thread.sleep(3_000);
-							
-							// Checks for the fastest Uno call
-							int minTime = Integer.MAX_VALUE;
-							int minID = -1;
-							for (int i = 0; i < sessionSize; i++) {
-								if (unoCallTime[i] < minTime) {
-									minTime = unoCallTime[i];
-									minID = i;
-								}
-							}
-							
-							// Skips if there was no Uno call
-							if (minID == -1) continue;
-							
-							// Tells clients to remove the Uno call button
-							for (OutputStream out : outputs)
-								out.write(ServerRequest.REMOVE_UNO.ordinal());
-							
-							// Checks if a draw needs to happen
-							if (unoActive != minID) {
-								
-								// Makes the Uno person draw their card
-								final CardData card = deck.draw();
-								hands[unoActive].add(card);
-								outputs[unoActive].write(new byte[] {
-									(byte) ServerRequest.DRAW_FROM_DECK.ordinal(),
-									1,
-									(byte) card.getColor().ordinal(),
-									(byte) card.getValue().ordinal()
-								});
-								
-								// Broadcasts to other players that the card was drawn
-								for (int i = 0; i < sessionSize; i++) {
-									if (i == unoActive) continue; // Skips if is the draw recipient
-									outputs[i].write(new byte[] {
-										(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
-										unoActive,
-										1
-									});
-								}
-							}
-							
-							// Resets the Uno call checking
-							unoActive = -1;
-							for (int i = 0; i < sessionSize; i++)
-								unoCallTime[i] = Integer.MAX_VALUE;
-						}} catch (Exception e) {}}
-					}.start();
+					checkUno();
 				}
 				
 				// SPECIAL CARDS
@@ -309,18 +769,14 @@ public class RaUnoSession {
 					}
 					
 					// Sends the request to the draw recipient
-					outputs[clientTurn].write(drawReq);
+					connections[clientTurn].send(drawReq);
 					
-					// Prepares the request to be sent to all other clients
-					for (int client = 0; client < sessionSize; client++) {
-						if (client == clientTurn) continue; // Skips the draw recipient
-						
-						outputs[client].write(new byte[] {
-							(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
-							(byte) clientTurn,
-							cards
-						});
-					}
+					// Sends the request to all other clients
+					broadcastExcept(clientTurn, new byte[] {
+						(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
+						(byte) clientTurn,
+						cards
+					});
 
 				// Makes the next person draw 4 and skip their turn
 				} else if (card.getValue() == CardValue.DRAW_FOUR) {
@@ -341,18 +797,14 @@ public class RaUnoSession {
 					}
 					
 					// Sends the request to the draw recipient
-					outputs[clientTurn].write(drawReq);
+					connections[clientTurn].send(drawReq);
 					
-					// Prepares the request to be sent to all other clients
-					for (int client = 0; client < sessionSize; client++) {
-						if (client == clientTurn) continue; // Skips the draw recipient
-						
-						outputs[client].write(new byte[] {
-							(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
-							(byte) clientTurn,
-							cards
-						});
-					}
+					// Sends the request to all other clients
+					broadcastExcept(clientTurn, new byte[] {
+						(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
+						(byte) clientTurn,
+						(byte) cards
+					});
 					
 				// Switches the direction of turn progression, and
 				// skips the next person if it is a 2-player game
@@ -381,18 +833,14 @@ public class RaUnoSession {
 				(byte) card.getColor().ordinal(),
 				(byte) card.getValue().ordinal(),
 			};
-			outputs[clientID].write(req);
+			connections[clientID].send(req);
 			
 			// Tells all other clients about the draw
-			for (int client = 0; client < sessionSize; client++) {
-				if (client == clientID) continue; // Skips the draw recipient
-				
-				outputs[client].write(new byte[] {
-					(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
-					(byte) clientID,
-					1
-				});
-			}
+			broadcastExcept(clientID, new byte[] {
+				(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
+				(byte) clientID,
+				1
+			});
 			
 			endTurn();
 			
@@ -400,16 +848,128 @@ public class RaUnoSession {
 		} else if (request == ClientRequest.CALLED_UNO) {
 			
 			// Stores the request's values
-			final byte[] reqArray = new byte[4];
-			inputs[clientID].read(reqArray);
+			final byte[] reqArray = payload;
 
-			final int time = (int)reqArray[1] + (((int)reqArray[2]) << 8) + (((int)reqArray[3]) << 16);
-			unoCallTime[clientID] = time;
-		}
+			final int time = (reqArray[1] & 0xFF) + ((reqArray[2] & 0xFF) << 8) + ((reqArray[3] & 0xFF) << 16);
+			if (unoActive != -1) // Ignores late calls, once Uno was resolved
+				unoCallTime[clientID] = time;
+			
+		// Client's view of the game diverged from the session
+		} else if (request == ClientRequest.REQUEST_SNAPSHOT) {
+			connections[clientID].send(snapshot(clientID));
 		
-		handlingRequest[clientID] = false;
+		// Client asked for its best move
+		} else if (request == ClientRequest.REQUEST_HINT) {
+			if (clientID == clientTurn && HintService.BUDGET > 0 && decks(sessionSize) == 1) // The hint search assumes a single deck
+				hint(clientID);
+		}
 	} catch (Exception e) {e.printStackTrace();}}
 	
+	/**
+	 * Searches for the given client's best move without holding up the game,
+	 * then sends it to the client if the game is still going.
+	 * @param clientID The ID of the client.
+	 */
+	private void hint(int clientID) {
+		
+		// Copies the state the client can see
+		final HandData hand = new HandData(hands[clientID].getCards());
+		final CardData center = centerCard;
+		final int direction = turnDirection;
+		final int[] handSizes = new int[sessionSize];
+		for (int i = 0; i < sessionSize; i++)
+			handSizes[i] = hands[i].size();
+		final int game = this.game;
+		
+		Pool.WORKERS.execute(() -> {
+			final HintService.Hint hint = HintService.suggest(hand, center, handSizes, clientID, direction);
+			final byte[] request = {
+				(byte) ServerRequest.HINT.ordinal(),
+				(byte) (hint.card == null ? -1 : hint.card.getColor().ordinal()),
+				(byte) (hint.card == null ? -1 : hint.card.getValue().ordinal()),
+			};
+			
+			// Sends the hint from the session's own thread if owned by an event loop
+			final Runnable send = () -> {
+				synchronized (this) {
+					if (game == this.game && !closed)
+						connections[clientID].send(request);
+				}
+			};
+			if (loop != null)
+				loop.execute(send);
+			else
+				send.run();
+		});
+	}
+	
+	/**
+	 * Checks for an Uno call every 3 seconds while Uno is active.
+	 */
+	private void checkUno() {
+		final int game = this.game;
+		scheduler.schedule(() -> { try {
+			if (resolveUno(game))
+				checkUno();
+		} catch (Exception e) {e.printStackTrace();}}, 3_000);
+	}
+	
+	/**
+	 * Resolves the active Uno once someone called it, making the player
+	 * with Uno draw a card if someone else called it first.
+	 * 
+	 * @param game The game in which Uno was checked for. Ignored if the session moved on to another game.
+	 * @return Whether Uno is still active, and must be checked for again.
+	 */
+	private synchronized boolean resolveUno(int game) throws Exception {
+		if (closed || game != this.game)
+			return false;
+		
+		// Checks for the fastest Uno call
+		int minTime = Integer.MAX_VALUE;
+		int minID = -1;
+		for (int i = 0; i < sessionSize; i++) {
+			if (unoCallTime[i] < minTime) {
+				minTime = unoCallTime[i];
+				minID = i;
+			}
+		}
+		
+		// Skips if there was no Uno call, or if Uno was already resolved
+		if (unoActive == -1) return false;
+		if (minID == -1) return true;
+		
+		// Tells clients to remove the Uno call button
+		broadcast(new byte[] {(byte) ServerRequest.REMOVE_UNO.ordinal()});
+		
+		// Checks if a draw needs to happen
+		if (unoActive != minID) {
+			
+			// Makes the Uno person draw their card
+			final CardData card = deck.draw();
+			hands[unoActive].add(card);
+			connections[unoActive].send(new byte[] {
+				(byte) ServerRequest.DRAW_FROM_DECK.ordinal(),
+				1,
+				(byte) card.getColor().ordinal(),
+				(byte) card.getValue().ordinal()
+			});
+			
+			// Broadcasts to other players that the card was drawn
+			broadcastExcept(unoActive, new byte[] {
+				(byte) ServerRequest.OPPONENT_DRAW_FROM_DECK.ordinal(),
+				unoActive,
+				1
+			});
+		}
+		
+		// Resets the Uno call checking
+		unoActive = -1;
+		for (int i = 0; i < sessionSize; i++)
+			unoCallTime[i] = Integer.MAX_VALUE;
+		return false;
+	}
+	
 	/**
 	 * Increments the turn count to the next player according
 	 * to the current direction of turn progression.
@@ -423,26 +983,175 @@ public class RaUnoSession {
 	 */
 	private void endTurn() throws Exception {
 		nextPlayer();
-		for (OutputStream out : outputs) {
-			out.write(new byte[] {
-				(byte) ServerRequest.END_TURN.ordinal(),
-				(byte) clientTurn
-			});
+		arbiter.open(clientTurn, centerCard);
+		
+		// Computes the checksum of the public game state
+		for (int i = 0; i < sessionSize; i++)
+			handSizes[i] = hands[i].size();
+		final byte checksum = StateChecksum.compute(
+			clientTurn,
+			centerCard.getColor().ordinal(),
+			centerCard.getValue().ordinal(),
+			handSizes,
+			sessionSize
+		);
+		
+		broadcast(new byte[] {
+			(byte) ServerRequest.END_TURN.ordinal(),
+			(byte) clientTurn,
+			checksum
+		});
+	}
+	
+	/**
+	 * @return The house rules of this session's games, as flags (such as {@link ServerRequest#JUMP_IN_RULE}).
+	 */
+	private static byte houseRules() {
+		return TurnArbiter.JUMP_IN ? ServerRequest.JUMP_IN_RULE : 0;
+	}
+	
+	/**
+	 * Encodes the full state of the game as seen by the given client.
+	 * @param clientID The ID of the client. {@link #SPECTATOR_ID} for spectators.
+	 * @return The {@link ServerRequest#STATE_SNAPSHOT} request for the client.
+	 */
+	private byte[] snapshot(int clientID) {
+		final CardData[] cards = clientID == SPECTATOR_ID ? new CardData[0] : hands[clientID].getCards();
+		final byte[] request = new byte[8 + sessionSize + 2*cards.length];
+		
+		// Stores the public game state
+		request[0] = (byte) ServerRequest.STATE_SNAPSHOT.ordinal();
+		request[1] = (byte) clientID;
+		request[2] = (byte) sessionSize;
+		request[3] = (byte) clientTurn;
+		request[4] = (byte) centerCard.getColor().ordinal();
+		request[5] = (byte) centerCard.getValue().ordinal();
+		request[6] = houseRules();
+		for (int i = 0; i < sessionSize; i++)
+			request[7 + i] = (byte) hands[i].size();
+		
+		// Stores the client's hand
+		final int handStart = 7 + sessionSize;
+		request[handStart] = (byte) cards.length;
+		for (int i = 0; i < cards.length; i++) {
+			request[handStart+1 + 2*i] = (byte) cards[i].getColor().ordinal();
+			request[handStart+1 + 2*i+1] = (byte) cards[i].getValue().ordinal();
+		}
+		
+		return request;
+	}
+	
+	/**
+	 * Sends the given request to every player and spectator in this session.
+	 * @param request The request to send.
+	 */
+	private void broadcast(byte[] request) throws Exception {
+		for (int clientID = 0; clientID < sessionSize; clientID++)
+			connections[clientID].send(request);
+		spectate(request);
+	}
+	
+	/**
+	 * Sends the given request to every player except the given one,
+	 * and to every spectator in this session.
+	 * @param clientID The ID of the client who will not be sent the request.
+	 * @param request The request to send.
+	 */
+	private void broadcastExcept(int clientID, byte[] request) throws Exception {
+		for (int client = 0; client < sessionSize; client++)
+			if (client != clientID) // Skips the given client
+				connections[client].send(request);
+		spectate(request);
+	}
+	
+	/**
+	 * Shares the given public request with every spectator of this session.
+	 * The request is wrapped once into an immutable buffer, and each spectator
+	 * receives its own read-only view of it. Spectators too far behind are
+	 * skipped ahead to the current game state instead of stalling the players.
+	 * 
+	 * @param request The request to share. Must not be modified afterwards.
+	 */
+	private void spectate(byte[] request) {
+		synchronized (spectators) {
+			if (spectators.isEmpty())
+				return;
+			
+			final ByteBuffer shared = ByteBuffer.wrap(request).asReadOnlyBuffer();
+			ByteBuffer state = null;
+			for (int i = spectators.size()-1; i >= 0; i--) {
+				final Spectator spectator = spectators.get(i);
+				
+				// Forgets spectators who left
+				if (spectator.isClosed()) {
+					spectators.remove(i);
+					continue;
+				}
+				
+				// Skips lagging spectators ahead to the current game state
+				if (!spectator.offer(shared.duplicate())) {
+					if (state == null)
+						state = ByteBuffer.wrap(snapshot(SPECTATOR_ID)).asReadOnlyBuffer();
+					spectator.skipAhead(state.duplicate());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a spectator to this session, who will be sent the session's
+	 * current public state, then every public request from now on.
+	 * Holds the session's lock, so that no request is broadcast between the snapshot and the spectator joining.
+	 * @param socket The socket for the spectator.
+	 */
+	public synchronized void addSpectator(Socket socket) throws Exception {
+		synchronized (spectators) {
+			if (closed) { // Spectators are only closed by the session while it is open
+				socket.close();
+				return;
+			}
+			final Spectator spectator = new Spectator(socket);
+			spectator.skipAhead(ByteBuffer.wrap(snapshot(SPECTATOR_ID)).asReadOnlyBuffer());
+			spectators.add(spectator);
 		}
 	}
 	
 	/**
 	 * Closes the connection with all the clients in this session.
 	 */
-	private void closeConnections() { try {
+	private synchronized void closeConnections() { try {
+		if (frozen || closed) // Lets the connections finish sending if frozen
+			return;
 		closed = true;
+		if (VERBOSE)
+			System.out.print(stats());
+		ring.close();
+		synchronized (spectators) {
+			for (Spectator spectator : spectators)
+				spectator.close();
+			spectators.clear();
+		}
 		for (int i = 0; i < sessionSize; i++) {
-			inputs[i].close();
-			outputs[i].close();
-			players[i].close();
+			if (inputs[i] != null)
+				inputs[i].close();
+			connections[i].close();
+			if (players[i] != null)
+				players[i].close();
 		}
+		if (!threaded)
+			release();
 	} catch (Exception e) {e.printStackTrace();}}
 	
+	/**
+	 * @return The lag metrics of each player's connection, one line per player.
+	 */
+	public String stats() {
+		final StringBuilder stats = new StringBuilder();
+		for (int clientID = 0; clientID < sessionSize; clientID++)
+			stats.append("Client #").append(clientID).append(": ").append(connections[clientID].stats()).append('\n');
+		return stats.toString();
+	}
+	
 	/**
 	 * @return Whether this session is closed.
 	 */
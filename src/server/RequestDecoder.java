@@ -0,0 +1,297 @@
+package server;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import cards.CardColor;
+import cards.CardValue;
+import requests.ClientRequest;
+
+/**
+ * Decodes and validates the requests sent by a client.
+ * Unknown request IDs and out-of-range values are rejected without tearing down
+ * the connection, and requests beyond the client's rate limits are dropped, except for card uses,
+ * which are still returned (see {@link #isLimited()}) so that the client can be told its card was not used.
+ * A client sending too many malformed requests is quarantined, having
+ * every request it sends dropped for a while.
+ * <br><br>
+ * Requests can either be decoded from bytes already received, or
+ * by blocking on the client's input stream.
+ * @author Raul Hernandez, 01/25/2024
+ * 
+ */
+public class RequestDecoder {
+	
+	/** The client requests, indexed by request ID. */
+	private static final ClientRequest[] REQUESTS = ClientRequest.values();
+	
+	/** The number of card colors. */
+	private static final int COLORS = CardColor.values().length;
+	
+	/** The number of card values. */
+	private static final int VALUES = CardValue.values().length;
+	
+	/** The number of requests of any type a client can send per second. */
+	private static final int RATE = 20;
+	
+	/** Whether requests are rate limited. Only meant to be turned off for benchmarks. */
+	private static final boolean RATE_LIMITED = !Boolean.getBoolean("rauno.noRateLimit");
+	
+	/** The number of bytes read at once from the client's input stream. */
+	private static final int BUFFER_SIZE = 512;
+	
+	/** The number of malformed requests a client can send per second before being quarantined. */
+	private static final int MALFORMED_RATE = 1;
+	
+	/** The number of malformed requests a client can send at once before being quarantined. */
+	private static final int MALFORMED_BURST = 16;
+	
+	/** The time (in nanoseconds) a client stays quarantined. */
+	private static final long QUARANTINE_TIME = 10_000_000_000L;
+	
+	/** The name of the client, used in logs. */
+	private final String name;
+	
+	/** The input stream from the client. {@code null} if the bytes are received elsewhere. */
+	private final InputStream input;
+	
+	/** The bytes read from the input stream and not decoded yet. */
+	private final ByteBuffer buffer;
+	
+	/** Stores the values of the request being handled. */
+	private final byte[] payload;
+	
+	/** The clock by which rate limits and quarantines are measured. */
+	private final Scheduler clock;
+	
+	/** Limits the rate of requests of any type. */
+	private final TokenBucket limiter;
+	
+	/** Limits the rate of each request type, indexed by request ID. */
+	private final TokenBucket[] limiters = new TokenBucket[REQUESTS.length];
+	
+	/** Limits the rate of malformed requests before the client is quarantined. */
+	private final TokenBucket malformedLimiter;
+	
+	/** The time (in nanoseconds) until which the client is quarantined. */
+	private long quarantinedUntil;
+	
+	/** The number of requests accepted. */
+	private int accepted = 0;
+	
+	/** The number of malformed requests rejected. */
+	private int malformed = 0;
+	
+	/** The number of requests dropped for going beyond the rate limits. */
+	private int limited = 0;
+	
+	/** The number of requests dropped while quarantined. */
+	private int quarantined = 0;
+	
+	/** Whether the last request returned went beyond the rate limits, and must be rejected. */
+	private boolean overLimit = false;
+	
+	/**
+	 * Creates a request decoder reading from the given stream.
+	 * @param input The input stream from the client.
+	 * @param name The name of the client, used in logs.
+	 */
+	public RequestDecoder(InputStream input, String name) {
+		this(input, name, Scheduler.THREADS);
+	}
+	
+	/**
+	 * Creates a request decoder for bytes received elsewhere, passed to {@link #decode(ByteBuffer)}.
+	 * @param name The name of the client, used in logs.
+	 */
+	public RequestDecoder(String name) {
+		this(null, name, Scheduler.THREADS);
+	}
+	
+	/**
+	 * Creates a request decoder for bytes received elsewhere, measuring rate limits by the given clock.
+	 * @param name The name of the client, used in logs.
+	 * @param clock The clock by which rate limits and quarantines are measured (see {@link Scheduler#nanoTime()}).
+	 */
+	public RequestDecoder(String name, Scheduler clock) {
+		this(null, name, clock);
+	}
+	
+	/**
+	 * Creates a request decoder.
+	 * @param input The input stream from the client. {@code null} if the bytes are received elsewhere.
+	 * @param name The name of the client, used in logs.
+	 * @param clock The clock by which rate limits and quarantines are measured.
+	 */
+	private RequestDecoder(InputStream input, String name, Scheduler clock) {
+		this.input = input;
+		this.name = name;
+		this.clock = clock;
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		buffer.flip();
+		limiter = new TokenBucket(RATE, RATE, clock);
+		malformedLimiter = new TokenBucket(MALFORMED_RATE, MALFORMED_BURST, clock);
+		quarantinedUntil = clock.nanoTime();
+		
+		// Sets up the request type limiters
+		int maxSize = 0;
+		for (ClientRequest request : REQUESTS) {
+			limiters[request.ordinal()] = new TokenBucket(request.rate, request.rate, clock);
+			maxSize = Math.max(maxSize, request.size);
+		}
+		payload = new byte[maxSize];
+	}
+	
+	/**
+	 * Waits for the next valid request from the client, dropping every
+	 * malformed, rate limited (besides card uses) or quarantined request in the meantime.
+	 * The request's values are stored in {@link #payload()} until the next call.
+	 * 
+	 * @return The next valid request.
+	 * @throws EOFException If the client closed the connection.
+	 */
+	public ClientRequest next() throws Exception { while (true) {
+		final ClientRequest request = decode(buffer);
+		if (request != null)
+			return request;
+		
+		// Reads more bytes from the client
+		buffer.compact();
+		final int read = input.read(buffer.array(), buffer.position(), buffer.remaining());
+		if (read == -1)
+			throw new EOFException();
+		buffer.position(buffer.position() + read);
+		buffer.flip();
+	}}
+	
+	/**
+	 * Decodes the next valid request from the given bytes, dropping every
+	 * malformed, rate limited (besides card uses) or quarantined request before it.
+	 * The request's values are stored in {@link #payload()} until the next call.
+	 * 
+	 * @param bytes The bytes received from the client. The bytes of an incomplete
+	 * 				request are left in the buffer, to be decoded once the rest is received.
+	 * @return The next valid request. {@code null} if there is no complete valid request left.
+	 */
+	public ClientRequest decode(ByteBuffer bytes) {
+		while (bytes.hasRemaining()) {
+			final int start = bytes.position();
+			final int requestID = bytes.get() & 0xFF;
+			final boolean quarantine = clock.nanoTime() - quarantinedUntil < 0;
+			
+			// Skips unknown request IDs one byte at a time
+			if (requestID >= REQUESTS.length) {
+				if (quarantine)
+					quarantined++;
+				else
+					reject();
+				continue;
+			}
+			
+			// Waits for the rest of the request
+			final ClientRequest request = REQUESTS[requestID];
+			if (bytes.remaining() < request.size) {
+				bytes.position(start);
+				return null;
+			}
+			bytes.get(payload, 0, request.size);
+			
+			// Drops requests while quarantined
+			if (quarantine) {
+				quarantined++;
+				continue;
+			}
+			
+			// Rejects out-of-range values
+			if (!valid(request)) {
+				reject();
+				continue;
+			}
+			
+			// Drops requests beyond the rate limits, taking a token of any type first,
+			// so that requests beyond the overall limit do not use up their own type's tokens
+			if (RATE_LIMITED && (!limiter.take() || !limiters[requestID].take())) {
+				limited++;
+				
+				// Hands back card uses to be rejected, as the client waits for the card's outcome
+				if (request == ClientRequest.USE_CARD) {
+					overLimit = true;
+					return request;
+				}
+				continue;
+			}
+			
+			overLimit = false;
+			accepted++;
+			return request;
+		}
+		return null;
+	}
+	
+	/**
+	 * Checks that the values of the given request are in range.
+	 * @param request The request whose values are stored in the payload.
+	 * @return Whether the request's values are valid.
+	 */
+	private boolean valid(ClientRequest request) {
+		if (request == ClientRequest.USE_CARD)
+			return payload[1] >= 0 && payload[1] < COLORS
+				&& payload[2] >= 0 && payload[2] < VALUES;
+		return true;
+	}
+	
+	/**
+	 * Counts a malformed request, quarantining the client if it sent too many.
+	 */
+	private void reject() {
+		malformed++;
+		if (!malformedLimiter.take()) {
+			quarantinedUntil = clock.nanoTime() + QUARANTINE_TIME;
+			System.out.println("Quarantining " + name + " after " + malformed + " malformed requests.");
+		}
+	}
+	
+	/**
+	 * @return Whether the last request returned went beyond the rate limits, and must be rejected
+	 * instead of handled. Only ever {@code true} for card uses.
+	 */
+	public boolean isLimited() {
+		return overLimit;
+	}
+	
+	/**
+	 * @return The values of the last request returned by {@link #next()}.
+	 */
+	public byte[] payload() {
+		return payload;
+	}
+	
+	/**
+	 * @return The number of requests accepted.
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+	
+	/**
+	 * @return The number of malformed requests rejected.
+	 */
+	public int getMalformed() {
+		return malformed;
+	}
+	
+	/**
+	 * @return The number of requests dropped for going beyond the rate limits.
+	 */
+	public int getLimited() {
+		return limited;
+	}
+	
+	/**
+	 * @return The number of requests dropped while quarantined.
+	 */
+	public int getQuarantined() {
+		return quarantined;
+	}
+}
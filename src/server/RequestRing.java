@@ -0,0 +1,194 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import net.WaitStrategy;
+import requests.ClientRequest;
+
+/**
+ * Handles a preallocated ring of client requests between the threads reading
+ * from the players and the thread applying the game rules of a session.
+ * Any number of threads can publish requests, and a single thread consumes them in order.
+ * The ring's slots are reused, so passing a request through it allocates nothing.
+ * @author Raul Hernandez, 02/03/2024
+ * 
+ */
+public class RequestRing {
+	
+	/**
+	 * Handles the requests consumed from a ring.
+	 */
+	public static interface Consumer {
+		
+		/**
+		 * Handles the given request. The payload is only valid until this method returns.
+		 * @param request The request received from the client.
+		 * @param payload The bytes following the request ID.
+		 * @param clientID The ID of the client who sent the request.
+		 */
+		public void handle(ClientRequest request, byte[] payload, int clientID);
+	}
+	
+	/** The largest payload of a client request. */
+	private static final int MAX_PAYLOAD;
+	static {
+		int max = 0;
+		for (ClientRequest request : ClientRequest.values())
+			max = Math.max(max, request.size);
+		MAX_PAYLOAD = max;
+	}
+	
+	/** The number of slots in the ring, a power of two. */
+	private final int capacity;
+	
+	/** Masks a sequence number into the index of its slot. */
+	private final int mask;
+	
+	/** The requests stored in the ring's slots. */
+	private final ClientRequest[] requests;
+	
+	/** The payloads stored in the ring's slots. */
+	private final byte[][] payloads;
+	
+	/** The IDs of the clients who sent the requests stored in the ring's slots. */
+	private final int[] clientIDs;
+	
+	/** The sequence number last published in each slot. -1 if none. */
+	private final AtomicLongArray published;
+	
+	/** The next sequence number to be claimed by a publishing thread. */
+	private final AtomicLong claimed = new AtomicLong();
+	
+	/** The next sequence number to be consumed. */
+	private final AtomicLong consumed = new AtomicLong();
+	
+	/** Decides how threads wait for the ring. */
+	private final WaitStrategy strategy;
+	
+	/** The thread consuming the ring, if parked waiting for a request. */
+	private volatile Thread parked = null;
+	
+	/** Whether the ring is closed. */
+	private volatile boolean closed = false;
+	
+	/**
+	 * Creates a request ring.
+	 * @param capacity The minimum number of requests the ring can hold at once.
+	 * @param strategy Decides how threads wait for the ring.
+	 */
+	public RequestRing(int capacity, WaitStrategy strategy) {
+		this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.mask = this.capacity - 1;
+		this.strategy = strategy;
+		
+		// Preallocates the slots
+		requests = new ClientRequest[this.capacity];
+		payloads = new byte[this.capacity][MAX_PAYLOAD];
+		clientIDs = new int[this.capacity];
+		published = new AtomicLongArray(this.capacity);
+		for (int i = 0; i < this.capacity; i++)
+			published.set(i, -1);
+	}
+	
+	/**
+	 * Publishes the given request to the ring, waiting for a free slot if the ring is full.
+	 * The request is dropped if the ring is closed.
+	 * 
+	 * @param request The request received from the client.
+	 * @param payload The bytes following the request ID. Copied into the ring.
+	 * @param clientID The ID of the client who sent the request.
+	 */
+	public void publish(ClientRequest request, byte[] payload, int clientID) {
+		final long sequence = claimed.getAndIncrement();
+		
+		// Waits for the consumer to free the slot
+		for (int tries = 0; sequence - consumed.get() >= capacity; tries = strategy.idle(tries))
+			if (closed)
+				return;
+		
+		// Fills and publishes the slot
+		final int slot = (int) sequence & mask;
+		requests[slot] = request;
+		System.arraycopy(payload, 0, payloads[slot], 0, request.size);
+		clientIDs[slot] = clientID;
+		published.lazySet(slot, sequence);
+		
+		// Wakes up the consumer
+		final Thread consumer = parked;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+	}
+	
+	/**
+	 * Waits for the next request and hands it to the given consumer.
+	 * Must only be called by the ring's consuming thread.
+	 * 
+	 * @param consumer Handles the request.
+	 * @return Whether a request was consumed. {@code false} once the ring is closed.
+	 */
+	public boolean consume(Consumer consumer) {
+		final long sequence = consumed.get();
+		final int slot = (int) sequence & mask;
+		
+		// Waits for the slot to be published
+		for (int tries = 0; published.get(slot) != sequence; ) {
+			if (closed)
+				return false;
+			if (strategy == WaitStrategy.BLOCKING && tries >= WaitStrategy.SPIN_TRIES) {
+				parked = Thread.currentThread();
+				if (published.get(slot) != sequence && !closed)
+					tries = strategy.idle(tries);
+				parked = null;
+			} else {
+				tries = strategy.idle(tries);
+			}
+		}
+		
+		// Hands the request over, then frees the slot
+		consumer.handle(requests[slot], payloads[slot], clientIDs[slot]);
+		requests[slot] = null;
+		consumed.lazySet(sequence + 1);
+		return true;
+	}
+	
+	/**
+	 * Empties and reopens the ring, so it can be used for another game.
+	 * Must only be called once no thread uses the ring.
+	 */
+	public void reset() {
+		for (int i = 0; i < capacity; i++) {
+			requests[i] = null;
+			published.set(i, -1);
+		}
+		claimed.set(0);
+		consumed.set(0);
+		parked = null;
+		closed = false;
+	}
+	
+	/**
+	 * @return The number of requests published but not yet consumed.
+	 */
+	public int getBacklog() {
+		return (int) Math.max(0, Math.min(capacity, claimed.get() - consumed.get()));
+	}
+	
+	/**
+	 * @return The number of requests the ring can hold at once.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Closes the ring, waking up any thread waiting for it. Requests not yet consumed are dropped.
+	 */
+	public void close() {
+		closed = true;
+		final Thread consumer = parked;
+		if (consumer != null)
+			LockSupport.unpark(consumer);
+	}
+}
@@ -0,0 +1,223 @@
+package server;
+
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * Handles the router's pipes between the players of a session and the backend node hosting it.
+ * The pipes from the players always write to the session's current node, so the session
+ * can be moved to another node without the players reconnecting.
+ * @author Raul Hernandez, 01/29/2024
+ * 
+ */
+public class Route {
+	
+	/** The size of the buffers used to pipe bytes between players and nodes. */
+	private static final int PIPE_BUFFER = 4096;
+	
+	/** The time (in milliseconds) a frozen node has to finish sending its bytes to the players. */
+	private static final int DRAIN_TIMEOUT = 1_000;
+	
+	/** The ID of the session. */
+	public final int sessionID;
+	
+	/** The sockets for the players, indexed by seat. */
+	private final Socket[] players;
+	
+	/** The sockets for the node hosting the session, indexed by seat. */
+	private volatile Socket[] links;
+	
+	/** The threads piping the node's bytes to the players, indexed by seat. */
+	private Thread[] downstream;
+	
+	/** The node hosting the session. */
+	private volatile BackendNode node;
+	
+	/** Whether the session is being moved to another node. */
+	private volatile boolean moving = false;
+	
+	/** Whether the route is closed. */
+	private volatile boolean closed = false;
+	
+	/**
+	 * Creates a route for the given session.
+	 * @param sessionID The ID of the session.
+	 * @param players The sockets for the players, indexed by seat.
+	 */
+	public Route(int sessionID, Socket...players) {
+		this.sessionID = sessionID;
+		this.players = players;
+	}
+	
+	/**
+	 * Connects every seat to the given node, and starts piping the node's bytes to the players.
+	 * @param node The node which will host the session.
+	 */
+	public synchronized void connect(BackendNode node) throws Exception {
+		final Socket[] links = new Socket[players.length];
+		try {
+			
+			// Connects every seat to the node
+			for (int seat = 0; seat < players.length; seat++) {
+				links[seat] = new Socket(node.host, node.port);
+				links[seat].setTcpNoDelay(true);
+				final DataOutputStream header = new DataOutputStream(links[seat].getOutputStream());
+				header.writeInt(sessionID);
+				header.writeByte(seat);
+				header.writeByte(players.length);
+				header.flush();
+			}
+		
+		} catch (Exception e) {
+			for (Socket link : links)
+				close(link);
+			throw e;
+		}
+		
+		// Pipes the node's bytes to the players
+		this.links = links;
+		this.node = node;
+		downstream = new Thread[players.length];
+		for (int seat = 0; seat < players.length; seat++) {
+			downstream[seat] = downstream(links[seat], players[seat]);
+			downstream[seat].start();
+		}
+	}
+	
+	/**
+	 * Starts piping the players' bytes to the node hosting the session.
+	 */
+	public void start() throws Exception {
+		for (int seat = 0; seat < players.length; seat++) {
+			players[seat].setTcpNoDelay(true);
+			upstream(seat).start();
+		}
+	}
+	
+	/**
+	 * Moves the session to the given node. The players' bytes are held back
+	 * while the session is frozen on its node, then resumed on the given node.
+	 * 
+	 * @param target The node to which the session will be moved.
+	 * @return The time (in nanoseconds) the players' bytes were held back for.
+	 */
+	public synchronized long move(BackendNode target) throws Exception {
+		final long start = System.nanoTime();
+		moving = true;
+		try {
+			
+			// Freezes the session on its node
+			final byte[] state = node.freeze(sessionID);
+			if (state == null)
+				throw new RuntimeException("Session #" + sessionID + " is not hosted by " + node + ".");
+			
+			// Waits for the node to finish sending to the players
+			for (Thread pipe : downstream)
+				pipe.join(DRAIN_TIMEOUT);
+			for (Socket link : links)
+				close(link);
+			
+			// Resumes the session on the target node
+			target.resume(sessionID, state);
+			connect(target);
+		
+		} catch (Exception e) {
+			close();
+			throw e;
+		} finally {
+			moving = false;
+		}
+		return System.nanoTime() - start;
+	}
+	
+	/**
+	 * Creates a thread piping the given player's bytes to the node's socket for the same seat.
+	 * @param seat The seat of the player.
+	 * @return The thread piping the player's bytes.
+	 */
+	private Thread upstream(int seat) {
+		final Thread pipe = new Thread() {
+			public void run() { try {
+				final InputStream input = players[seat].getInputStream();
+				final byte[] buffer = new byte[PIPE_BUFFER];
+				for (int read; (read = input.read(buffer)) != -1;)
+					synchronized (Route.this) { // Holds the bytes back while moving
+						links[seat].getOutputStream().write(buffer, 0, read);
+					}
+			} catch (Exception e) {} close(); }
+		};
+		pipe.setDaemon(true);
+		return pipe;
+	}
+	
+	/**
+	 * Creates a thread piping a node's bytes to a player.
+	 * The route is closed once the node stops sending, unless the session is being moved.
+	 * 
+	 * @param link The socket for the node.
+	 * @param player The socket for the player.
+	 * @return The thread piping the node's bytes.
+	 */
+	private Thread downstream(Socket link, Socket player) {
+		final Thread pipe = new Thread() {
+			public void run() { try {
+				final InputStream input = link.getInputStream();
+				final OutputStream output = player.getOutputStream();
+				final byte[] buffer = new byte[PIPE_BUFFER];
+				for (int read; (read = input.read(buffer)) != -1;)
+					output.write(buffer, 0, read);
+			} catch (Exception e) {} if (!moving && isLinked(link)) close(); }
+		};
+		pipe.setDaemon(true);
+		return pipe;
+	}
+	
+	/**
+	 * @param link A socket for a node.
+	 * @return Whether the socket is one of the sockets for the node currently hosting the session.
+	 */
+	private boolean isLinked(Socket link) {
+		for (Socket current : links)
+			if (current == link)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * @return The node hosting the session.
+	 */
+	public BackendNode getNode() {
+		return node;
+	}
+	
+	/**
+	 * @return Whether the route is closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Closes the connections with the players and the node.
+	 */
+	public void close() {
+		closed = true;
+		for (Socket player : players)
+			close(player);
+		final Socket[] links = this.links;
+		if (links != null)
+			for (Socket link : links)
+				close(link);
+	}
+	
+	/**
+	 * Closes the given socket, if any.
+	 * @param socket The socket to close.
+	 */
+	private static void close(Socket socket) { try {
+		if (socket != null)
+			socket.close();
+	} catch (Exception e) {e.printStackTrace();}}
+}
@@ -0,0 +1,40 @@
+package server;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules delayed tasks for game sessions, such as the Uno call checks,
+ * and tells the time by which sessions measure rate limits.
+ * @author Raul Hernandez, 02/01/2024
+ * 
+ */
+public interface Scheduler {
+	
+	/** The timer thread shared by every session with threads of its own. Tasks must not block it. */
+	public static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+		final Thread thread = new Thread(task, "RaUno Timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/** Runs each task on the shared timer thread once its delay has passed. */
+	public static final Scheduler THREADS = (task, delay) -> TIMER.schedule(() -> { try {
+		task.run();
+	} catch (Exception e) {e.printStackTrace();}}, delay, TimeUnit.MILLISECONDS);
+	
+	/**
+	 * Runs the given task once the given delay has passed.
+	 * @param task The task to run.
+	 * @param delay The delay (in milliseconds) before running the task.
+	 */
+	public void schedule(Runnable task, long delay);
+	
+	/**
+	 * @return The current time (in nanoseconds) of the scheduler's clock. Only meaningful relative to other times of the same clock.
+	 */
+	public default long nanoTime() {
+		return System.nanoTime();
+	}
+}
@@ -0,0 +1,100 @@
+package server;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Handles a spectator watching a RaUno game session.
+ * Spectators only receive public information, and are fed through a bounded
+ * queue so that a slow spectator can never stall the players' table.
+ * @author Raul Hernandez, 01/14/2024
+ * 
+ */
+public class Spectator {
+	
+	/** The maximum number of requests that can be waiting to be sent to a spectator. */
+	private static final int QUEUE_SIZE = 64;
+	
+	/** The socket for the spectator. */
+	private final Socket socket;
+	
+	/** The requests waiting to be sent to the spectator. */
+	private final ArrayBlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<ByteBuffer>(QUEUE_SIZE);
+	
+	/** The thread sending the queued requests to the spectator. */
+	private final Thread writer;
+	
+	/** Whether the connection with the spectator is closed. */
+	private volatile boolean closed = false;
+	
+	/** The number of times the spectator fell too far behind and was skipped ahead. Only written by the session. */
+	private volatile int skips = 0;
+	
+	/**
+	 * Creates a spectator and starts sending it its queued requests.
+	 * @param socket The socket for the spectator.
+	 */
+	public Spectator(Socket socket) throws Exception {
+		this.socket = socket;
+		final WritableByteChannel channel = Channels.newChannel(socket.getOutputStream());
+		
+		// Sends the queued requests to the spectator
+		writer = new Thread() {
+			public void run() { try { while (!closed) {
+				final ByteBuffer request = queue.take();
+				while (request.hasRemaining())
+					channel.write(request);
+			}} catch (Exception e) {} close(); }
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * Queues the given request to be sent to the spectator, without blocking.
+	 * @param request A read-only view of the request to send.
+	 * @return Whether the request was queued. {@code false} if the spectator is too far behind.
+	 */
+	public boolean offer(ByteBuffer request) {
+		return !closed && queue.offer(request);
+	}
+	
+	/**
+	 * Drops every request the spectator has not been sent yet, and replaces them
+	 * with the given requests bringing the spectator up to date.
+	 * @param requests Read-only views of the requests describing the current game state.
+	 */
+	public void skipAhead(ByteBuffer...requests) {
+		queue.clear();
+		skips++;
+		for (ByteBuffer request : requests)
+			queue.offer(request);
+	}
+	
+	/**
+	 * @return The number of times the spectator fell too far behind and was skipped ahead.
+	 */
+	public int getSkips() {
+		return skips;
+	}
+	
+	/**
+	 * @return Whether the connection with the spectator is closed.
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * Closes the connection with the spectator.
+	 */
+	public void close() { try {
+		closed = true;
+		queue.clear();
+		writer.interrupt();
+		socket.close();
+	} catch (Exception e) {e.printStackTrace();}}
+}
@@ -0,0 +1,66 @@
+package server;
+
+/**
+ * Handles a token bucket rate limiter.
+ * The bucket refills at a steady rate up to its capacity, and each accepted
+ * event takes one token. Not thread-safe; each bucket belongs to one thread.
+ * @author Raul Hernandez, 01/25/2024
+ * 
+ */
+public class TokenBucket {
+	
+	/** The number of tokens added per nanosecond. */
+	private final double rate;
+	
+	/** The largest number of tokens the bucket can hold. */
+	private final double capacity;
+	
+	/** The number of tokens in the bucket. */
+	private double tokens;
+	
+	/** The clock by which the bucket refills. */
+	private final Scheduler clock;
+	
+	/** The time (in nanoseconds) at which the bucket was last refilled. */
+	private long lastRefill;
+	
+	/**
+	 * Creates a full token bucket, refilling in real time.
+	 * @param perSecond The number of tokens added per second.
+	 * @param capacity The largest number of tokens the bucket can hold.
+	 */
+	public TokenBucket(double perSecond, double capacity) {
+		this(perSecond, capacity, Scheduler.THREADS);
+	}
+	
+	/**
+	 * Creates a full token bucket, refilling by the given clock.
+	 * @param perSecond The number of tokens added per second.
+	 * @param capacity The largest number of tokens the bucket can hold.
+	 * @param clock The clock by which the bucket refills (see {@link Scheduler#nanoTime()}).
+	 */
+	public TokenBucket(double perSecond, double capacity, Scheduler clock) {
+		this.rate = perSecond / 1_000_000_000.0;
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.clock = clock;
+		lastRefill = clock.nanoTime();
+	}
+	
+	/**
+	 * Takes a token from the bucket, if there is one.
+	 * @return Whether a token was taken.
+	 */
+	public boolean take() {
+		
+		// Refills the bucket for the time passed
+		final long now = clock.nanoTime();
+		tokens = Math.min(capacity, tokens + (now-lastRefill)*rate);
+		lastRefill = now;
+		
+		if (tokens < 1)
+			return false;
+		tokens--;
+		return true;
+	}
+}
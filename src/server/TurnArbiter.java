@@ -0,0 +1,115 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import cards.CardData;
+import requests.ServerRequest;
+
+/**
+ * Decides which player's action ends each turn, as soon as the action is received by the session,
+ * before it waits for the session's game thread. Each turn opens a round, knowing whose turn it is and the center card.
+ * The round is won by the first action received which may end it: a card used or drawn by the player whose turn it is,
+ * or, with the jump-in house rule, a card identical to the center card used by any player out of turn.
+ * Every other action received before the next round opens lost the race, and is rejected right away.
+ * The game thread then only ever handles one action per turn, so jump-ins never break the turn order.
+ * <br><br>
+ * A round is a single word, claimed by compare-and-set, so the receiving threads race for it without locks,
+ * and the losers never wait for the session.
+ * @author Raul Hernandez, 02/12/2024
+ * 
+ */
+public class TurnArbiter {
+	
+	/**
+	 * Whether players may use a card identical to the center card out of turn (the jump-in house rule).
+	 * Announced to the clients with {@link ServerRequest#JUMP_IN_RULE}.
+	 */
+	public static final boolean JUMP_IN = Boolean.getBoolean("rauno.jumpIn");
+	
+	/** The claimant of a round no action won yet. */
+	private static final int UNCLAIMED = 0xFF;
+	
+	/** The number of rounds won by an action, across every session. */
+	private static final LongAdder WON = new LongAdder();
+	
+	/** The number of rounds won by a jump-in, across every session. */
+	private static final LongAdder JUMP_INS = new LongAdder();
+	
+	/** The number of actions rejected because another action already won their round (or no round was open), across every session. */
+	private static final LongAdder LOST = new LongAdder();
+	
+	/**
+	 * The current round, from the highest bits: its number (32 bits), the ID of the player whose turn it is,
+	 * the code of the center card and the ID of the player who won it (8 bits each). 0 while no round is open.
+	 */
+	private final AtomicLong round = new AtomicLong();
+	
+	/**
+	 * Opens the next round, in which players may race to end the turn.
+	 * Must only be called by the thread handling the actions, once the last round's action was handled.
+	 * @param turn The ID of the player whose turn it is.
+	 * @param center The center card.
+	 */
+	public void open(int turn, CardData center) {
+		final long number = (round.get() >>> 32) + 1;
+		round.set(number << 32 | (turn & 0xFF) << 16 | (center.code() & 0xFF) << 8 | UNCLAIMED);
+	}
+	
+	/**
+	 * Claims the current round for the given player's action, unless another action already won it.
+	 * Cards which cannot follow the center card never claim the round, so they never hold it from the other players.
+	 * @param clientID The ID of the player who sent the action.
+	 * @param card The card used, with its chosen color if special. {@code null} if the player drew a card.
+	 * @return Whether the action won the round, and should be handled. {@code false} to reject the action.
+	 */
+	public boolean claim(int clientID, CardData card) {
+		while (true) {
+			final long current = round.get();
+			
+			// Checks that the round is open, and that the action may end it
+			if ((current & 0xFF) != UNCLAIMED) {
+				LOST.increment();
+				return false;
+			}
+			final CardData center = CardData.fromCode((int) (current >>> 8 & 0xFF));
+			if (card != null && !card.canFollow(center))
+				return false;
+			final boolean jumpIn = clientID != (int) (current >>> 16 & 0xFF);
+			if (jumpIn && (!JUMP_IN || card == null || !card.canJumpIn(center)))
+				return false;
+			
+			// Races the other players for the round
+			if (round.compareAndSet(current, current & ~0xFFL | clientID)) {
+				WON.increment();
+				if (jumpIn)
+					JUMP_INS.increment();
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Opens the current round again, once the action which won it was found to be invalid,
+	 * so that the other players' actions may still end the turn. Only needed for cards which were not held,
+	 * as {@link #claim(int, CardData)} already rejects cards which cannot follow the center card.
+	 * Must only be called by the thread handling the actions.
+	 */
+	public void release() {
+		round.set(round.get() | UNCLAIMED);
+	}
+	
+	/**
+	 * Closes the current round, rejecting every action until the next round opens.
+	 */
+	public void reset() {
+		round.set(0);
+	}
+	
+	/**
+	 * @return The number of rounds won, won by jump-ins, and actions which lost their round, across every session.
+	 */
+	public static String stats() {
+		return String.format("Turn arbiter: %d rounds won (%d by jump-ins), %d actions too late", WON.sum(), JUMP_INS.sum(), LOST.sum());
+	}
+}
@@ -0,0 +1,192 @@
+package sim;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import net.Link;
+import server.RaUnoSession;
+import server.TurnArbiter;
+
+/**
+ * Plays many games between simulated players and real sessions over a simulated network, on a virtual clock,
+ * so that thousands of games (and their Uno windows, latencies and stalls) run each second without any threads.
+ * The games are seeded one after the other from the run's seed, so any failing game can be played again on its own.
+ * A game fails if it stalls, if the players disagree on its winner, if the session stays open once it ended,
+ * or if a player's view diverged from the session's on a network which neither reorders nor loses requests.
+ * <br><br>
+ * Arguments: [GAMES (default: 10000)] [PLAYERS (default: 4)] [SEED (default: 1)]
+ * [LATENCY ms (default: 20)] [JITTER ms (default: 0)] [LOSS (default: 0)]
+ * @author Raul Hernandez, 02/09/2024
+ * 
+ */
+public class SessionSimulator {
+	
+	/** The longest time (in milliseconds of virtual time) a game may take. */
+	private static final long GAME_TIME = 60 * 60 * 1_000;
+	
+	/** The most failing seeds printed. */
+	private static final int MAX_FAILURES = 10;
+	
+	/**
+	 * Stores how a simulated game went.
+	 */
+	private static class Game {
+		
+		/** Whether a player won the game. */
+		private boolean finished = false;
+		
+		/** Whether the players left the game before it ended. */
+		private boolean abandoned = false;
+		
+		/** Why the game failed. {@code null} if it did not. */
+		private String failure = null;
+		
+		/** The number of times a player's view diverged from the session's. */
+		private int divergences = 0;
+		
+		/** The number of times a player heard nothing for too long. */
+		private int stalls = 0;
+		
+		/** The number of turns played. */
+		private int turns = 0;
+		
+		/** The time (in milliseconds of virtual time) the game took. */
+		private long time = 0;
+		
+		/** Summarizes the game, such that the same game always gets the same summary. */
+		private long fingerprint = 0;
+	}
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty("rauno.quiet", "true");
+		final int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+		final int players = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		final long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		final long latency = args.length > 3 ? Long.parseLong(args[3]) : 20;
+		final long jitter = args.length > 4 ? Long.parseLong(args[4]) : 0;
+		final double loss = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+		
+		final VirtualClock clock = new VirtualClock();
+		int finished = 0;
+		int abandoned = 0;
+		int failed = 0;
+		long divergences = 0;
+		long stalls = 0;
+		long turns = 0;
+		long virtualTime = 0;
+		long fingerprint = seed;
+		final long start = System.nanoTime();
+		for (int i = 0; i < games; i++) {
+			final long gameSeed = seed + i;
+			final Game game = play(clock, gameSeed, players, latency, jitter, loss);
+			
+			// Tallies the game
+			if (game.failure != null) {
+				failed++;
+				if (failed <= MAX_FAILURES)
+					System.out.printf("Game %d failed (%s), play it again with arguments: 1 %d %d %d %d %s%n",
+							i, game.failure, players, gameSeed, latency, jitter, loss);
+			} else if (game.finished) {
+				finished++;
+			} else if (game.abandoned) {
+				abandoned++;
+			}
+			divergences += game.divergences;
+			stalls += game.stalls;
+			turns += game.turns;
+			virtualTime += game.time;
+			fingerprint = fingerprint * 31 + game.fingerprint;
+		}
+		final double seconds = (System.nanoTime() - start) / 1e9;
+		
+		System.out.printf("%d games of %d players in %.2f s (%.0f games per second, %.0fx real time)%n",
+				games, players, seconds, games / seconds, virtualTime / 1e3 / seconds);
+		System.out.printf("                %d finished, %d abandoned, %d failed%n", finished, abandoned, failed);
+		System.out.printf("                %d turns (%.2f us per turn)%n", turns, seconds * 1e6 / turns);
+		System.out.printf("                %d divergences, %d stalls, %d timers run%n", divergences, stalls, clock.getRan());
+		System.out.printf("                fingerprint: %016x%n", fingerprint);
+		System.out.println("                " + RaUnoSession.getPool().stats());
+		System.out.println("                " + TurnArbiter.stats());
+	}
+	
+	/**
+	 * Plays one simulated game to its end.
+	 * @param clock The clock driving the game. Reset before the game.
+	 * @param seed The seed of the game.
+	 * @param players The number of players in the game.
+	 * @param latency The smallest time (in milliseconds) a request takes to be delivered.
+	 * @param jitter The largest time (in milliseconds) added at random to a request's latency.
+	 * @param loss The probability that a request is lost.
+	 * @return How the game went.
+	 */
+	static Game play(VirtualClock clock, long seed, int players, long latency, long jitter, double loss) {
+		final Game game = new Game();
+		final SplittableRandom random = new SplittableRandom(seed);
+		clock.reset();
+		try {
+			
+			// Connects the session to its players
+			final SimNetwork network = new SimNetwork(clock, random.split(), latency, jitter, loss);
+			final Link[] serverEnds = new Link[players];
+			final Link[] playerEnds = new Link[players];
+			for (int i = 0; i < players; i++) {
+				final Link[] link = network.connect();
+				serverEnds[i] = link[0];
+				playerEnds[i] = link[1];
+			}
+			final SimPlayer[] simPlayers = new SimPlayer[players];
+			for (int i = 0; i < players; i++)
+				simPlayers[i] = new SimPlayer(clock, random.split(), playerEnds[i]);
+			final RaUnoSession session = RaUnoSession.host(clock, new Random(random.nextLong()), serverEnds);
+			
+			// Plays the game until every player left
+			final long limit = GAME_TIME * 1_000_000;
+			while (!allDone(simPlayers) && clock.nanoTime() <= limit && clock.runNext());
+			clock.runUntil(clock.nanoTime() + 1_000_000 * (latency + jitter) + 1);
+			final boolean closed = session.isClosed();
+			session.release();
+			game.time = clock.millis();
+			
+			// Checks how the game ended
+			int winner = -1;
+			for (SimPlayer player : simPlayers) {
+				game.divergences += player.divergences;
+				game.stalls += player.stalls;
+				game.abandoned |= player.abandoned;
+				if (player.winner != -1) {
+					if (winner != -1 && winner != player.winner)
+						game.failure = "players disagree on the winner";
+					winner = player.winner;
+				}
+				game.fingerprint = game.fingerprint * 31 + player.handSize();
+				game.turns = Math.max(game.turns, player.turns());
+			}
+			game.finished = winner != -1;
+			game.fingerprint = (game.fingerprint * 31 + winner) * 31 + game.time;
+			if (game.failure != null)
+				return game;
+			if (!allDone(simPlayers))
+				game.failure = "stalled";
+			else if (!game.finished && !game.abandoned)
+				game.failure = "ended without a winner";
+			else if (!closed)
+				game.failure = "session still open";
+			else if (game.divergences > 0 && jitter == 0 && loss == 0)
+				game.failure = game.divergences + " divergences on a perfect network";
+		} catch (Exception e) {
+			game.failure = e.toString();
+		}
+		return game;
+	}
+	
+	/**
+	 * @param players The simulated players.
+	 * @return Whether every player left the game.
+	 */
+	private static boolean allDone(SimPlayer[] players) {
+		for (SimPlayer player : players)
+			if (!player.done)
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,172 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import net.Link;
+
+/**
+ * Handles a simulated network of links between a session and its players, driven by a virtual clock.
+ * Each request is delivered after the network's latency plus a random jitter, so that requests can
+ * overtake each other when the jitter is larger than the time between them, and each request can be lost.
+ * Every random choice comes from the network's own source of randomness, so the same seed always
+ * delivers, reorders and loses the same requests.
+ * @author Raul Hernandez, 02/09/2024
+ * 
+ */
+public class SimNetwork {
+	
+	/**
+	 * Handles one end of a simulated link.
+	 */
+	private class End implements Link {
+		
+		/** The other end of the link. */
+		private End peer;
+		
+		/** Handles the bytes received. {@code null} until opened. */
+		private Receiver receiver;
+		
+		/** The bytes received and not handled yet. */
+		private ByteBuffer inbox = ByteBuffer.allocate(64);
+		
+		/** Whether this end is closed. */
+		private boolean closed = false;
+		
+		@Override
+		public void open(Receiver receiver) {
+			this.receiver = receiver;
+		}
+		
+		@Override
+		public boolean send(byte[] request) {
+			if (closed)
+				return false;
+			sent++;
+			if (loss > 0 && random.nextDouble() < loss) {
+				lost++;
+				return true;
+			}
+			clock.scheduleNanos(() -> peer.deliver(request), delay());
+			return true;
+		}
+		
+		/**
+		 * Hands the given request to this end's receiver, with any bytes it left unread.
+		 * @param request The request delivered.
+		 */
+		private void deliver(byte[] request) {
+			if (closed || receiver == null)
+				return;
+			if (inbox.remaining() < request.length) {
+				final ByteBuffer larger = ByteBuffer.allocate(2 * (inbox.position() + request.length));
+				inbox.flip();
+				larger.put(inbox);
+				inbox = larger;
+			}
+			inbox.put(request);
+			inbox.flip();
+			try {
+				receiver.received(inbox);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			} finally {
+				inbox.compact();
+			}
+			delivered++;
+		}
+		
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			
+			// Tells the other end once every request in flight arrived
+			clock.scheduleNanos(() -> {
+				if (!peer.closed && peer.receiver != null)
+					peer.receiver.closed();
+			}, 1_000_000 * (latency + jitter) + 1);
+		}
+	}
+	
+	/** The clock driving the network. */
+	private final VirtualClock clock;
+	
+	/** The source of randomness of the network's delays and losses. */
+	private final SplittableRandom random;
+	
+	/** The smallest time (in milliseconds) a request takes to be delivered. */
+	private final long latency;
+	
+	/** The largest time (in milliseconds) added at random to a request's latency. */
+	private final long jitter;
+	
+	/** The probability that a request is lost. */
+	private final double loss;
+	
+	/** The number of requests sent. */
+	private long sent = 0;
+	
+	/** The number of requests lost. */
+	private long lost = 0;
+	
+	/** The number of requests delivered. */
+	private long delivered = 0;
+	
+	/**
+	 * Creates a simulated network.
+	 * @param clock The clock driving the network.
+	 * @param random The source of randomness of the network's delays and losses.
+	 * @param latency The smallest time (in milliseconds) a request takes to be delivered.
+	 * @param jitter The largest time (in milliseconds) added at random to a request's latency. Requests can be reordered if positive.
+	 * @param loss The probability that a request is lost.
+	 */
+	public SimNetwork(VirtualClock clock, SplittableRandom random, long latency, long jitter, double loss) {
+		this.clock = clock;
+		this.random = random;
+		this.latency = latency;
+		this.jitter = jitter;
+		this.loss = loss;
+	}
+	
+	/**
+	 * Creates a link between two ends.
+	 * @return Both ends of the link.
+	 */
+	public Link[] connect() {
+		final End first = new End();
+		final End second = new End();
+		first.peer = second;
+		second.peer = first;
+		return new Link[] {first, second};
+	}
+	
+	/**
+	 * @return The time (in nanoseconds) the next request takes to be delivered.
+	 */
+	private long delay() {
+		return 1_000_000 * (latency + (jitter > 0 ? random.nextLong(jitter + 1) : 0));
+	}
+	
+	/**
+	 * @return The number of requests sent.
+	 */
+	public long getSent() {
+		return sent;
+	}
+	
+	/**
+	 * @return The number of requests lost.
+	 */
+	public long getLost() {
+		return lost;
+	}
+	
+	/**
+	 * @return The number of requests delivered.
+	 */
+	public long getDelivered() {
+		return delivered;
+	}
+}
@@ -0,0 +1,368 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import cards.CardColor;
+import cards.CardData;
+import cards.Deck;
+import cards.HandData;
+import requests.ClientRequest;
+import requests.ServerRequest;
+import requests.StateChecksum;
+import net.Link;
+import server.RaUnoSession;
+
+/**
+ * Handles a simulated player, following the game through the server's requests and playing
+ * the first card it can (or drawing a card) after a random thinking time. With the jump-in house rule
+ * (see {@link ServerRequest#JUMP_IN_RULE}), it also races to use any card identical to the center card. Like the real client,
+ * it checks every turn's checksum and asks for a snapshot of the game whenever its view diverged,
+ * and asks again whenever it has heard nothing for a while, so that it recovers from lost requests.
+ * @author Raul Hernandez, 02/09/2024
+ * 
+ */
+class SimPlayer implements Link.Receiver {
+	
+	/** The server requests, indexed by request ID. */
+	private static final ServerRequest[] REQUESTS = ServerRequest.values();
+	
+	/** The number of turns after which the player leaves, so that a game never runs forever. */
+	static final int MAX_TURNS = 300;
+	
+	/** The number of cards in one full deck. */
+	private static final int DECK_SIZE = new Deck().cardsLeft();
+	
+	/** The fewest cards left in the deck before the player leaves, as the session never reshuffles the used cards. */
+	private static final int MIN_DECK = 8;
+	
+	/** The shortest time (in milliseconds) the player takes to act. */
+	private static final int MIN_THINK = 50;
+	
+	/** The longest time (in milliseconds) the player takes to act. */
+	private static final int MAX_THINK = 500;
+	
+	/** The longest time (in milliseconds) the player takes to call Uno, shorter than the server's Uno window. */
+	private static final int MAX_REACTION = 2_000;
+	
+	/** The time (in milliseconds) without hearing from the server after which the player asks for a snapshot. */
+	private static final int STALL_TIME = 5_000;
+	
+	/** The clock driving the game. */
+	private final VirtualClock clock;
+	
+	/** The source of randomness of the player's choices and delays. */
+	private final SplittableRandom random;
+	
+	/** The player's end of its link to the session. */
+	private final Link link;
+	
+	/** The player's hand, as seen by the player. */
+	private final HandData hand = new HandData();
+	
+	/** The number of cards in each player's hand, as seen by the player. */
+	private final int[] handSizes = new int[ServerRequest.MAX_PLAYERS];
+	
+	/** The player's client ID. -1 until the game starts. */
+	private int clientID = -1;
+	
+	/** The number of players in the game. */
+	private int players = 0;
+	
+	/** Whether the game is played with the jump-in house rule, as announced by the server. */
+	private boolean jumpInRule = false;
+	
+	/** The ID of the player whose turn it is. */
+	private int turn = 0;
+	
+	/** The card at the center. */
+	private CardData center;
+	
+	/** The number of cards used, as seen by the player. */
+	private int used = 0;
+	
+	/** The number of turns which ended. */
+	private int turns = 0;
+	
+	/** The number of turns which had ended when the player last acted. -1 if it has to act again. */
+	private int actedAt = -1;
+	
+	/** The sequence number of the player's next card use. */
+	private byte sequence = 0;
+	
+	/** The time (in nanoseconds) at which the player last heard from the server. */
+	private long lastHeard;
+	
+	/** The ID of the player who won, as told by the server. -1 if none yet. */
+	int winner = -1;
+	
+	/** Whether the player left the game or saw the session close. */
+	boolean done = false;
+	
+	/** Whether the player left the game before it ended, after {@link #MAX_TURNS} turns or once the deck ran low. */
+	boolean abandoned = false;
+	
+	/** The number of times the player's view of the game diverged from the server's. */
+	int divergences = 0;
+	
+	/** The number of times the player heard nothing for too long. */
+	int stalls = 0;
+	
+	/** The number of card uses the player sent which lost the turn to another player's action. */
+	int racesLost = 0;
+	
+	/**
+	 * Creates a simulated player and starts following the game.
+	 * @param clock The clock driving the game.
+	 * @param random The source of randomness of the player's choices and delays.
+	 * @param link The player's end of its link to the session.
+	 */
+	SimPlayer(VirtualClock clock, SplittableRandom random, Link link) {
+		this.clock = clock;
+		this.random = random;
+		this.link = link;
+		lastHeard = clock.nanoTime();
+		link.open(this);
+		clock.schedule(this::watch, STALL_TIME);
+	}
+	
+	@Override
+	public void received(ByteBuffer bytes) {
+		lastHeard = clock.nanoTime();
+		while (!done && bytes.hasRemaining()) {
+			
+			// Waits for the rest of the request
+			final int start = bytes.position();
+			final int length = length(bytes);
+			if (length == -1 || bytes.remaining() < length)
+				return;
+			final ServerRequest request = REQUESTS[bytes.get()];
+			handle(request, bytes);
+			bytes.position(start + length);
+		}
+	}
+	
+	@Override
+	public void closed() {
+		done = true;
+	}
+	
+	/**
+	 * @param bytes The bytes received, starting with a request ID.
+	 * @return The number of bytes of the request, including its ID. -1 if not enough bytes were received to tell.
+	 */
+	private static int length(ByteBuffer bytes) {
+		final int start = bytes.position();
+		final ServerRequest request = REQUESTS[bytes.get(start)];
+		if (request.size != -1)
+			return 1 + request.size;
+		if (request == ServerRequest.DRAW_FROM_DECK)
+			return bytes.remaining() < 2 ? -1 : 2 + 2*bytes.get(start+1);
+		if (bytes.remaining() < 3)
+			return -1;
+		final int players = bytes.get(start+2);
+		if (bytes.remaining() < 8 + players)
+			return -1;
+		return 8 + players + 2*bytes.get(start + 7 + players);
+	}
+	
+	/**
+	 * Follows the game through the given request.
+	 * @param request The request received.
+	 * @param bytes The bytes following the request ID.
+	 */
+	private void handle(ServerRequest request, ByteBuffer bytes) {
+		
+		// Drops requests overtaking the start of the game, which the next checksum catches
+		if (clientID == -1 && request != ServerRequest.START_GAME && request != ServerRequest.STATE_SNAPSHOT)
+			return;
+		
+		if (request == ServerRequest.START_GAME) {
+			clientID = bytes.get();
+			players = bytes.get();
+			center = CardData.of(bytes.get(), bytes.get());
+			jumpInRule = (bytes.get() & ServerRequest.JUMP_IN_RULE) != 0;
+		} else if (request == ServerRequest.DRAW_FROM_DECK) {
+			final int cards = bytes.get();
+			for (int i = 0; i < cards; i++)
+				hand.add(CardData.of(bytes.get(), bytes.get()));
+			handSizes[clientID] += cards;
+			if (turns == 0 && clientID == 0)
+				think(); // The first player starts once dealt
+		} else if (request == ServerRequest.OPPONENT_DRAW_FROM_DECK) {
+			handSizes[bytes.get()] += bytes.get();
+		} else if (request == ServerRequest.REMOVE_FROM_HAND) {
+			final int player = bytes.get();
+			bytes.get();
+			center = CardData.of(bytes.get(), bytes.get());
+			handSizes[player]--;
+			used++;
+			if (player == clientID)
+				hand.remove(center);
+			jumpIn();
+		} else if (request == ServerRequest.END_TURN) {
+			turn = bytes.get();
+			turns++;
+			
+			// Asks for the full game state if the player's view diverged
+			final byte checksum = StateChecksum.compute(turn, center.getColor().ordinal(), center.getValue().ordinal(), handSizes, players);
+			if (checksum != bytes.get()) {
+				divergences++;
+				link.send(new byte[] {(byte) ClientRequest.REQUEST_SNAPSHOT.ordinal()});
+			} else if (turns > MAX_TURNS || deckLeft() < MIN_DECK) {
+				abandoned = true;
+				leave();
+			} else if (turn == clientID) {
+				think();
+			}
+		} else if (request == ServerRequest.STATE_SNAPSHOT) {
+			clientID = bytes.get();
+			players = bytes.get();
+			turn = bytes.get();
+			center = CardData.of(bytes.get(), bytes.get());
+			jumpInRule = (bytes.get() & ServerRequest.JUMP_IN_RULE) != 0;
+			for (int i = 0; i < players; i++)
+				handSizes[i] = bytes.get();
+			hand.clear();
+			for (int i = bytes.get(); i > 0; i--)
+				hand.add(CardData.of(bytes.get(), bytes.get()));
+			if (turn == clientID)
+				think();
+		} else if (request == ServerRequest.INVALID_CARD_USE) {
+			
+			// Waits for the action which won the turn, which the next checksum checks
+			if (jumpInRule) {
+				racesLost++;
+				return;
+			}
+			divergences++;
+			actedAt = -1;
+			link.send(new byte[] {(byte) ClientRequest.REQUEST_SNAPSHOT.ordinal()});
+		} else if (request == ServerRequest.UNO) {
+			callUno();
+		} else if (request == ServerRequest.PLAYER_WON) {
+			winner = bytes.get();
+			leave();
+		}
+	}
+	
+	/**
+	 * Acts after a random thinking time, unless the player already acted this turn.
+	 */
+	private void think() {
+		if (actedAt == turns)
+			return;
+		actedAt = turns;
+		final int turns = this.turns;
+		clock.schedule(() -> {
+			if (!done && turn == clientID && this.turns == turns)
+				act();
+		}, MIN_THINK + random.nextInt(MAX_THINK - MIN_THINK + 1));
+	}
+	
+	/**
+	 * Plays the first card the player can use, with a random color if special, or draws a card.
+	 */
+	private void act() {
+		final long playable = hand.playable(center);
+		if (playable == 0) {
+			link.send(new byte[] {(byte) ClientRequest.DRAW_CARD.ordinal()});
+			return;
+		}
+		final CardData card = CardData.lowest(playable);
+		final CardColor color = card.getColor() == CardColor.BLACK
+				? CardColor.REGULAR_COLORS[random.nextInt(CardColor.REGULAR_COLORS.length)] : card.getColor();
+		link.send(new byte[] {
+			(byte) ClientRequest.USE_CARD.ordinal(),
+			sequence++,
+			(byte) color.ordinal(),
+			(byte) card.getValue().ordinal(),
+		});
+	}
+	
+	/**
+	 * Uses a card identical to the new center card out of turn after a random reaction time,
+	 * if the player holds one and the center card is still the same by then.
+	 */
+	private void jumpIn() {
+		if (!jumpInRule || turn == clientID || (hand.mask() & center.mask()) == 0 || center.getValue().special)
+			return;
+		final int used = this.used;
+		clock.schedule(() -> {
+			if (done || this.used != used || (hand.mask() & center.mask()) == 0)
+				return;
+			link.send(new byte[] {
+				(byte) ClientRequest.USE_CARD.ordinal(),
+				sequence++,
+				(byte) center.getColor().ordinal(),
+				(byte) center.getValue().ordinal(),
+			});
+		}, MIN_THINK + random.nextInt(MAX_THINK - MIN_THINK + 1));
+	}
+	
+	/**
+	 * Calls Uno after a random reaction time.
+	 */
+	private void callUno() {
+		clock.schedule(() -> {
+			if (done)
+				return;
+			final long time = clock.millis();
+			link.send(new byte[] {
+				(byte) ClientRequest.CALLED_UNO.ordinal(),
+				(byte) clientID,
+				(byte) time,
+				(byte) (time >> 8),
+				(byte) (time >> 16),
+			});
+		}, random.nextInt(MAX_REACTION));
+	}
+	
+	/**
+	 * Asks for the full game state whenever the player heard nothing from the server for too long,
+	 * acting again if it is still the player's turn, in case its last action was lost.
+	 */
+	private void watch() {
+		if (done)
+			return;
+		if (clock.nanoTime() - lastHeard >= STALL_TIME * 1_000_000L) {
+			stalls++;
+			actedAt = -1;
+			lastHeard = clock.nanoTime();
+			link.send(new byte[] {(byte) ClientRequest.REQUEST_SNAPSHOT.ordinal()});
+		}
+		clock.schedule(this::watch, STALL_TIME);
+	}
+	
+	/**
+	 * @return The number of cards left in the deck, as seen by the player.
+	 */
+	private int deckLeft() {
+		int left = DECK_SIZE * RaUnoSession.decks(players) - 1 - used;
+		for (int i = 0; i < players; i++)
+			left -= handSizes[i];
+		return left;
+	}
+	
+	/**
+	 * Leaves the game, closing the player's link.
+	 */
+	private void leave() {
+		done = true;
+		link.close();
+	}
+	
+	/**
+	 * @return The number of turns which ended, as seen by the player.
+	 */
+	int turns() {
+		return turns;
+	}
+	
+	/**
+	 * @return The number of cards in the player's hand, as seen by the player.
+	 */
+	int handSize() {
+		return hand.size();
+	}
+}
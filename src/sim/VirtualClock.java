@@ -0,0 +1,146 @@
+package sim;
+
+import java.util.PriorityQueue;
+
+import server.Scheduler;
+
+/**
+ * Handles a clock whose time only moves when it runs its next scheduled task,
+ * so that a whole game's delays (network latency, thinking time, Uno windows)
+ * take no real time at all. Tasks due at the same time run in the order they
+ * were scheduled, so a run only depends on the tasks scheduled, never on timing.
+ * Not thread-safe; everything using the clock must run on the clock's thread.
+ * @author Raul Hernandez, 02/09/2024
+ * 
+ */
+public class VirtualClock implements Scheduler {
+	
+	/**
+	 * Stores a task scheduled to run at a virtual time.
+	 */
+	private static class Timer implements Comparable<Timer> {
+		
+		/** The time (in nanoseconds) at which the task runs. */
+		private final long time;
+		
+		/** The order in which the task was scheduled, breaking ties between tasks due at the same time. */
+		private final long order;
+		
+		/** The task to run. */
+		private final Runnable task;
+		
+		/**
+		 * Creates a scheduled task.
+		 * @param time The time (in nanoseconds) at which the task runs.
+		 * @param order The order in which the task was scheduled.
+		 * @param task The task to run.
+		 */
+		private Timer(long time, long order, Runnable task) {
+			this.time = time;
+			this.order = order;
+			this.task = task;
+		}
+		
+		@Override
+		public int compareTo(Timer timer) {
+			return time != timer.time ? Long.compare(time, timer.time) : Long.compare(order, timer.order);
+		}
+	}
+	
+	/** The tasks waiting to run, soonest first. */
+	private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+	
+	/** The current time (in nanoseconds). */
+	private long now = 0;
+	
+	/** The number of tasks scheduled so far. */
+	private long scheduled = 0;
+	
+	/** The number of tasks run so far. */
+	private long ran = 0;
+	
+	/**
+	 * Runs the given task once the given delay has passed on the clock.
+	 * @param task The task to run.
+	 * @param delay The delay (in milliseconds) before running the task.
+	 */
+	@Override
+	public void schedule(Runnable task, long delay) {
+		scheduleNanos(task, delay * 1_000_000);
+	}
+	
+	/**
+	 * Runs the given task once the given delay has passed on the clock.
+	 * @param task The task to run.
+	 * @param delay The delay (in nanoseconds) before running the task.
+	 */
+	public void scheduleNanos(Runnable task, long delay) {
+		timers.add(new Timer(now + Math.max(0, delay), scheduled++, task));
+	}
+	
+	/**
+	 * Moves the clock to the next scheduled task and runs it.
+	 * @return Whether a task was run. {@code false} if none is scheduled.
+	 */
+	public boolean runNext() {
+		final Timer timer = timers.poll();
+		if (timer == null)
+			return false;
+		now = timer.time;
+		ran++;
+		timer.task.run();
+		return true;
+	}
+	
+	/**
+	 * Runs the scheduled tasks, including the tasks they schedule, until none is left or the given time is reached.
+	 * @param until The time (in nanoseconds) past which no task is run.
+	 * @return Whether every task was run. {@code false} if tasks are still scheduled past the given time.
+	 */
+	public boolean runUntil(long until) {
+		while (!timers.isEmpty()) {
+			if (timers.peek().time > until)
+				return false;
+			runNext();
+		}
+		return true;
+	}
+	
+	/**
+	 * Drops every scheduled task and moves the clock back to 0, so it can be used for another run.
+	 */
+	public void reset() {
+		timers.clear();
+		now = 0;
+		scheduled = 0;
+	}
+	
+	/**
+	 * @return The current time (in nanoseconds) of the clock.
+	 */
+	@Override
+	public long nanoTime() {
+		return now;
+	}
+	
+	/**
+	 * @return The current time (in milliseconds) of the clock.
+	 */
+	public long millis() {
+		return now / 1_000_000;
+	}
+	
+	/**
+	 * @return The number of tasks run since the clock was created.
+	 */
+	public long getRan() {
+		return ran;
+	}
+	
+	/**
+	 * @return The number of tasks waiting to run.
+	 */
+	public int getPending() {
+		return timers.size();
+	}
+}